@@ -1,6 +1,7 @@
 plugins {
     id("java")
     id("com.github.johnrengelman.shadow") version "8.1.1"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "com.serezk4"
@@ -31,6 +32,27 @@ tasks.test {
     useJUnitPlatform()
 }
 
+// Benchmarks live in src/jmh and run with `gradle jmh`; results are written to build/results/jmh
+jmh {
+    jmhVersion.set("1.37")
+    benchmarkMode.add("thrpt")
+    timeUnit.set("s")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    profilers.add("gc")
+    resultFormat.set("JSON")
+    jvmArgs.addAll("--enable-preview")
+    project.findProperty("jmhIncludes")?.let { includes.add(it.toString()) }
+}
+
+// Full pipeline run against a generated corpus, e.g. `gradle corpusBenchmark --args="students=200 plagiarism=0.05"`
+tasks.register<JavaExec>("corpusBenchmark") {
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("com.serezk4.core.bench.corpus.CorpusBenchmark")
+    jvmArgs("--enable-preview")
+}
+
 tasks.jar {
     duplicatesStrategy = DuplicatesStrategy.EXCLUDE
 
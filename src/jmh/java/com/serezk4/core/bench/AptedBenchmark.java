@@ -0,0 +1,63 @@
+package com.serezk4.core.bench;
+
+import com.serezk4.core.apted.costmodel.WeightedCostModel;
+import com.serezk4.core.apted.distance.APTED;
+import com.serezk4.core.apted.node.FlatTree;
+import com.serezk4.core.apted.node.NodeIndexer;
+import com.serezk4.core.apted.node.StringNodeData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks {@link APTED#computeEditDistance(NodeIndexer, NodeIndexer)} on an original lab class and its
+ * plagiarized copy.
+ *
+ * <p>
+ * {@code fresh} creates a new algorithm object per pair, as callers without an engine do, and therefore allocates
+ * all dynamic programming buffers every time. {@code reused} keeps one algorithm object per benchmark thread, whose
+ * {@link com.serezk4.core.apted.distance.APTEDWorkspace} is only allocated once. The difference in the allocation
+ * rate reported by the gc profiler is the garbage saved per comparison.
+ * </p>
+ *
+ * <p>
+ * Indexers are built in the setup, so the scores only contain the distance computation itself. Deletion and
+ * insertion costs are priced once per node by the indexer and read from its arrays here; comparing {@code reused}
+ * with a run on a revision that prices them through the cost model on every lookup quantifies that caching, and
+ * {@link CostModelBenchmark} shows the cost of a single lookup either way.
+ * </p>
+ *
+ * @author serezk4
+ * @version 1.0
+ * @since 1.0
+ */
+@State(Scope.Thread)
+public class AptedBenchmark {
+    private static final WeightedCostModel COST_MODEL = new WeightedCostModel();
+
+    @Param({"small", "medium", "large"})
+    public String scenario;
+
+    private NodeIndexer<StringNodeData, WeightedCostModel> source;
+    private NodeIndexer<StringNodeData, WeightedCostModel> target;
+    private APTED<WeightedCostModel, StringNodeData> apted;
+
+    @Setup
+    public void setUp() {
+        source = new NodeIndexer<>(FlatTree.of(Fixtures.node(Fixtures.original(scenario))), COST_MODEL);
+        target = new NodeIndexer<>(FlatTree.of(Fixtures.node(Fixtures.plagiarized(scenario))), COST_MODEL);
+        apted = new APTED<>(COST_MODEL);
+    }
+
+    @Benchmark
+    public float fresh() {
+        return new APTED<WeightedCostModel, StringNodeData>(COST_MODEL).computeEditDistance(source, target);
+    }
+
+    @Benchmark
+    public float reused() {
+        return apted.computeEditDistance(source, target);
+    }
+}
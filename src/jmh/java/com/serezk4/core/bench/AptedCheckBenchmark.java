@@ -0,0 +1,53 @@
+package com.serezk4.core.bench;
+
+import com.serezk4.core.lab.check.Checker;
+import com.serezk4.core.lab.check.apted.AptedCheck;
+import com.serezk4.core.lab.model.Clazz;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks {@link AptedCheck} end-to-end on an original lab class and its plagiarized copy.
+ *
+ * <p>
+ * The checker keeps the indexed trees of the classes it has seen, so after warmup this measures the per-pair cost
+ * of a run in which every class takes part in many comparisons. {@code exact} computes the full similarity,
+ * {@code bounded} the similarity with the threshold used by {@code Main}, which runs the lower bound cascade first.
+ * </p>
+ *
+ * @author serezk4
+ * @version 1.0
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+public class AptedCheckBenchmark {
+    private static final double SIMILARITY_THRESHOLD = 0.61;
+
+    @Param({"small", "medium", "large"})
+    public String scenario;
+
+    private final Checker checker = new AptedCheck();
+    private Clazz source;
+    private Clazz target;
+
+    @Setup
+    public void setUp() {
+        source = Fixtures.original(scenario);
+        target = Fixtures.plagiarized(scenario);
+    }
+
+    @Benchmark
+    public double exact() {
+        return checker.detect(source, target);
+    }
+
+    @Benchmark
+    public double bounded() {
+        return checker.canExceed(source, target, SIMILARITY_THRESHOLD)
+                ? checker.detect(source, target, SIMILARITY_THRESHOLD)
+                : 0.0;
+    }
+}
@@ -0,0 +1,91 @@
+package com.serezk4.core.bench;
+
+import com.serezk4.core.apted.costmodel.WeightedCostModel;
+import com.serezk4.core.apted.node.FlatTree;
+import com.serezk4.core.apted.node.Node;
+import com.serezk4.core.apted.node.NodeIndexer;
+import com.serezk4.core.apted.node.StringNodeData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the {@link WeightedCostModel} operations called from the inner loops of APTED.
+ *
+ * <p>
+ * Operations run over the nodes of the medium original fixture in preorder; {@code ren} pairs every node with the
+ * node at the same position of the plagiarized copy, which mixes equal and different labels as in real
+ * comparisons. Scores are per node (pair), see {@link OperationsPerInvocation}.
+ * </p>
+ *
+ * <p>
+ * {@code del} prices a node from its {@link Node}, {@code indexedDel} from the arrays of its {@link NodeIndexer},
+ * which is how the indexer prices every node once, and {@code cachedDel} reads the stored cost as APTED does for
+ * every deletion and insertion. The difference between {@code del} and {@code cachedDel} is the cost saved per
+ * lookup in {@link com.serezk4.core.apted.distance.APTED#computeEditDistance}; see {@link AptedBenchmark} for the
+ * effect on a whole computation.
+ * </p>
+ *
+ * @author serezk4
+ * @version 1.0
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+public class CostModelBenchmark {
+    private static final int OPERATIONS = 1024;
+
+    private final WeightedCostModel costModel = new WeightedCostModel();
+    private final Node<StringNodeData>[] sources = nodes(OPERATIONS);
+    private final Node<StringNodeData>[] targets = nodes(OPERATIONS);
+    private final int[] preorders = new int[OPERATIONS];
+    private NodeIndexer<StringNodeData, WeightedCostModel> indexer;
+
+    @Setup
+    public void setUp() {
+        final FlatTree<StringNodeData> source = FlatTree.of(Fixtures.node(Fixtures.original("medium")));
+        fill(sources, source);
+        fill(targets, FlatTree.of(Fixtures.node(Fixtures.plagiarized("medium"))));
+        indexer = new NodeIndexer<>(source, costModel);
+        for (int i = 0; i < OPERATIONS; i++) preorders[i] = i % source.size();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public void del(final Blackhole blackhole) {
+        for (Node<StringNodeData> node : sources) blackhole.consume(costModel.del(node));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public void indexedDel(final Blackhole blackhole) {
+        for (int preorder : preorders) blackhole.consume(costModel.del(indexer, preorder));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public void cachedDel(final Blackhole blackhole) {
+        final float[] delCosts = indexer.preL_to_delCost;
+        for (int preorder : preorders) blackhole.consume(delCosts[preorder]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public void ren(final Blackhole blackhole) {
+        for (int i = 0; i < OPERATIONS; i++) blackhole.consume(costModel.ren(sources[i], targets[i]));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Node<StringNodeData>[] nodes(final int length) {
+        return new Node[length];
+    }
+
+    private static void fill(
+            final Node<StringNodeData>[] nodes,
+            final FlatTree<StringNodeData> tree
+    ) {
+        for (int i = 0; i < nodes.length; i++) nodes[i] = tree.node(i % tree.size());
+    }
+}
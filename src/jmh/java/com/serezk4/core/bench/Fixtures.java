@@ -0,0 +1,78 @@
+package com.serezk4.core.bench;
+
+import com.serezk4.core.apted.node.Node;
+import com.serezk4.core.apted.node.StringNodeData;
+import com.serezk4.core.apted.util.NodeUtil;
+import com.serezk4.core.lab.model.Clazz;
+import com.serezk4.core.lab.storage.LabStorage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Loads the checked-in fixture classes the benchmarks run on.
+ *
+ * <p>
+ * Every scenario under {@code src/jmh/resources/fixtures/<scenario>} holds an {@code Original.java} lab class and a
+ * {@code Plagiarized.java} copy of it with renamed identifiers and reordered members, so that comparisons exercise
+ * the same kind of trees as real submissions:
+ * <ul>
+ *     <li><b>small</b>: a model class of about 60 lines.</li>
+ *     <li><b>medium</b>: a command dispatcher of about 190 lines.</li>
+ *     <li><b>large</b>: a CSV-backed collection manager of about 330 lines.</li>
+ * </ul>
+ * Classes are parsed the same way as {@link LabStorage} parses submissions, without Checkstyle analysis and without
+ * touching the lab cache.
+ * </p>
+ *
+ * @author serezk4
+ * @version 1.0
+ * @since 1.0
+ */
+final class Fixtures {
+    private Fixtures() {
+    }
+
+    /**
+     * @param scenario one of {@code small}, {@code medium} and {@code large}
+     * @return the original class of the scenario
+     */
+    static Clazz original(final String scenario) {
+        return load(scenario, "Original.java");
+    }
+
+    /**
+     * @param scenario one of {@code small}, {@code medium} and {@code large}
+     * @return the plagiarized copy of the original class of the scenario
+     */
+    static Clazz plagiarized(final String scenario) {
+        return load(scenario, "Plagiarized.java");
+    }
+
+    /**
+     * @param clazz a fixture class
+     * @return the tree of the class as nodes, as compared by the checkers
+     */
+    static Node<StringNodeData> node(final Clazz clazz) {
+        return NodeUtil.parseTreeToNode(clazz.tree());
+    }
+
+    private static Clazz load(
+            final String scenario,
+            final String fileName
+    ) {
+        final String resource = "/fixtures/" + scenario + "/" + fileName;
+        try (InputStream in = Fixtures.class.getResourceAsStream(resource)) {
+            if (in == null) throw new IllegalArgumentException("Unknown fixture: " + resource);
+
+            final String code = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            final String normalizedCode = LabStorage.normalize(code);
+            return new Clazz(fileName, LabStorage.parse(normalizedCode), code, normalizedCode, List.of());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error loading fixture: " + e.getMessage(), e);
+        }
+    }
+}
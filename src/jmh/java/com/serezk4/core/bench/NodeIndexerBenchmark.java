@@ -0,0 +1,48 @@
+package com.serezk4.core.bench;
+
+import com.serezk4.core.apted.costmodel.WeightedCostModel;
+import com.serezk4.core.apted.node.FlatTree;
+import com.serezk4.core.apted.node.Node;
+import com.serezk4.core.apted.node.NodeIndexer;
+import com.serezk4.core.apted.node.StringNodeData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks the preparation of a class tree for comparison: flattening the {@link Node} tree into a
+ * {@link FlatTree} and building a {@link NodeIndexer} from it, which includes the subtree deletion and insertion
+ * costs of the cost model.
+ *
+ * @author serezk4
+ * @version 1.0
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+public class NodeIndexerBenchmark {
+    private static final WeightedCostModel COST_MODEL = new WeightedCostModel();
+
+    @Param({"small", "medium", "large"})
+    public String scenario;
+
+    private Node<StringNodeData> node;
+    private FlatTree<StringNodeData> flatTree;
+
+    @Setup
+    public void setUp() {
+        node = Fixtures.node(Fixtures.original(scenario));
+        flatTree = FlatTree.of(node);
+    }
+
+    @Benchmark
+    public FlatTree<StringNodeData> flatten() {
+        return FlatTree.of(node);
+    }
+
+    @Benchmark
+    public NodeIndexer<StringNodeData, WeightedCostModel> index() {
+        return new NodeIndexer<>(flatTree, COST_MODEL);
+    }
+}
@@ -0,0 +1,220 @@
+package com.serezk4.core.bench.corpus;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.serezk4.core.Main;
+import com.serezk4.core.lab.check.PairScheduler;
+import com.serezk4.core.lab.metrics.RunMetrics;
+import com.serezk4.core.lab.model.Plagiarist;
+import com.serezk4.core.lab.storage.LabStorage;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the full pipeline against a {@link SyntheticCorpus} and reports how it scales with the cohort size.
+ *
+ * <p>
+ * Unlike the JMH benchmarks, which measure a single comparison, this harness measures whole runs of the
+ * application: the students submit their labs one after another, and every submission is checked with
+ * {@link Main#check}, exactly as the {@code <isu> <labNumber> <path>} command does. Each check parses the sources
+ * with Checkstyle, saves the lab, streams all earlier labs from the storage and scores the candidate pairs found by
+ * the size and fingerprint indexes, then writes the report, so the last submissions show how a run scales with
+ * the size of the stored cohort. It reports:
+ * <ul>
+ *     <li><b>runs</b>: total time, and p50, p99 and maximum time of a single submission;</li>
+ *     <li><b>stages</b> and <b>counters</b>: the {@link RunMetrics} of all runs added up, such as the time spent
+ *     loading the corpus and the number of pruned pairs;</li>
+ *     <li><b>recall</b>: share of the planted copies found above the similarity threshold;</li>
+ *     <li><b>heap</b>: peak heap usage over the whole benchmark.</li>
+ * </ul>
+ * </p>
+ *
+ * <p>
+ * Arguments are {@code key=value} pairs: {@code students}, {@code classes} (per student), {@code methods} (per
+ * class), {@code plagiarism} (share of copied classes), {@code seed} and {@code dir}, the directory to generate the
+ * corpus in, a new temporary directory by default. Labs, similarity scores and run metrics are stored in that
+ * directory; the report of the last run is written to the working directory, as by the application. The number of
+ * compute threads is taken from {@value PairScheduler#PARALLELISM_PROPERTY}.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>{@code
+ * gradle corpusBenchmark --args="students=200 classes=10 methods=8 plagiarism=0.05"
+ * }</pre>
+ *
+ * @see SyntheticCorpus
+ * @see Main
+ *
+ * @author serezk4
+ * @version 1.0
+ * @since 1.0
+ */
+public final class CorpusBenchmark {
+    private static final int LAB_NUMBER = 1;
+    private static final long HEAP_SAMPLE_MILLIS = 10;
+
+    private CorpusBenchmark() {
+    }
+
+    public static void main(final String... args) throws IOException {
+        final Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            final int separator = arg.indexOf('=');
+            if (separator < 0) {
+                System.out.println("Use format: [students=N] [classes=N] [methods=N] [plagiarism=R] [seed=N] [dir=PATH]");
+                return;
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+
+        final int students = Integer.parseInt(options.getOrDefault("students", "100"));
+        final Path dir = options.containsKey("dir")
+                ? Path.of(options.get("dir"))
+                : Files.createTempDirectory("labguard-corpus");
+        final SyntheticCorpus corpus = new SyntheticCorpus(
+                students,
+                Integer.parseInt(options.getOrDefault("classes", "8")),
+                Integer.parseInt(options.getOrDefault("methods", "6")),
+                Double.parseDouble(options.getOrDefault("plagiarism", "0.1")),
+                Long.parseLong(options.getOrDefault("seed", "42"))
+        );
+
+        final List<SyntheticCorpus.Planted> planted = corpus.write(dir.resolve("sources"));
+        System.out.printf("corpus: %d students, %d planted copies in %s%n", students, planted.size(), dir);
+
+        final Path metricsFile = dir.resolve("metrics.json");
+        System.setProperty(LabStorage.ROOT_PROPERTY, dir.resolve("cache").toString());
+        System.setProperty(RunMetrics.FILE_PROPERTY, metricsFile.toString());
+
+        final Map<String, Double> stageMillis = new LinkedHashMap<>();
+        final Map<String, Long> counters = new LinkedHashMap<>();
+        final Set<String> matches = new HashSet<>();
+        final long[] runNanos = new long[students];
+
+        final long start = System.nanoTime();
+        try (HeapSampler heap = new HeapSampler()) {
+            for (int student = 0; student < students; student++) {
+                final String isu = SyntheticCorpus.isu(student);
+                final long runStart = System.nanoTime();
+                final Map<String, List<Plagiarist>> results =
+                        Main.check(isu, LAB_NUMBER, dir.resolve("sources").resolve(isu));
+                runNanos[student] = System.nanoTime() - runStart;
+
+                results.forEach((otherIsu, plagiarists) -> plagiarists.forEach(plagiarist -> matches.add(key(
+                        otherIsu, plagiarist.targetClazz().name(), isu, plagiarist.plagiarizedClazz().name()))));
+                addMetrics(metricsFile, stageMillis, counters);
+            }
+            final long totalNanos = System.nanoTime() - start;
+
+            final long found = planted.stream()
+                    .filter(copy -> matches.contains(
+                            key(copy.sourceIsu(), copy.sourceClass(), copy.targetIsu(), copy.targetClass())))
+                    .count();
+
+            Arrays.sort(runNanos);
+            System.out.printf("runs: %d submissions in %.1f ms, p50 %.1f ms, p99 %.1f ms, max %.1f ms%n",
+                    students,
+                    totalNanos / 1e6,
+                    percentile(runNanos, 0.50) / 1e6,
+                    percentile(runNanos, 0.99) / 1e6,
+                    runNanos[runNanos.length - 1] / 1e6);
+            stageMillis.forEach((stage, millis) -> System.out.printf("stage %s: %.1f ms%n", stage, millis));
+            counters.forEach((counter, value) -> System.out.printf("counter %s: %d%n", counter, value));
+            System.out.printf("recall: %d of %d planted copies, %d matching pairs%n",
+                    found, planted.size(), matches.size());
+            System.out.printf("heap: peak %.1f MB%n", heap.peak() / (1024.0 * 1024.0));
+        }
+    }
+
+    /**
+     * Adds the stage times and counters of the last run, read from its metrics file, to the totals.
+     */
+    private static void addMetrics(
+            final Path metricsFile,
+            final Map<String, Double> stageMillis,
+            final Map<String, Long> counters
+    ) throws IOException {
+        final JsonObject metrics = JsonParser.parseString(Files.readString(metricsFile)).getAsJsonObject();
+        for (Map.Entry<String, JsonElement> stage : metrics.getAsJsonObject("stages").entrySet()) {
+            final double millis = stage.getValue().getAsJsonObject().get("millis").getAsDouble();
+            stageMillis.merge(stage.getKey(), millis, Double::sum);
+        }
+        for (Map.Entry<String, JsonElement> counter : metrics.getAsJsonObject("counters").entrySet()) {
+            counters.merge(counter.getKey(), counter.getValue().getAsLong(), Long::sum);
+        }
+    }
+
+    private static String key(
+            final String sourceIsu,
+            final String sourceClass,
+            final String targetIsu,
+            final String targetClass
+    ) {
+        return sourceIsu + '/' + sourceClass + "->" + targetIsu + '/' + targetClass;
+    }
+
+    private static long percentile(
+            final long[] sorted,
+            final double percentile
+    ) {
+        if (sorted.length == 0) return 0;
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1)];
+    }
+
+    /**
+     * Samples the total used heap in the background and keeps the largest sample.
+     *
+     * <p>
+     * The peak usages of the individual heap pools are reached at different times, so their sum overstates the
+     * peak of the heap as a whole; sampling the total usage yields a peak that the heap actually reached.
+     * </p>
+     */
+    private static final class HeapSampler implements AutoCloseable {
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private final AtomicLong peak = new AtomicLong();
+        private final Thread thread;
+
+        private HeapSampler() {
+            thread = Thread.ofPlatform().daemon().name("heap-sampler").start(() -> {
+                while (!Thread.currentThread().isInterrupted()) {
+                    sample();
+                    try {
+                        Thread.sleep(HEAP_SAMPLE_MILLIS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            });
+        }
+
+        /**
+         * @return the largest total heap usage sampled so far, in bytes
+         */
+        long peak() {
+            sample();
+            return peak.get();
+        }
+
+        private void sample() {
+            peak.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+        }
+
+        @Override
+        public void close() {
+            thread.interrupt();
+        }
+    }
+}
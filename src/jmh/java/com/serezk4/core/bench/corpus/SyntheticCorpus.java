@@ -0,0 +1,281 @@
+package com.serezk4.core.bench.corpus;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Generates the source files of a synthetic lab cohort with a controlled share of plagiarized classes.
+ *
+ * <p>
+ * Every student submits the same number of classes. A class is either original, generated at random from fields
+ * and methods built of typical lab statements (arithmetic, branches, loops, collection calls), or, with probability
+ * {@code plagiarismRate}, a copy of a class of an earlier student made in one of the ways listed in {@link Kind}.
+ * Class size is controlled by the number of methods per class. Generation is deterministic for a given seed.
+ * </p>
+ *
+ * <p>
+ * Sources are written to {@code <root>/<isu>/<ClassName>.java}, the layout {@code LabStorage.load} expects for a
+ * single lab, and the planted copies are returned so that detection can be checked against them. Class names are
+ * unique per student: a copy whose name the student already uses is given a numbered name, so no file overwrites
+ * another one.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>{@code
+ * SyntheticCorpus corpus = new SyntheticCorpus(100, 8, 6, 0.1, 42L);
+ * List<SyntheticCorpus.Planted> planted = corpus.write(Path.of("/tmp/corpus/sources"));
+ * }</pre>
+ *
+ * @see CorpusBenchmark
+ *
+ * @author serezk4
+ * @version 1.0
+ * @since 1.0
+ */
+public final class SyntheticCorpus {
+    private static final Pattern IDENTIFIER = Pattern.compile("\\$(\\w+)");
+
+    private static final String[] WORDS = {
+            "route", "ticket", "person", "coordinates", "location", "event", "venue", "address", "product", "price",
+            "count", "total", "value", "result", "index", "name", "history", "command", "manager", "collection",
+            "buffer", "element", "distance", "limit", "offset", "size", "id", "key", "item", "entry", "date", "owner",
+            "label", "weight", "score", "amount", "level", "status", "target", "source"
+    };
+
+    private final int students;
+    private final int classesPerStudent;
+    private final int methodsPerClass;
+    private final double plagiarismRate;
+    private final long seed;
+
+    /**
+     * How a plagiarized class is derived from its original.
+     */
+    public enum Kind {
+        /** The class is copied as it is. */
+        VERBATIM,
+        /** All identifiers declared in the class, including the class name, are renamed. */
+        RENAMED,
+        /** The methods of the class are shuffled. */
+        REORDERED
+    }
+
+    /**
+     * A class copied from another student.
+     *
+     * @param sourceIsu   ISU of the student the class was copied from
+     * @param sourceClass file name of the original class
+     * @param targetIsu   ISU of the student who copied the class
+     * @param targetClass file name of the copy
+     * @param kind        how the copy was made
+     */
+    public record Planted(
+            String sourceIsu,
+            String sourceClass,
+            String targetIsu,
+            String targetClass,
+            Kind kind
+    ) {
+    }
+
+    /**
+     * @param students          number of students (must be positive)
+     * @param classesPerStudent number of classes every student submits (must be positive)
+     * @param methodsPerClass   number of methods of every class besides the constructor (must be positive)
+     * @param plagiarismRate    probability that a class of any student but the first is a copy
+     * @param seed              seed of the generator
+     */
+    public SyntheticCorpus(
+            final int students,
+            final int classesPerStudent,
+            final int methodsPerClass,
+            final double plagiarismRate,
+            final long seed
+    ) {
+        if (students < 1 || classesPerStudent < 1 || methodsPerClass < 1) {
+            throw new IllegalArgumentException("Corpus dimensions must be positive");
+        }
+        this.students = students;
+        this.classesPerStudent = classesPerStudent;
+        this.methodsPerClass = methodsPerClass;
+        this.plagiarismRate = plagiarismRate;
+        this.seed = seed;
+    }
+
+    /**
+     * @param student index of a student, starting with {@code 0}
+     * @return the six-digit ISU of the student
+     */
+    public static String isu(final int student) {
+        return String.valueOf(300000 + student);
+    }
+
+    /**
+     * Writes the sources of all students.
+     *
+     * @param root the directory to write the student directories to
+     * @return the planted copies, in the order they were generated
+     * @throws IOException if a source file cannot be written
+     */
+    public List<Planted> write(final Path root) throws IOException {
+        final Random random = new Random(seed);
+        final List<List<Source>> submissions = new ArrayList<>();
+        final List<Planted> planted = new ArrayList<>();
+
+        for (int student = 0; student < students; student++) {
+            final List<Source> classes = new ArrayList<>();
+            final Set<String> fileNames = new HashSet<>();
+            for (int index = 0; index < classesPerStudent; index++) {
+                if (student > 0 && random.nextDouble() < plagiarismRate) {
+                    final int sourceStudent = random.nextInt(student);
+                    final Source original = submissions.get(sourceStudent).get(random.nextInt(classesPerStudent));
+                    final Kind kind = Kind.values()[random.nextInt(Kind.values().length)];
+                    Source copy = copy(original, kind, random);
+                    final String className = copy.names().get("C");
+                    for (int suffix = 2; !fileNames.add(copy.fileName()); suffix++) {
+                        copy = copy.withClassName(className + suffix);
+                    }
+                    classes.add(copy);
+                    planted.add(new Planted(isu(sourceStudent), original.fileName(), isu(student), copy.fileName(), kind));
+                } else {
+                    final Source source = generate(student, index, random);
+                    fileNames.add(source.fileName());
+                    classes.add(source);
+                }
+            }
+            submissions.add(classes);
+
+            final Path directory = Files.createDirectories(root.resolve(isu(student)));
+            for (Source source : classes) Files.writeString(directory.resolve(source.fileName()), source.render());
+        }
+        return planted;
+    }
+
+    private Source generate(
+            final int student,
+            final int index,
+            final Random random
+    ) {
+        final int fields = 2 + random.nextInt(4);
+        final List<String> members = new ArrayList<>();
+        for (int method = 0; method < methodsPerClass; method++) members.add(method(method, fields, random));
+
+        final Map<String, String> names = new HashMap<>();
+        names.put("C", "Lab" + student + "Class" + index);
+        return new Source(fields, constructor(fields), members, names, random.nextLong());
+    }
+
+    private static Source copy(
+            final Source original,
+            final Kind kind,
+            final Random random
+    ) {
+        return switch (kind) {
+            case VERBATIM -> original;
+            case RENAMED -> {
+                final Map<String, String> names = new HashMap<>(original.names());
+                names.put("C", original.names().get("C") + "Copy");
+                yield new Source(original.fields(), original.constructor(), original.methods(), names, random.nextLong());
+            }
+            case REORDERED -> {
+                final List<String> methods = new ArrayList<>(original.methods());
+                Collections.shuffle(methods, random);
+                yield new Source(original.fields(), original.constructor(), methods, original.names(), original.naming());
+            }
+        };
+    }
+
+    private static String constructor(final int fields) {
+        final StringBuilder code = new StringBuilder("    public $C(int $p0) {\n");
+        for (int field = 0; field < fields; field++) code.append("        this.$f").append(field).append(" = $p0 + ").append(field).append(";\n");
+        code.append("        this.$items = new ArrayList<>();\n");
+        return code.append("    }\n").toString();
+    }
+
+    private static String method(
+            final int method,
+            final int fields,
+            final Random random
+    ) {
+        final StringBuilder code = new StringBuilder();
+        code.append("    public int $m").append(method).append("(int $p0, int $p1) {\n");
+        code.append("        int $v0 = $p0;\n");
+        final int statements = 3 + random.nextInt(8);
+        for (int statement = 0; statement < statements; statement++) {
+            final String field = "$f" + random.nextInt(fields);
+            final int constant = 1 + random.nextInt(100);
+            code.append(switch (random.nextInt(7)) {
+                case 0 -> "        $v0 = $v0 * " + constant + " + " + field + ";\n";
+                case 1 -> "        if ($v0 > " + constant + ") {\n            " + field + " = $v0 - $p1;\n"
+                        + "        } else {\n            " + field + " += $p1;\n        }\n";
+                case 2 -> "        for (int $i = 0; $i < $p1; $i++) {\n            $v0 += $i * " + field + ";\n        }\n";
+                case 3 -> "        while ($v0 > " + constant + ") {\n            $v0 /= 2;\n        }\n";
+                case 4 -> "        $items.add(String.valueOf($v0 + " + field + "));\n";
+                case 5 -> "        if ($items.size() > " + constant + ") {\n            $items.remove(0);\n        }\n";
+                default -> "        " + field + " = Math.max(" + field + ", $v0 % " + constant + ");\n";
+            });
+        }
+        return code.append("        return $v0;\n    }\n").toString();
+    }
+
+    /**
+     * A generated class. Identifiers are written as {@code $id} placeholders, which are resolved through
+     * {@code names} or, if absent, derived from {@code naming}, so that renaming a class only changes its names.
+     */
+    private record Source(
+            int fields,
+            String constructor,
+            List<String> methods,
+            Map<String, String> names,
+            long naming
+    ) {
+        String fileName() {
+            return names.get("C") + ".java";
+        }
+
+        Source withClassName(final String className) {
+            final Map<String, String> renamed = new HashMap<>(names);
+            renamed.put("C", className);
+            return new Source(fields, constructor, methods, renamed, naming);
+        }
+
+        String render() {
+            final StringBuilder code = new StringBuilder("package lab;\n\nimport java.util.ArrayList;\nimport java.util.List;\n\n");
+            code.append("public class $C {\n");
+            for (int field = 0; field < fields; field++) code.append("    private int $f").append(field).append(";\n");
+            code.append("    private final List<String> $items;\n\n").append(constructor);
+            for (String method : methods) code.append('\n').append(method);
+            code.append("}\n");
+
+            final Random random = new Random(naming);
+            final Map<String, String> resolved = new HashMap<>(names);
+            final Matcher matcher = IDENTIFIER.matcher(code);
+            final StringBuilder result = new StringBuilder();
+            while (matcher.find()) {
+                final String name = resolved.computeIfAbsent(matcher.group(1), key -> identifier(random, resolved.size()));
+                matcher.appendReplacement(result, name);
+            }
+            return matcher.appendTail(result).toString();
+        }
+
+        private static String identifier(
+                final Random random,
+                final int salt
+        ) {
+            final String first = WORDS[random.nextInt(WORDS.length)];
+            final String second = WORDS[random.nextInt(WORDS.length)];
+            return first + Character.toUpperCase(second.charAt(0)) + second.substring(1) + salt;
+        }
+    }
+}
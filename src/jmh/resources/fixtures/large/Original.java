@@ -0,0 +1,326 @@
+package ru.itmo.lab5.managers;
+
+import ru.itmo.lab5.model.Coordinates;
+import ru.itmo.lab5.model.Location;
+import ru.itmo.lab5.model.Route;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Stores the collection of routes and synchronizes it with a CSV file.
+ */
+public class CollectionManager {
+    private static final String SEPARATOR = ",";
+    private static final String HEADER = "id,name,x,y,creationDate,fromX,fromY,fromZ,fromName,toX,toY,toZ,toName,distance";
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ISO_ZONED_DATE_TIME;
+
+    private final PriorityQueue<Route> collection = new PriorityQueue<>();
+    private final Set<Long> usedIds = new HashSet<>();
+    private final Path file;
+    private final Console console;
+    private final LocalDateTime initializationDate;
+    private LocalDateTime lastSaveDate;
+    private long nextId = 1;
+
+    public CollectionManager(Path file, Console console) {
+        this.file = file;
+        this.console = console;
+        this.initializationDate = LocalDateTime.now();
+    }
+
+    public PriorityQueue<Route> getCollection() {
+        return collection;
+    }
+
+    public LocalDateTime getInitializationDate() {
+        return initializationDate;
+    }
+
+    public LocalDateTime getLastSaveDate() {
+        return lastSaveDate;
+    }
+
+    public long nextId() {
+        while (usedIds.contains(nextId)) {
+            nextId++;
+        }
+        return nextId;
+    }
+
+    public void add(Route route) {
+        if (route == null) {
+            throw new IllegalArgumentException("route can not be null");
+        }
+        if (usedIds.contains(route.getId())) {
+            throw new IllegalArgumentException("route with id " + route.getId() + " already exists");
+        }
+        collection.add(route);
+        usedIds.add(route.getId());
+    }
+
+    public Route getById(long id) {
+        for (Route route : collection) {
+            if (route.getId() == id) {
+                return route;
+            }
+        }
+        return null;
+    }
+
+    public void replace(Route existing, Route updated) {
+        collection.remove(existing);
+        collection.add(updated);
+    }
+
+    public boolean removeById(long id) {
+        Iterator<Route> iterator = collection.iterator();
+        while (iterator.hasNext()) {
+            Route route = iterator.next();
+            if (route.getId() == id) {
+                iterator.remove();
+                usedIds.remove(id);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int removeGreater(Route reference) {
+        List<Route> toRemove = collection.stream()
+                .filter(route -> route.compareTo(reference) > 0)
+                .toList();
+        toRemove.forEach(route -> {
+            collection.remove(route);
+            usedIds.remove(route.getId());
+        });
+        return toRemove.size();
+    }
+
+    public void clear() {
+        collection.clear();
+        usedIds.clear();
+        nextId = 1;
+    }
+
+    public Optional<Route> minByDistance() {
+        return collection.stream().min(Comparator.comparingDouble(Route::getDistance));
+    }
+
+    public List<Route> filterLessThanDistance(double distance) {
+        return collection.stream()
+                .filter(route -> route.getDistance() < distance)
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    public Map<Double, Long> groupByDistance() {
+        Map<Double, Long> groups = new LinkedHashMap<>();
+        List<Route> sorted = new ArrayList<>(collection);
+        Collections.sort(sorted, Comparator.comparingDouble(Route::getDistance));
+        for (Route route : sorted) {
+            groups.merge(route.getDistance(), 1L, Long::sum);
+        }
+        return groups;
+    }
+
+    public void load() {
+        if (!Files.exists(file)) {
+            console.printError("File " + file + " does not exist, starting with an empty collection");
+            return;
+        }
+        int lineNumber = 0;
+        int skipped = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(file)))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (lineNumber == 1 && line.equals(HEADER)) {
+                    continue;
+                }
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    Route route = parseRoute(line);
+                    if (usedIds.contains(route.getId())) {
+                        throw new IllegalArgumentException("duplicate id " + route.getId());
+                    }
+                    add(route);
+                } catch (IllegalArgumentException | DateTimeParseException e) {
+                    skipped++;
+                    console.printError("Line " + lineNumber + " skipped: " + e.getMessage());
+                }
+            }
+        } catch (FileNotFoundException e) {
+            console.printError("File not found: " + file);
+        } catch (IOException e) {
+            console.printError("Could not read the file: " + e.getMessage());
+        }
+        console.println("Loaded " + collection.size() + " routes, skipped " + skipped + " lines");
+    }
+
+    public void save() {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file))) {
+            writer.println(HEADER);
+            List<Route> sorted = new ArrayList<>(collection);
+            Collections.sort(sorted);
+            for (Route route : sorted) {
+                writer.println(formatRoute(route));
+            }
+            lastSaveDate = LocalDateTime.now();
+            console.println("Saved " + sorted.size() + " routes to " + file);
+        } catch (IOException e) {
+            console.printError("Could not save the collection: " + e.getMessage());
+        }
+    }
+
+    private Route parseRoute(String line) {
+        String[] values = splitCsv(line);
+        if (values.length != 14) {
+            throw new IllegalArgumentException("expected 14 values but found " + values.length);
+        }
+        long id = parseLong(values[0], "id");
+        if (id <= 0) {
+            throw new IllegalArgumentException("id must be positive");
+        }
+        String name = values[1];
+        if (name.isBlank()) {
+            throw new IllegalArgumentException("name can not be empty");
+        }
+        Coordinates coordinates = new Coordinates(parseLong(values[2], "x"), parseDouble(values[3], "y"));
+        ZonedDateTime creationDate = ZonedDateTime.parse(values[4], FORMATTER);
+        Location from = parseLocation(values, 5, "from");
+        Location to = parseLocation(values, 9, "to");
+        double distance = parseDouble(values[13], "distance");
+        if (distance <= 1) {
+            throw new IllegalArgumentException("distance must be greater than 1");
+        }
+        return new Route(id, name, coordinates, creationDate, from, to, distance);
+    }
+
+    private Location parseLocation(String[] values, int offset, String prefix) {
+        if (values[offset].isEmpty() && values[offset + 1].isEmpty() && values[offset + 2].isEmpty()) {
+            return null;
+        }
+        long x = parseLong(values[offset], prefix + "X");
+        float y = (float) parseDouble(values[offset + 1], prefix + "Y");
+        double z = parseDouble(values[offset + 2], prefix + "Z");
+        String name = values[offset + 3];
+        if (name.length() > 867) {
+            throw new IllegalArgumentException(prefix + "Name is too long");
+        }
+        return new Location(x, y, z, name.isEmpty() ? null : name);
+    }
+
+    private String formatRoute(Route route) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(route.getId()).append(SEPARATOR);
+        builder.append(escape(route.getName())).append(SEPARATOR);
+        builder.append(route.getCoordinates().getX()).append(SEPARATOR);
+        builder.append(route.getCoordinates().getY()).append(SEPARATOR);
+        builder.append(route.getCreationDate().format(FORMATTER)).append(SEPARATOR);
+        appendLocation(builder, route.getFrom());
+        appendLocation(builder, route.getTo());
+        builder.append(route.getDistance());
+        return builder.toString();
+    }
+
+    private void appendLocation(StringBuilder builder, Location location) {
+        if (location == null) {
+            builder.append(",,,,");
+            return;
+        }
+        builder.append(location.getX()).append(SEPARATOR);
+        builder.append(location.getY()).append(SEPARATOR);
+        builder.append(location.getZ()).append(SEPARATOR);
+        builder.append(location.getName() == null ? "" : escape(location.getName())).append(SEPARATOR);
+    }
+
+    private String escape(String value) {
+        if (value.contains(SEPARATOR) || value.contains("\"")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+
+    private String[] splitCsv(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        current.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("unterminated quote");
+        }
+        values.add(current.toString());
+        return values.toArray(new String[0]);
+    }
+
+    private long parseLong(String value, String field) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(field + " must be an integer, got '" + value + "'");
+        }
+    }
+
+    private double parseDouble(String value, String field) {
+        try {
+            double result = Double.parseDouble(value.trim());
+            if (Double.isNaN(result) || Double.isInfinite(result)) {
+                throw new IllegalArgumentException(field + " must be finite");
+            }
+            return result;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(field + " must be a number, got '" + value + "'");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CollectionManager{file=" + file + ", size=" + collection.size()
+                + ", initializationDate=" + initializationDate + ", lastSaveDate=" + lastSaveDate + "}";
+    }
+}
@@ -0,0 +1,326 @@
+package ru.itmo.lab5.storage;
+
+import ru.itmo.lab5.model.Coordinates;
+import ru.itmo.lab5.model.Location;
+import ru.itmo.lab5.model.Route;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Stores the routes of routes and synchronizes it with a CSV file.
+ */
+public class RouteRepository {
+    private static final String DELIMITER = ",";
+    private static final String HEADER = "id,name,x,y,creationDate,fromX,fromY,fromZ,fromName,toX,toY,toZ,toName,distance";
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ISO_ZONED_DATE_TIME;
+
+    private final PriorityQueue<Route> routes = new PriorityQueue<>();
+    private final Set<Long> ids = new HashSet<>();
+    private final Path file;
+    private final Printer out;
+    private final LocalDateTime createdAt;
+    private LocalDateTime savedAt;
+    private long freeId = 1;
+
+    public RouteRepository(Path file, Printer out) {
+        this.file = file;
+        this.out = out;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public PriorityQueue<Route> getCollection() {
+        return routes;
+    }
+
+    public LocalDateTime getInitializationDate() {
+        return createdAt;
+    }
+
+    public LocalDateTime getLastSaveDate() {
+        return savedAt;
+    }
+
+    public long freeId() {
+        while (ids.contains(freeId)) {
+            freeId++;
+        }
+        return freeId;
+    }
+
+    public void add(Route route) {
+        if (route == null) {
+            throw new IllegalArgumentException("route can not be null");
+        }
+        if (ids.contains(route.getId())) {
+            throw new IllegalArgumentException("route with id " + route.getId() + " already exists");
+        }
+        routes.add(route);
+        ids.add(route.getId());
+    }
+
+    public Route getById(long id) {
+        for (Route route : routes) {
+            if (route.getId() == id) {
+                return route;
+            }
+        }
+        return null;
+    }
+
+    public void replace(Route existing, Route updated) {
+        routes.remove(existing);
+        routes.add(updated);
+    }
+
+    public boolean removeById(long id) {
+        Iterator<Route> iterator = routes.iterator();
+        while (iterator.hasNext()) {
+            Route route = iterator.next();
+            if (route.getId() == id) {
+                iterator.remove();
+                ids.remove(id);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int removeGreater(Route reference) {
+        List<Route> toRemove = routes.stream()
+                .filter(route -> route.compareTo(reference) > 0)
+                .toList();
+        toRemove.forEach(route -> {
+            routes.remove(route);
+            ids.remove(route.getId());
+        });
+        return toRemove.size();
+    }
+
+    public void clear() {
+        routes.clear();
+        ids.clear();
+        freeId = 1;
+    }
+
+    public Map<Double, Long> groupByDistance() {
+        Map<Double, Long> result = new LinkedHashMap<>();
+        List<Route> ordered = new ArrayList<>(routes);
+        Collections.sort(ordered, Comparator.comparingDouble(Route::getDistance));
+        for (Route route : ordered) {
+            result.merge(route.getDistance(), 1L, Long::sum);
+        }
+        return result;
+    }
+
+    public Optional<Route> minByDistance() {
+        return routes.stream().min(Comparator.comparingDouble(Route::getDistance));
+    }
+
+    public List<Route> filterLessThanDistance(double distance) {
+        return routes.stream()
+                .filter(route -> route.getDistance() < distance)
+                .ordered()
+                .collect(Collectors.toList());
+    }
+
+    public void save() {
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(file))) {
+            pw.println(HEADER);
+            List<Route> ordered = new ArrayList<>(routes);
+            Collections.sort(ordered);
+            for (Route route : ordered) {
+                pw.println(writeRoute(route));
+            }
+            savedAt = LocalDateTime.now();
+            out.println("Saved " + ordered.size() + " routes to " + file);
+        } catch (IOException e) {
+            out.printError("Could not save the routes: " + e.getMessage());
+        }
+    }
+
+    public void load() {
+        if (!Files.exists(file)) {
+            out.printError("File " + file + " does not exist, starting with an empty routes");
+            return;
+        }
+        int row = 0;
+        int errors = 0;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(Files.newInputStream(file)))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                row++;
+                if (row == 1 && line.equals(HEADER)) {
+                    continue;
+                }
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    Route route = readRoute(line);
+                    if (ids.contains(route.getId())) {
+                        throw new IllegalArgumentException("duplicate id " + route.getId());
+                    }
+                    add(route);
+                } catch (IllegalArgumentException | DateTimeParseException e) {
+                    errors++;
+                    out.printError("Line " + row + " errors: " + e.getMessage());
+                }
+            }
+        } catch (FileNotFoundException e) {
+            out.printError("File not found: " + file);
+        } catch (IOException e) {
+            out.printError("Could not read the file: " + e.getMessage());
+        }
+        out.println("Loaded " + routes.size() + " routes, errors " + errors + " lines");
+    }
+
+    private Route readRoute(String line) {
+        String[] cells = tokenize(line);
+        if (cells.length != 14) {
+            throw new IllegalArgumentException("expected 14 cells but found " + cells.length);
+        }
+        long id = toLong(cells[0], "id");
+        if (id <= 0) {
+            throw new IllegalArgumentException("id must be positive");
+        }
+        String name = cells[1];
+        if (name.isBlank()) {
+            throw new IllegalArgumentException("name can not be empty");
+        }
+        Coordinates coordinates = new Coordinates(toLong(cells[2], "x"), toDouble(cells[3], "y"));
+        ZonedDateTime creationDate = ZonedDateTime.parse(cells[4], DATE_FORMAT);
+        Location from = readLocation(cells, 5, "from");
+        Location to = readLocation(cells, 9, "to");
+        double distance = toDouble(cells[13], "distance");
+        if (distance <= 1) {
+            throw new IllegalArgumentException("distance must be greater than 1");
+        }
+        return new Route(id, name, coordinates, creationDate, from, to, distance);
+    }
+
+    private Location readLocation(String[] cells, int offset, String prefix) {
+        if (cells[offset].isEmpty() && cells[offset + 1].isEmpty() && cells[offset + 2].isEmpty()) {
+            return null;
+        }
+        long x = toLong(cells[offset], prefix + "X");
+        float y = (float) toDouble(cells[offset + 1], prefix + "Y");
+        double z = toDouble(cells[offset + 2], prefix + "Z");
+        String name = cells[offset + 3];
+        if (name.length() > 867) {
+            throw new IllegalArgumentException(prefix + "Name is too long");
+        }
+        return new Location(x, y, z, name.isEmpty() ? null : name);
+    }
+
+    private String writeRoute(Route route) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(route.getId()).append(DELIMITER);
+        sb.append(escape(route.getName())).append(DELIMITER);
+        sb.append(route.getCoordinates().getX()).append(DELIMITER);
+        sb.append(route.getCoordinates().getY()).append(DELIMITER);
+        sb.append(route.getCreationDate().format(DATE_FORMAT)).append(DELIMITER);
+        writeLocation(sb, route.getFrom());
+        writeLocation(sb, route.getTo());
+        sb.append(route.getDistance());
+        return sb.toString();
+    }
+
+    private void writeLocation(StringBuilder sb, Location location) {
+        if (location == null) {
+            sb.append(",,,,");
+            return;
+        }
+        sb.append(location.getX()).append(DELIMITER);
+        sb.append(location.getY()).append(DELIMITER);
+        sb.append(location.getZ()).append(DELIMITER);
+        sb.append(location.getName() == null ? "" : escape(location.getName())).append(DELIMITER);
+    }
+
+    private String escape(String value) {
+        if (value.contains(DELIMITER) || value.contains("\"")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+
+    private long toLong(String value, String field) {
+        try {
+            return Long.toLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(field + " must be an integer, got '" + value + "'");
+        }
+    }
+
+    private String[] tokenize(String line) {
+        List<String> cells = new ArrayList<>();
+        StringBuilder cell = new StringBuilder();
+        boolean inQuotes = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (inQuotes) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        cell.append('"');
+                        i++;
+                    } else {
+                        inQuotes = false;
+                    }
+                } else {
+                    cell.append(c);
+                }
+            } else if (c == '"') {
+                inQuotes = true;
+            } else if (c == ',') {
+                cells.add(cell.toString());
+                cell.setLength(0);
+            } else {
+                cell.append(c);
+            }
+        }
+        if (inQuotes) {
+            throw new IllegalArgumentException("unterminated quote");
+        }
+        cells.add(cell.toString());
+        return cells.toArray(new String[0]);
+    }
+
+    private double toDouble(String value, String field) {
+        try {
+            double result = Double.toDouble(value.trim());
+            if (Double.isNaN(result) || Double.isInfinite(result)) {
+                throw new IllegalArgumentException(field + " must be finite");
+            }
+            return result;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(field + " must be a number, got '" + value + "'");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RouteRepository{file=" + file + ", size=" + routes.size()
+                + ", createdAt=" + createdAt + ", savedAt=" + savedAt + "}";
+    }
+}
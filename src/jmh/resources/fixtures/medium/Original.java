@@ -0,0 +1,186 @@
+package ru.itmo.lab5.commands;
+
+import ru.itmo.lab5.managers.CollectionManager;
+import ru.itmo.lab5.managers.Console;
+import ru.itmo.lab5.model.Route;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses user input and dispatches it to the collection manager.
+ */
+public class CommandInvoker {
+    private static final int HISTORY_SIZE = 13;
+
+    private final CollectionManager collectionManager;
+    private final Console console;
+    private final Map<String, String> descriptions = new HashMap<>();
+    private final List<String> history = new ArrayList<>();
+    private boolean running = true;
+
+    public CommandInvoker(CollectionManager collectionManager, Console console) {
+        this.collectionManager = collectionManager;
+        this.console = console;
+        descriptions.put("help", "show help for available commands");
+        descriptions.put("info", "print information about the collection");
+        descriptions.put("show", "print all elements of the collection");
+        descriptions.put("add", "add a new element to the collection");
+        descriptions.put("update", "update the element with the given id");
+        descriptions.put("remove_by_id", "remove an element by its id");
+        descriptions.put("clear", "clear the collection");
+        descriptions.put("save", "save the collection to the file");
+        descriptions.put("exit", "exit without saving");
+        descriptions.put("history", "print the last 13 commands");
+        descriptions.put("min_by_distance", "print an element with the minimal distance");
+        descriptions.put("filter_less_than_distance", "print elements with a smaller distance");
+    }
+
+    public void run() {
+        while (running) {
+            console.print("> ");
+            String line = console.readLine();
+            if (line == null) {
+                break;
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] parts = line.split("\\s+", 2);
+            String argument = parts.length > 1 ? parts[1] : "";
+            execute(parts[0], argument);
+        }
+    }
+
+    public void execute(String name, String argument) {
+        if (!descriptions.containsKey(name)) {
+            console.printError("Unknown command: " + name + ". Type help for the list of commands.");
+            return;
+        }
+        addToHistory(name);
+        try {
+            switch (name) {
+                case "help" -> help();
+                case "info" -> info();
+                case "show" -> show();
+                case "add" -> add();
+                case "update" -> update(argument);
+                case "remove_by_id" -> removeById(argument);
+                case "clear" -> collectionManager.clear();
+                case "save" -> collectionManager.save();
+                case "exit" -> running = false;
+                case "history" -> history();
+                case "min_by_distance" -> minByDistance();
+                case "filter_less_than_distance" -> filterLessThanDistance(argument);
+                default -> console.printError("Command is not implemented: " + name);
+            }
+        } catch (IllegalArgumentException e) {
+            console.printError("Invalid argument: " + e.getMessage());
+        }
+    }
+
+    private void help() {
+        descriptions.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(entry -> console.println(entry.getKey() + " : " + entry.getValue()));
+    }
+
+    private void info() {
+        console.println("Type: " + collectionManager.getCollection().getClass().getSimpleName());
+        console.println("Initialization date: " + collectionManager.getInitializationDate());
+        console.println("Number of elements: " + collectionManager.getCollection().size());
+    }
+
+    private void show() {
+        if (collectionManager.getCollection().isEmpty()) {
+            console.println("The collection is empty");
+            return;
+        }
+        for (Route route : collectionManager.getCollection()) {
+            console.println(route.toString());
+        }
+    }
+
+    private void add() {
+        Route route = new RouteAsker(console).ask(collectionManager.nextId());
+        collectionManager.add(route);
+        console.println("Route added with id " + route.getId());
+    }
+
+    private void update(String argument) {
+        long id = parseId(argument);
+        Route existing = collectionManager.getById(id);
+        if (existing == null) {
+            console.printError("No route with id " + id);
+            return;
+        }
+        Route updated = new RouteAsker(console).ask(id);
+        collectionManager.replace(existing, updated);
+        console.println("Route " + id + " updated");
+    }
+
+    private void removeById(String argument) {
+        long id = parseId(argument);
+        if (collectionManager.removeById(id)) {
+            console.println("Route " + id + " removed");
+        } else {
+            console.printError("No route with id " + id);
+        }
+    }
+
+    private void history() {
+        for (int i = 0; i < history.size(); i++) {
+            console.println((i + 1) + ". " + history.get(i));
+        }
+    }
+
+    private void minByDistance() {
+        collectionManager.getCollection().stream()
+                .min(Comparator.comparingDouble(Route::getDistance))
+                .ifPresentOrElse(
+                        route -> console.println(route.toString()),
+                        () -> console.println("The collection is empty"));
+    }
+
+    private void filterLessThanDistance(String argument) {
+        double distance;
+        try {
+            distance = Double.parseDouble(argument);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("distance must be a number");
+        }
+        long count = collectionManager.getCollection().stream()
+                .filter(route -> route.getDistance() < distance)
+                .peek(route -> console.println(route.toString()))
+                .count();
+        if (count == 0) {
+            console.println("No routes with distance less than " + distance);
+        }
+    }
+
+    private long parseId(String argument) {
+        if (argument.isEmpty()) {
+            throw new IllegalArgumentException("id is required");
+        }
+        try {
+            long id = Long.parseLong(argument);
+            if (id <= 0) {
+                throw new IllegalArgumentException("id must be positive");
+            }
+            return id;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("id must be a number");
+        }
+    }
+
+    private void addToHistory(String name) {
+        history.add(name);
+        if (history.size() > HISTORY_SIZE) {
+            history.remove(0);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package ru.itmo.lab5.cli;
+
+import ru.itmo.lab5.core.RouteStorage;
+import ru.itmo.lab5.core.Terminal;
+import ru.itmo.lab5.entity.Route;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class Dispatcher {
+    private static final int MAX_HISTORY = 13;
+
+    private final RouteStorage storage;
+    private final Terminal terminal;
+    private final Map<String, String> commands = new HashMap<>();
+    private final List<String> lastCommands = new ArrayList<>();
+    private boolean active = true;
+
+    public Dispatcher(RouteStorage storage, Terminal terminal) {
+        this.storage = storage;
+        this.terminal = terminal;
+        commands.put("help", "list the commands");
+        commands.put("info", "collection information");
+        commands.put("show", "show all routes");
+        commands.put("add", "add a route");
+        commands.put("update", "update a route by id");
+        commands.put("remove_by_id", "remove a route by id");
+        commands.put("clear", "remove all routes");
+        commands.put("save", "write routes to the file");
+        commands.put("exit", "quit the program");
+        commands.put("history", "show the last commands");
+        commands.put("min_by_distance", "route with the minimal distance");
+        commands.put("filter_less_than_distance", "routes shorter than the given distance");
+    }
+
+    public void start() {
+        while (active) {
+            terminal.print("$ ");
+            String input = terminal.readLine();
+            if (input == null) {
+                break;
+            }
+            input = input.trim();
+            if (input.isEmpty()) {
+                continue;
+            }
+            String[] tokens = input.split("\\s+", 2);
+            String arg = tokens.length > 1 ? tokens[1] : "";
+            dispatch(tokens[0], arg);
+        }
+    }
+
+    public void dispatch(String command, String arg) {
+        if (!commands.containsKey(command)) {
+            terminal.printError("No such command: " + command);
+            return;
+        }
+        remember(command);
+        try {
+            switch (command) {
+                case "help" -> printHelp();
+                case "info" -> printInfo();
+                case "show" -> printAll();
+                case "add" -> addRoute();
+                case "update" -> updateRoute(arg);
+                case "remove_by_id" -> removeRoute(arg);
+                case "clear" -> storage.clear();
+                case "save" -> storage.save();
+                case "exit" -> active = false;
+                case "history" -> printHistory();
+                case "min_by_distance" -> printMinByDistance();
+                case "filter_less_than_distance" -> printFiltered(arg);
+                default -> terminal.printError("Not implemented: " + command);
+            }
+        } catch (IllegalArgumentException ex) {
+            terminal.printError("Bad argument: " + ex.getMessage());
+        }
+    }
+
+    private void printHistory() {
+        for (int i = 0; i < lastCommands.size(); i++) {
+            terminal.println((i + 1) + ". " + lastCommands.get(i));
+        }
+    }
+
+    private void printHelp() {
+        commands.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(e -> terminal.println(e.getKey() + " - " + e.getValue()));
+    }
+
+    private void printInfo() {
+        terminal.println("Type: " + storage.getCollection().getClass().getSimpleName());
+        terminal.println("Created: " + storage.getInitializationDate());
+        terminal.println("Size: " + storage.getCollection().size());
+    }
+
+    private void printAll() {
+        if (storage.getCollection().isEmpty()) {
+            terminal.println("Nothing to show");
+            return;
+        }
+        for (Route r : storage.getCollection()) {
+            terminal.println(r.toString());
+        }
+    }
+
+    private void addRoute() {
+        Route r = new RouteReader(terminal).read(storage.nextId());
+        storage.add(r);
+        terminal.println("Added route " + r.getId());
+    }
+
+    private void removeRoute(String arg) {
+        long id = readId(arg);
+        if (storage.removeById(id)) {
+            terminal.println("Removed route " + id);
+        } else {
+            terminal.printError("Route " + id + " not found");
+        }
+    }
+
+    private void updateRoute(String arg) {
+        long id = readId(arg);
+        Route old = storage.getById(id);
+        if (old == null) {
+            terminal.printError("Route " + id + " not found");
+            return;
+        }
+        Route fresh = new RouteReader(terminal).read(id);
+        storage.replace(old, fresh);
+        terminal.println("Updated route " + id);
+    }
+
+    private void printMinByDistance() {
+        storage.getCollection().stream()
+                .min(Comparator.comparingDouble(Route::getDistance))
+                .ifPresentOrElse(
+                        r -> terminal.println(r.toString()),
+                        () -> terminal.println("Nothing to show"));
+    }
+
+    private void printFiltered(String arg) {
+        double limit;
+        try {
+            limit = Double.parseDouble(arg);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("not a number");
+        }
+        long found = storage.getCollection().stream()
+                .filter(r -> r.getDistance() < limit)
+                .peek(r -> terminal.println(r.toString()))
+                .count();
+        if (found == 0) {
+            terminal.println("Nothing shorter than " + limit);
+        }
+    }
+
+    private long readId(String arg) {
+        if (arg.isEmpty()) {
+            throw new IllegalArgumentException("missing id");
+        }
+        try {
+            long id = Long.parseLong(arg);
+            if (id <= 0) {
+                throw new IllegalArgumentException("id must be greater than zero");
+            }
+            return id;
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("id is not a number");
+        }
+    }
+
+    private void remember(String command) {
+        lastCommands.add(command);
+        if (lastCommands.size() > MAX_HISTORY) {
+            lastCommands.remove(0);
+        }
+    }
+}
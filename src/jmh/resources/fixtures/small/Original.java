@@ -0,0 +1,63 @@
+package ru.itmo.lab5.model;
+
+import java.util.Objects;
+
+/**
+ * Coordinates of a route point.
+ */
+public class Coordinates implements Comparable<Coordinates> {
+    private final Long x;
+    private final double y;
+
+    public Coordinates(Long x, double y) {
+        if (x == null) {
+            throw new IllegalArgumentException("x can not be null");
+        }
+        if (y > 613) {
+            throw new IllegalArgumentException("y must be less than 613");
+        }
+        this.x = x;
+        this.y = y;
+    }
+
+    public Long getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public double distanceTo(Coordinates other) {
+        double dx = x - other.x;
+        double dy = y - other.y;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    @Override
+    public int compareTo(Coordinates other) {
+        int result = Long.compare(x, other.x);
+        if (result != 0) {
+            return result;
+        }
+        return Double.compare(y, other.y);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Coordinates that = (Coordinates) o;
+        return Double.compare(that.y, y) == 0 && x.equals(that.x);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(x, y);
+    }
+
+    @Override
+    public String toString() {
+        return "Coordinates{x=" + x + ", y=" + y + "}";
+    }
+}
@@ -0,0 +1,60 @@
+package ru.itmo.lab5.data;
+
+import java.util.Objects;
+
+public class Point implements Comparable<Point> {
+    private final Long first;
+    private final double second;
+
+    public Point(Long first, double second) {
+        if (first == null) {
+            throw new IllegalArgumentException("first is null");
+        }
+        if (second > 613) {
+            throw new IllegalArgumentException("second is too big");
+        }
+        this.first = first;
+        this.second = second;
+    }
+
+    public double getSecond() {
+        return second;
+    }
+
+    public Long getFirst() {
+        return first;
+    }
+
+    @Override
+    public int compareTo(Point p) {
+        int cmp = Long.compare(first, p.first);
+        if (cmp != 0) {
+            return cmp;
+        }
+        return Double.compare(second, p.second);
+    }
+
+    public double distanceTo(Point p) {
+        double a = first - p.first;
+        double b = second - p.second;
+        return Math.sqrt(a * a + b * b);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(first, second);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+        Point point = (Point) obj;
+        return Double.compare(point.second, second) == 0 && first.equals(point.first);
+    }
+
+    @Override
+    public String toString() {
+        return "Point{first=" + first + ", second=" + second + "}";
+    }
+}
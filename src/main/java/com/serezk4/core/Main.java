@@ -1,28 +1,31 @@
 package com.serezk4.core;
 
 import com.serezk4.core.lab.check.Checker;
+import com.serezk4.core.lab.check.ClazzCache;
+import com.serezk4.core.lab.check.PairScheduler;
 import com.serezk4.core.lab.check.apted.AptedCheck;
+import com.serezk4.core.lab.check.filter.SizeIndex;
+import com.serezk4.core.lab.metrics.RunMetrics;
 import com.serezk4.core.lab.model.Clazz;
+import com.serezk4.core.lab.model.ContentHash;
 import com.serezk4.core.lab.model.Lab;
 import com.serezk4.core.lab.model.Plagiarist;
+import com.serezk4.core.lab.storage.FingerprintIndex;
 import com.serezk4.core.lab.storage.LabStorage;
-import com.serezk4.core.lab.util.GroupKeySelector;
+import com.serezk4.core.lab.storage.LabStream;
+import com.serezk4.core.lab.storage.SimilarityStore;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.Optional;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.TreeMap;
 
 import static com.serezk4.core.html.HtmlGenerator.generateHtmlReport;
 
@@ -40,8 +43,9 @@ import static com.serezk4.core.html.HtmlGenerator.generateHtmlReport;
  * <ul>
  *     <li>Validate and parse input arguments.</li>
  *     <li>Load and cache lab data for efficiency.</li>
- *     <li>Perform plagiarism detection using a multi-threaded approach.</li>
+ *     <li>Perform plagiarism detection on a fixed pool of worker threads, see {@link PairScheduler}.</li>
  *     <li>Generate an HTML report summarizing the results.</li>
+ *     <li>Export stage timings, counters and latency histograms of the run as JSON, see {@link RunMetrics}.</li>
  * </ul>
  * </p>
  *
@@ -54,20 +58,37 @@ import static com.serezk4.core.html.HtmlGenerator.generateHtmlReport;
  * </ol>
  * </p>
  *
+ * <p>
+ * Alternatively, {@code batch <labNumber>} checks every stored lab of a lab number against every other one in a
+ * single process and writes one report per student, see {@link #runBatch(int)}.
+ * </p>
+ *
  * @author serezk4
  * @version 1.0
  * @since 1.0
  */
 public class Main {
-    private static final List<Checker> CHECKERS = List.of(new AptedCheck());
-    private static final ExecutorService EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+    private static final double SIMILARITY_THRESHOLD = 0.61;
+
+    /**
+     * System property that disables the subtree fingerprint shortlist when set to {@code false}, so that every
+     * size-compatible pair is compared, see {@link FingerprintIndex}.
+     */
+    private static final String FINGERPRINTS_PROPERTY = "labguard.candidates.fingerprints";
 
     private final BufferedWriter consoleWriter = new BufferedWriter(new OutputStreamWriter(System.out));
-    private final GroupKeySelector groupKeySelector = new GroupKeySelector(
-            0,
-            120 * 500,
-            120 * 50
-    );
+
+    private final PairScheduler scheduler = PairScheduler.fromSystemProperties();
+    private final RunMetrics metrics = new RunMetrics();
+
+    private final List<Checker> checkers = List.of(new AptedCheck());
+    private final ClazzCache<ClazzSummary> summaries = new ClazzCache<>(ClazzSummary::of);
+
+    private final LabStorage cache;
+
+    private Main() throws IOException {
+        this.cache = new LabStorage(metrics);
+    }
 
     /**
      * Main method that initializes the application and validates input arguments.
@@ -82,20 +103,43 @@ public class Main {
      * If the arguments are invalid, the application prints a usage message and terminates.
      * </p>
      *
-     * @param args command-line arguments in the format: `<isu> <labNumber> <path>`
+     * @param args command-line arguments in the format: `<isu> <labNumber> <path>` or `batch <labNumber>`
      * @throws IOException if an I/O error occurs during execution
      */
     public static void main(final String... args) throws IOException {
+        if (args.length == 2 && args[0].equals("batch") && args[1].matches("\\d+")) {
+            new Main().runBatch(Integer.parseInt(args[1]));
+            return;
+        }
+
         if (args.length != 3
                 || !args[0].matches("\\d{6}")
                 || !args[1].matches("\\d+")
                 || !Files.exists(Path.of(args[2]))
         ) {
-            System.out.println("Use format: <isu> <labNumber> <path>");
+            System.out.println("Use format: <isu> <labNumber> <path> | batch <labNumber>");
             return;
         }
 
-        new Main().run(args[0], Integer.parseInt(args[1]), args[2]);
+        check(args[0], Integer.parseInt(args[1]), Path.of(args[2]));
+    }
+
+    /**
+     * Checks the lab of a student against all stored labs of the same lab number, as the
+     * {@code <isu> <labNumber> <path>} command does, and returns the matches found.
+     *
+     * @param isu       ISU identifier of the target lab owner (must be 6 digits)
+     * @param labNumber Number of the lab to analyze (must be positive)
+     * @param path      Path to the lab files (must exist and be readable)
+     * @return the matched classes keyed by the ISU of every other student, see {@link #run}
+     * @throws IOException if an error occurs while reading or writing data
+     */
+    public static Map<String, List<Plagiarist>> check(
+            final String isu,
+            final int labNumber,
+            final Path path
+    ) throws IOException {
+        return new Main().run(isu, labNumber, path);
     }
 
     /**
@@ -105,53 +149,207 @@ public class Main {
      * This method performs the following steps:
      * <ol>
      *     <li>Loads and caches the target lab from the specified path.</li>
-     *     <li>Loads all labs with the same lab number, excluding the target lab.</li>
-     *     <li>Performs parallel plagiarism checks for each loaded lab against the target lab.</li>
+     *     <li>Streams all labs with the same lab number, excluding the target lab, see {@link LabStream}.</li>
+     *     <li>Scores every candidate pair of a streamed class and a target class on the {@link PairScheduler}, one
+     *     batch of labs at a time, while the next labs are read. Candidates are pairs of compatible size, see
+     *     {@link SizeIndex}, that share a subtree, see {@link FingerprintIndex}.</li>
      *     <li>Generates an HTML report summarizing the results.</li>
+     *     <li>Persists the similarity scores computed during the run.</li>
+     *     <li>Writes the metrics of the run to the file given by {@value RunMetrics#FILE_PROPERTY}.</li>
      * </ol>
      * </p>
      *
      * @param isu       ISU identifier of the target lab owner (must be 6 digits)
      * @param labNumber Number of the lab to analyze (must be positive)
      * @param path      Path to the lab files (must exist and be readable)
+     * @return the matched classes keyed by the ISU of every other student, as {@link Plagiarist}s of a class of
+     *         that student and a class of the target lab
      * @throws IOException if an error occurs while reading or writing data
      */
-    private void run(
+    private Map<String, List<Plagiarist>> run(
             final String isu,
             final int labNumber,
-            final String path
+            final Path path
     ) throws IOException {
         final long startOverall = System.nanoTime();
 
-        final LabStorage cache = new LabStorage();
-        final Path sourcePath = Path.of(path);
+        final Lab targetLab = metrics.time("load.target", () -> loadAndCacheLab(cache, isu, labNumber, path));
+        final SizeIndex targetIndex = new SizeIndex(targetLab.clazzes(), AptedCheck.MIN_OPERATION_COST);
+        final FingerprintIndex fingerprints = metrics.time("load.fingerprints", () -> loadFingerprintIndex(labNumber));
+        final Map<Clazz, FingerprintIndex.Shortlist> shortlists = new IdentityHashMap<>();
+        targetLab.clazzes().forEach(target -> shortlists.put(target, fingerprints.shortlist(target)));
+        final SimilarityStore similarityStore = cache.openSimilarityStore(labNumber);
+
+        // Labs are dropped once compared; only the matched classes are kept for the report
+        final Map<String, List<Plagiarist>> results = new TreeMap<>();
+        try (LabStream stream = cache.streamAllByLabNumber(labNumber)) {
+            while (true) {
+                final List<Lab> batch = metrics.time("load.corpus", stream::nextBatch);
+                if (batch.isEmpty()) break;
+                metrics.add("labs.streamed", batch.size());
+
+                final long filterStart = System.nanoTime();
+                final List<Comparison> comparisons = new ArrayList<>();
+                for (Lab lab : batch) {
+                    if (lab.isu().equals(isu)) continue;
+                    results.put(lab.isu(), new ArrayList<>());
+                    for (Clazz clazz : lab.clazzes()) {
+                        final int nodeCount = summaries.get(clazz).nodeCount();
+                        for (Clazz target : targetIndex.candidates(nodeCount, SIMILARITY_THRESHOLD)) {
+                            if (!shortlists.get(target).contains(lab.isu(), clazz)) {
+                                metrics.increment("pairs.unshared");
+                                continue;
+                            }
+                            comparisons.add(new Comparison(lab.isu(), clazz, isu, target));
+                        }
+                    }
+                }
+                metrics.recordStage("filter.candidates", System.nanoTime() - filterStart);
+
+                final double[] similarities = score(similarityStore, comparisons);
+                for (int i = 0; i < comparisons.size(); i++) {
+                    if (similarities[i] <= SIMILARITY_THRESHOLD) continue;
+                    final Comparison comparison = comparisons.get(i);
+                    results.get(comparison.sourceIsu())
+                            .add(new Plagiarist(comparison.source(), comparison.target(), similarities[i]));
+                }
+            }
+        }
+
+        final long reportStart = System.nanoTime();
+        generateHtmlReport(isu, labNumber, targetLab, results);
+        metrics.recordStage("report", System.nanoTime() - reportStart);
+        scheduler.close();
+        similarityStore.close();
 
-        final Lab targetLab = loadAndCacheLab(cache, isu, labNumber, sourcePath);
-        final List<Lab> labs = cache.loadAllByLabNumber(labNumber).stream()
-                .filter(lab -> !lab.isu().equals(isu))
+        final long endOverall = System.nanoTime();
+        metrics.recordStage("total", endOverall - startOverall);
+        consoleWriter
+                .append("Total execution time: ")
+                .append(String.format("%.2f seconds\n", (endOverall - startOverall) / 1e9))
+                .append("Metrics written to ").append(metrics.writeToConfiguredFile().toString()).append('\n')
+                .flush();
+        return results;
+    }
+
+    /**
+     * Checks all stored labs of a lab number against each other and writes one report per student.
+     *
+     * <p>
+     * The corpus is loaded once. The candidate pairs of classes of every unordered pair of labs are scored exactly
+     * once on the {@link PairScheduler}, and each score is reported to both students, since the similarity of two
+     * classes does not depend on the direction of the comparison. This halves the number of evaluations compared to
+     * running {@link #run} for every student. Reports are written to
+     * {@code plagiarism_reports/<labNumber>/<isu>.html}.
+     * </p>
+     *
+     * @param labNumber Number of the lab to analyze (must be positive)
+     * @throws IOException if an error occurs while reading or writing data
+     */
+    private void runBatch(final int labNumber) throws IOException {
+        final long startOverall = System.nanoTime();
+
+        final List<Lab> labs = metrics.time("load.corpus", () -> cache.loadAllByLabNumber(labNumber));
+
+        final long filterStart = System.nanoTime();
+        final List<SizeIndex> indexes = labs.stream()
+                .map(lab -> new SizeIndex(lab.clazzes(), AptedCheck.MIN_OPERATION_COST))
                 .toList();
+        final FingerprintIndex fingerprints = metrics.time("load.fingerprints", () -> loadFingerprintIndex(labNumber));
+        final Map<Clazz, FingerprintIndex.Shortlist> shortlists = new IdentityHashMap<>();
+        final SimilarityStore similarityStore = cache.openSimilarityStore(labNumber);
 
-        final Map<String, List<Plagiarist>> results = new ConcurrentHashMap<>();
-        final Map<Integer, List<Clazz>> targetGroupedByLength = targetLab.clazzes().stream()
-                .collect(Collectors.groupingBy(groupKeySelector::selectGroupKey));
+        final List<Comparison> comparisons = new ArrayList<>();
+        for (int first = 0; first < labs.size(); first++) {
+            for (int second = first + 1; second < labs.size(); second++) {
+                for (Clazz clazz : labs.get(second).clazzes()) {
+                    final FingerprintIndex.Shortlist shortlist =
+                            shortlists.computeIfAbsent(clazz, fingerprints::shortlist);
+                    final int nodeCount = summaries.get(clazz).nodeCount();
+                    for (Clazz target : indexes.get(first).candidates(nodeCount, SIMILARITY_THRESHOLD)) {
+                        if (!shortlist.contains(labs.get(first).isu(), target)) {
+                            metrics.increment("pairs.unshared");
+                            continue;
+                        }
+                        comparisons.add(new Comparison(labs.get(first).isu(), target, labs.get(second).isu(), clazz));
+                    }
+                }
+            }
+        }
+        metrics.recordStage("filter.candidates", System.nanoTime() - filterStart);
 
-        CompletableFuture.allOf(labs.stream().map(lab -> CompletableFuture.runAsync(() -> {
-            List<Plagiarist> plagiarists = lab.clazzes().stream()
-                    .map(clazz -> findPlagiarist(clazz, targetGroupedByLength))
-                    .flatMap(Optional::stream)
-                    .toList();
+        final Map<String, Map<String, List<Plagiarist>>> results = new LinkedHashMap<>();
+        for (Lab lab : labs) {
+            final Map<String, List<Plagiarist>> byOther = new LinkedHashMap<>();
+            labs.stream()
+                    .filter(other -> !other.isu().equals(lab.isu()))
+                    .forEach(other -> byOther.put(other.isu(), new ArrayList<>()));
+            results.put(lab.isu(), byOther);
+        }
 
-            results.put(lab.isu(), plagiarists);
-        }, EXECUTOR)).toArray(CompletableFuture[]::new)).join();
+        final double[] similarities = score(similarityStore, comparisons);
+        for (int i = 0; i < comparisons.size(); i++) {
+            if (similarities[i] <= SIMILARITY_THRESHOLD) continue;
+            final Comparison comparison = comparisons.get(i);
+            results.get(comparison.sourceIsu()).get(comparison.targetIsu())
+                    .add(new Plagiarist(comparison.target(), comparison.source(), similarities[i]));
+            results.get(comparison.targetIsu()).get(comparison.sourceIsu())
+                    .add(new Plagiarist(comparison.source(), comparison.target(), similarities[i]));
+        }
 
-        generateHtmlReport(isu, labNumber, labs, targetLab, results);
+        final long reportStart = System.nanoTime();
+        for (Lab lab : labs) {
+            generateHtmlReport(lab.isu(), labNumber, lab, results.get(lab.isu()),
+                    Path.of("plagiarism_reports", String.valueOf(labNumber), lab.isu() + ".html"));
+        }
+        metrics.recordStage("report", System.nanoTime() - reportStart);
+        scheduler.close();
+        similarityStore.close();
 
         final long endOverall = System.nanoTime();
+        metrics.recordStage("total", endOverall - startOverall);
         consoleWriter
-                .append("Total execution time: ")
+                .append("Checked ").append(String.valueOf(labs.size())).append(" labs in ")
                 .append(String.format("%.2f seconds\n", (endOverall - startOverall) / 1e9))
+                .append("Metrics written to ").append(metrics.writeToConfiguredFile().toString()).append('\n')
                 .flush();
-        consoleWriter.close();
+    }
+
+    /**
+     * Scores comparisons on the {@link #scheduler} with the first checker, reusing the scores kept in a store.
+     *
+     * <p>
+     * Every comparison is scored, not only until the first match of a class, so that all matches are reported.
+     * Scores are returned in the order of the comparisons regardless of the order they were computed in.
+     * </p>
+     *
+     * @param similarityStore the scores of the lab number of the comparisons
+     * @param comparisons     the pairs of classes to score
+     * @return the similarity of every pair, at the position of the pair
+     */
+    private double[] score(
+            final SimilarityStore similarityStore,
+            final List<Comparison> comparisons
+    ) {
+        return metrics.time("compare", () -> scheduler.score(comparisons, comparison -> detectCached(
+                similarityStore,
+                checkers.getFirst(),
+                comparison.source(),
+                comparison.target(),
+                SIMILARITY_THRESHOLD
+        )));
+    }
+
+    /**
+     * Loads the subtree fingerprint index of a lab number, unless disabled by {@value #FINGERPRINTS_PROPERTY}.
+     *
+     * @param labNumber Number of the lab whose index to load
+     * @return the index, or an empty index, whose shortlists contain every class, if fingerprints are disabled
+     */
+    private FingerprintIndex loadFingerprintIndex(final int labNumber) {
+        return Boolean.parseBoolean(System.getProperty(FINGERPRINTS_PROPERTY, "true"))
+                ? cache.loadFingerprintIndex(labNumber)
+                : FingerprintIndex.empty();
     }
 
     /**
@@ -184,71 +382,97 @@ public class Main {
     }
 
     /**
-     * Detects potential plagiarism between a single source class and a set of target classes grouped by length.
+     * Computes the similarity score between two classes using a {@link Checker}, with persistent caching.
      *
      * <p>
-     * The method first determines the group key of the source class based on its length. It then compares the source
-     * class against all target classes within the same group, as well as adjacent groups, filtering out classes with
-     * significant length differences. If a similarity score above 0.7 is detected, a {@link Plagiarist} object is
-     * created to represent the plagiarism instance.
+     * Scores are kept in the {@link SimilarityStore} of the lab number, keyed by the content hashes of both
+     * classes, the {@link Checker#version()} of the checker and the threshold. A pair that has been scored by any
+     * previous run with the same checker version and threshold is not recomputed, so re-checking an unchanged
+     * corpus only costs lookups. The threshold is part of the key because scores not above it are not exact, see
+     * {@link Checker#detect(Clazz, Clazz, double)}. Pairs ruled out by {@link Checker#canExceed} are neither
+     * scored nor stored.
      * </p>
      *
-     * @param clazz                 The source {@link Clazz} to analyze
-     * @param targetGroupedByLength A map of target {@link Clazz} objects grouped by their length
-     * @return an {@link Optional} containing a {@link Plagiarist} object if plagiarism is detected,
-     *         or an empty {@link Optional} otherwise
+     * <p>
+     * Every call is counted in the {@link RunMetrics} as a considered pair, and as a pruned pair, a similarity
+     * cache hit or a miss. The time of the lower bound cascade is summed up in the {@code filter.lowerBounds} stage
+     * and the time of each computed score in the {@code apted} stage and in the latency histogram of its tree size.
+     * </p>
+     *
+     * @param similarityStore The {@link SimilarityStore} of the lab number of both classes
+     * @param checker         The {@link Checker} instance used to compute the similarity score
+     * @param source          The source {@link Clazz}
+     * @param target          The target {@link Clazz}
+     * @param threshold       The similarity above which the exact score is required
+     * @return the similarity score between the source and target classes if it exceeds the threshold,
+     *         a score not above the threshold otherwise
      */
-    private Optional<Plagiarist> findPlagiarist(
-            final Clazz clazz,
-            final Map<Integer, List<Clazz>> targetGroupedByLength
+    private double detectCached(
+            final SimilarityStore similarityStore,
+            final Checker checker,
+            final Clazz source,
+            final Clazz target,
+            final double threshold
     ) {
-        final int groupKey = groupKeySelector.selectGroupKey(clazz);
-        final int sourceLength = clazz.source().length();
-
-        final int lengthThreshold = 2000;
-        final double similarityThreshold = 0.61;
+        metrics.increment("pairs.considered");
 
-        List<Clazz> potentialTargets = Stream.of(groupKey - 1, groupKey, groupKey + 1)
-                .map(targetGroupedByLength::get)
-                .filter(Objects::nonNull)
-                .flatMap(List::stream)
-                .filter(target -> Math.abs(sourceLength - target.source().length()) <= lengthThreshold)
-                .toList();
+        final long filterStart = System.nanoTime();
+        final boolean candidate = checker.canExceed(source, target, threshold);
+        metrics.recordStage("filter.lowerBounds", System.nanoTime() - filterStart);
+        if (!candidate) {
+            metrics.increment("pairs.pruned");
+            return 0.0;
+        }
 
-        return potentialTargets.parallelStream()
-                .map(target -> {
-                    double similarity = detectCached(CHECKERS.getFirst(), clazz, target);
-                    return similarity > similarityThreshold ? new Plagiarist(clazz, target, similarity) : null;
-                })
-                .filter(Objects::nonNull)
-                .findFirst();
+        final ClazzSummary sourceSummary = summaries.get(source);
+        final ClazzSummary targetSummary = summaries.get(target);
+        final boolean[] computed = new boolean[1];
+        final double similarity = similarityStore.computeIfAbsent(
+                sourceSummary.contentHash(),
+                targetSummary.contentHash(),
+                checker.version() + "@" + threshold,
+                () -> {
+                    computed[0] = true;
+                    final long start = System.nanoTime();
+                    final double score = checker.detect(source, target, threshold);
+                    final long nanos = System.nanoTime() - start;
+                    metrics.recordStage("apted", nanos);
+                    metrics.recordLatency(Math.max(sourceSummary.nodeCount(), targetSummary.nodeCount()), nanos);
+                    return score;
+                }
+        );
+        metrics.increment(computed[0] ? "similarityCache.misses" : "similarityCache.hits");
+        return similarity;
     }
 
-    private final Map<String, Double> similarityCache = new ConcurrentHashMap<>();
-
     /**
-     * Computes the similarity score between two classes using a {@link Checker}, with caching for optimization.
+     * A pair of classes to score, together with the ISUs of the students they belong to.
      *
-     * <p>
-     * The similarity score is calculated only once for a given pair of classes. Subsequent calls with the same
-     * pair return the cached result. This ensures that repeated calculations are avoided, improving overall
-     * performance during the plagiarism detection process.
-     * </p>
+     * @param sourceIsu ISU of the owner of the source class
+     * @param source    the source class
+     * @param targetIsu ISU of the owner of the target class
+     * @param target    the target class
+     */
+    private record Comparison(
+            String sourceIsu,
+            Clazz source,
+            String targetIsu,
+            Clazz target
+    ) {
+    }
+
+    /**
+     * The values of a class needed to find its candidates and to look up its scores, computed once per class.
      *
-     * @param checker The {@link Checker} instance used to compute the similarity score
-     * @param source  The source {@link Clazz}
-     * @param target  The target {@link Clazz}
-     * @return the similarity score between the source and target classes, ranging from 0.0 (completely different)
-     *         to 1.0 (identical)
+     * @param contentHash the {@link ContentHash} of the normalized source of the class
+     * @param nodeCount   the node count of the class tree, see {@link SizeIndex#nodeCount(Clazz)}
      */
-    private double detectCached(
-            final Checker checker,
-            final Clazz source,
-            final Clazz target
+    private record ClazzSummary(
+            ContentHash contentHash,
+            int nodeCount
     ) {
-        return similarityCache.computeIfAbsent(
-                String.join(":", String.valueOf(source.hashCode()), String.valueOf(target.hashCode())), _ ->
-                        checker.detect(source, target)
-        );
+        private static ClazzSummary of(final Clazz clazz) {
+            return new ClazzSummary(ContentHash.of(clazz.normalizedSource()), SizeIndex.nodeCount(clazz));
+        }
     }
 }
@@ -0,0 +1,142 @@
+package com.serezk4.core.apted.costmodel;
+
+import com.serezk4.core.apted.node.Node;
+import com.serezk4.core.apted.node.NodeIndexer;
+
+/**
+ * Cost model pricing edit operations on nodes of an indexed tree, addressed by their left-to-right preorder id.
+ *
+ * <p>
+ * The node-based methods of {@link CostModel} dereference a {@link Node} and its data for every operation. An
+ * indexed cost model reads what it needs from the arrays of the {@link NodeIndexer} instead, such as
+ * {@link NodeIndexer#preL_to_label} and {@link NodeIndexer#children}, so the hot loops of the distance algorithms
+ * only index into primitive arrays. Implementations must price every operation exactly as the node-based methods
+ * of the same model, so both contracts yield the same distances.
+ * </p>
+ *
+ * <p>
+ * Deletions and insertions are priced once per node when the tree is indexed and stored in
+ * {@link NodeIndexer#preL_to_delCost} and {@link NodeIndexer#preL_to_insCost}, so only renames are priced during
+ * the distance computation.
+ * </p>
+ *
+ * <p>
+ * Cost models implementing only {@link CostModel} are adapted by {@link #of(CostModel)}, which looks the nodes up
+ * in {@link NodeIndexer#preL_to_node}.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>{@code
+ * IndexedCostModel<StringNodeData> costs = IndexedCostModel.of(costModel);
+ * float renameCost = costs.ren(indexer1, x, indexer2, y);
+ * }</pre>
+ *
+ * @param <D> type of node data on which the cost model is defined
+ *
+ * @see CostModel
+ * @see NodeIndexer
+ *
+ * @author serezk4
+ * @version 1.0
+ * @since 1.0
+ */
+public interface IndexedCostModel<D> extends CostModel<D> {
+
+    /**
+     * Calculates the cost of deleting a node.
+     *
+     * @param tree indexer of the tree the node belongs to
+     * @param preL left-to-right preorder id of the node
+     * @return the cost of deleting the node
+     */
+    float del(
+            NodeIndexer<D, ?> tree,
+            int preL
+    );
+
+    /**
+     * Calculates the cost of inserting a node.
+     *
+     * @param tree indexer of the tree the node belongs to
+     * @param preL left-to-right preorder id of the node
+     * @return the cost of inserting the node
+     */
+    float ins(
+            NodeIndexer<D, ?> tree,
+            int preL
+    );
+
+    /**
+     * Calculates the cost of renaming (mapping) two nodes.
+     *
+     * @param tree1 indexer of the tree of the source node
+     * @param preL1 left-to-right preorder id of the source node
+     * @param tree2 indexer of the tree of the destination node
+     * @param preL2 left-to-right preorder id of the destination node
+     * @return the cost of renaming the source node to the destination node
+     */
+    float ren(
+            NodeIndexer<D, ?> tree1,
+            int preL1,
+            NodeIndexer<D, ?> tree2,
+            int preL2
+    );
+
+    /**
+     * Returns an indexed view of a cost model.
+     *
+     * @param costModel the cost model to adapt
+     * @param <D>       type of node data
+     * @return the cost model itself if it is indexed, otherwise an adapter looking nodes up by preorder id
+     */
+    @SuppressWarnings("unchecked")
+    static <D> IndexedCostModel<D> of(final CostModel<D> costModel) {
+        if (costModel instanceof IndexedCostModel<?> indexed) return (IndexedCostModel<D>) indexed;
+
+        return new IndexedCostModel<>() {
+            @Override
+            public float del(final Node<D> n) {
+                return costModel.del(n);
+            }
+
+            @Override
+            public float ins(final Node<D> n) {
+                return costModel.ins(n);
+            }
+
+            @Override
+            public float ren(
+                    final Node<D> n1,
+                    final Node<D> n2
+            ) {
+                return costModel.ren(n1, n2);
+            }
+
+            @Override
+            public float del(
+                    final NodeIndexer<D, ?> tree,
+                    final int preL
+            ) {
+                return costModel.del(tree.preL_to_node[preL]);
+            }
+
+            @Override
+            public float ins(
+                    final NodeIndexer<D, ?> tree,
+                    final int preL
+            ) {
+                return costModel.ins(tree.preL_to_node[preL]);
+            }
+
+            @Override
+            public float ren(
+                    final NodeIndexer<D, ?> tree1,
+                    final int preL1,
+                    final NodeIndexer<D, ?> tree2,
+                    final int preL2
+            ) {
+                return costModel.ren(tree1.preL_to_node[preL1], tree2.preL_to_node[preL2]);
+            }
+        };
+    }
+}
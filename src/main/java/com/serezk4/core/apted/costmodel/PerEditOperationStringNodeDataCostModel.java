@@ -24,13 +24,14 @@
 package com.serezk4.core.apted.costmodel;
 
 import com.serezk4.core.apted.node.Node;
+import com.serezk4.core.apted.node.NodeIndexer;
 import com.serezk4.core.apted.node.StringNodeData;
 
 /**
  * This is a cost model defined on {@link node.StringNodeData} with a fixed cost
  * per edit operation.
  */
-public class PerEditOperationStringNodeDataCostModel implements CostModel<StringNodeData> {
+public class PerEditOperationStringNodeDataCostModel implements IndexedCostModel<StringNodeData> {
 
     /**
      * Stores the cost of deleting a node.
@@ -90,4 +91,43 @@ public class PerEditOperationStringNodeDataCostModel implements CostModel<String
     public float ren(Node<StringNodeData> n1, Node<StringNodeData> n2) {
         return (n1.getNodeData().getLabel().equals(n2.getNodeData().getLabel())) ? 0.0f : renCost;
     }
+
+    /**
+     * Calculates the cost of deleting a node of an indexed tree.
+     *
+     * @param tree indexer of the tree the node belongs to.
+     * @param preL left-to-right preorder id of the node.
+     * @return the cost of deleting the node.
+     */
+    @Override
+    public float del(NodeIndexer<StringNodeData, ?> tree, int preL) {
+        return delCost;
+    }
+
+    /**
+     * Calculates the cost of inserting a node of an indexed tree.
+     *
+     * @param tree indexer of the tree the node belongs to.
+     * @param preL left-to-right preorder id of the node.
+     * @return the cost of inserting the node.
+     */
+    @Override
+    public float ins(NodeIndexer<StringNodeData, ?> tree, int preL) {
+        return insCost;
+    }
+
+    /**
+     * Calculates the cost of renaming the string labels of two nodes of
+     * indexed trees, comparing their label ids.
+     *
+     * @param tree1 indexer of the tree of the source node.
+     * @param preL1 left-to-right preorder id of the source node.
+     * @param tree2 indexer of the tree of the destination node.
+     * @param preL2 left-to-right preorder id of the destination node.
+     * @return the cost of renaming the source node to the destination node.
+     */
+    @Override
+    public float ren(NodeIndexer<StringNodeData, ?> tree1, int preL1, NodeIndexer<StringNodeData, ?> tree2, int preL2) {
+        return tree1.preL_to_label[preL1] == tree2.preL_to_label[preL2] ? 0.0f : renCost;
+    }
 }
@@ -24,17 +24,20 @@
 package com.serezk4.core.apted.costmodel;
 
 import com.serezk4.core.apted.node.Node;
+import com.serezk4.core.apted.node.NodeIndexer;
 import com.serezk4.core.apted.node.StringNodeData;
 
 /**
  * This is a unit-nost model defined on string labels.
  *
+ * <p>Indexed trees are priced by comparing label ids, see
+ * {@link NodeIndexer#preL_to_label}.
+ *
  * @see CostModel
+ * @see IndexedCostModel
  * @see StringNodeData
  */
-// TODO: Use a label dictionary to encode string labels with integers for
-//       faster rename cost computation.
-public class StringUnitCostModel implements CostModel<StringNodeData> {
+public class StringUnitCostModel implements IndexedCostModel<StringNodeData> {
 
     /**
      * Calculates the cost of deleting a node.
@@ -67,4 +70,43 @@ public class StringUnitCostModel implements CostModel<StringNodeData> {
     public float ren(Node<StringNodeData> n1, Node<StringNodeData> n2) {
         return (n1.getNodeData().getLabel().equals(n2.getNodeData().getLabel())) ? 0.0f : 1.0f;
     }
+
+    /**
+     * Calculates the cost of deleting a node of an indexed tree.
+     *
+     * @param tree indexer of the tree the node belongs to.
+     * @param preL left-to-right preorder id of the node.
+     * @return {@code 1} - a fixed cost of deleting a node.
+     */
+    @Override
+    public float del(NodeIndexer<StringNodeData, ?> tree, int preL) {
+        return 1.0f;
+    }
+
+    /**
+     * Calculates the cost of inserting a node of an indexed tree.
+     *
+     * @param tree indexer of the tree the node belongs to.
+     * @param preL left-to-right preorder id of the node.
+     * @return {@code 1} - a fixed cost of inserting a node.
+     */
+    @Override
+    public float ins(NodeIndexer<StringNodeData, ?> tree, int preL) {
+        return 1.0f;
+    }
+
+    /**
+     * Calculates the cost of renaming the label of a source node to the label
+     * of a destination node of indexed trees.
+     *
+     * @param tree1 indexer of the tree of the source node.
+     * @param preL1 left-to-right preorder id of the source node.
+     * @param tree2 indexer of the tree of the destination node.
+     * @param preL2 left-to-right preorder id of the destination node.
+     * @return {@code 0} if label ids of renamed nodes are equal, and {@code 1} otherwise.
+     */
+    @Override
+    public float ren(NodeIndexer<StringNodeData, ?> tree1, int preL1, NodeIndexer<StringNodeData, ?> tree2, int preL2) {
+        return tree1.preL_to_label[preL1] == tree2.preL_to_label[preL2] ? 0.0f : 1.0f;
+    }
 }
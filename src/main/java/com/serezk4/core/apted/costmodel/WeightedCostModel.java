@@ -1,11 +1,13 @@
 package com.serezk4.core.apted.costmodel;
 
+import com.serezk4.core.apted.node.LabelDictionary;
 import com.serezk4.core.apted.node.Node;
+import com.serezk4.core.apted.node.NodeIndexer;
 import com.serezk4.core.apted.node.StringNodeData;
 
-import java.util.Map;
-import java.util.TreeMap;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Implements a weighted cost model for the APTED algorithm, providing customizable costs for insertion,
@@ -20,6 +22,25 @@ import java.util.concurrent.ConcurrentHashMap;
  * </ul>
  * </p>
  *
+ * <p>
+ * Costs only depend on labels and child counts, and the labels are the small fixed set of parse rule names. Labels
+ * are therefore handled as {@link LabelDictionary} ids, and the label-dependent parts of the costs are kept in
+ * tables indexed by id: the base cost of every label and the rename cost of every pair of labels. An operation is
+ * a few array reads, without string comparisons, hashing or allocation.
+ * </p>
+ *
+ * <p>
+ * The tables are shared by all instances and threads of the process. They are filled once with the labels of the
+ * grammar, see {@link #preload(Collection)}, and are immutable once published: a label learned later by the
+ * dictionary is added by publishing extended copies with a compare-and-set, filling in only the rows and columns
+ * of the new labels. Readers never lock, and a new cost model starts with the similarities computed so far.
+ * </p>
+ *
+ * <p>
+ * On indexed trees, labels and child counts are read from the {@link NodeIndexer} arrays, see
+ * {@link IndexedCostModel}.
+ * </p>
+ *
  * <p><b>Usage:</b></p>
  * <pre>{@code
  * WeightedCostModel costModel = new WeightedCostModel();
@@ -38,15 +59,33 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class WeightedCostModel extends StringUnitCostModel {
 
-    private final Map<String, Float> baseCostCache = new ConcurrentHashMap<>();
-    private final Map<String, Float> similarityCache = new ConcurrentHashMap<>();
+    /**
+     * Label-dependent costs of all labels known to the dictionary when they were built, indexed by label id.
+     *
+     * @param baseCosts   base cost of every label
+     * @param renameCosts {@code baseCost(l1) + baseCost(l2) + (1 - semanticSimilarity(l1, l2)) * 3} for every pair of
+     *                    labels
+     */
+    private record CostTables(
+            float[] baseCosts,
+            float[][] renameCosts
+    ) {
+    }
 
-    private static final TreeMap<Integer, Float> LEVENSHTEIN_SIMILARITY_MAP = new TreeMap<>();
+    private static final LabelDictionary DICTIONARY = LabelDictionary.getInstance();
+    private static final AtomicReference<CostTables> TABLES =
+            new AtomicReference<>(new CostTables(new float[0], new float[0][]));
 
-    static {
-        for (int i = 0; i <= 128; i++) {
-            LEVENSHTEIN_SIMILARITY_MAP.put(i, i / 128.0f);
-        }
+    /**
+     * Adds labels to the shared cost tables ahead of the first comparison, so that the tables do not have to be
+     * extended while trees are compared.
+     *
+     * @param labels the labels to add, typically all labels of the grammar
+     */
+    public static void preload(final Collection<String> labels) {
+        int maxId = -1;
+        for (String label : labels) maxId = Math.max(maxId, DICTIONARY.id(label));
+        if (maxId >= 0) grow(maxId);
     }
 
     /**
@@ -85,6 +124,7 @@ public class WeightedCostModel extends StringUnitCostModel {
      *     <li>{@code structurePenalty} is the penalty for differing children counts.</li>
      *     <li>{@code semanticSimilarity} is the Levenshtein-based similarity between node labels.</li>
      * </ul>
+     * Everything but the structure penalty is read from the rename cost table.
      * </p>
      *
      * @param n1 the first node
@@ -93,15 +133,68 @@ public class WeightedCostModel extends StringUnitCostModel {
      */
     @Override
     public float ren(Node<StringNodeData> n1, Node<StringNodeData> n2) {
-        String label1 = n1.getNodeData().getLabel();
-        String label2 = n2.getNodeData().getLabel();
+        int label1 = n1.getNodeData().labelId();
+        int label2 = n2.getNodeData().labelId();
 
-        if (label1.equals(label2)) return 0f;
+        if (label1 == label2) return 0f;
 
-        float baseCost = getBaseCost(label1) + getBaseCost(label2);
         float structurePenalty = Math.abs(n1.getChildren().size() - n2.getChildren().size()) * 0.15f;
-        float similarity = calculateSemanticSimilarity(label1, label2);
-        return baseCost + structurePenalty + (1.0f - similarity) * 3.0f;
+        return renameCost(label1, label2) + structurePenalty;
+    }
+
+    /**
+     * Computes the deletion cost for a node of an indexed tree.
+     *
+     * @param tree indexer of the tree the node belongs to
+     * @param preL left-to-right preorder id of the node
+     * @return the computed deletion cost
+     */
+    @Override
+    public float del(
+            final NodeIndexer<StringNodeData, ?> tree,
+            final int preL
+    ) {
+        return computeCost(tree, preL);
+    }
+
+    /**
+     * Computes the insertion cost for a node of an indexed tree.
+     *
+     * @param tree indexer of the tree the node belongs to
+     * @param preL left-to-right preorder id of the node
+     * @return the computed insertion cost
+     */
+    @Override
+    public float ins(
+            final NodeIndexer<StringNodeData, ?> tree,
+            final int preL
+    ) {
+        return computeCost(tree, preL);
+    }
+
+    /**
+     * Computes the renaming cost between two nodes of indexed trees, see {@link #ren(Node, Node)}.
+     *
+     * @param tree1 indexer of the tree of the first node
+     * @param preL1 left-to-right preorder id of the first node
+     * @param tree2 indexer of the tree of the second node
+     * @param preL2 left-to-right preorder id of the second node
+     * @return the computed renaming cost
+     */
+    @Override
+    public float ren(
+            final NodeIndexer<StringNodeData, ?> tree1,
+            final int preL1,
+            final NodeIndexer<StringNodeData, ?> tree2,
+            final int preL2
+    ) {
+        int label1 = tree1.preL_to_label[preL1];
+        int label2 = tree2.preL_to_label[preL2];
+
+        if (label1 == label2) return 0f;
+
+        float structurePenalty = Math.abs(tree1.children[preL1].length - tree2.children[preL2].length) * 0.15f;
+        return renameCost(label1, label2) + structurePenalty;
     }
 
     /**
@@ -111,21 +204,98 @@ public class WeightedCostModel extends StringUnitCostModel {
      * @return the computed cost
      */
     private float computeCost(Node<StringNodeData> n) {
-        String label = n.getNodeData().getLabel();
-        float baseCost = getBaseCost(label);
+        float baseCost = getBaseCost(n.getNodeData().labelId());
         float structurePenalty = calculateStructurePenalty(n);
         return baseCost + structurePenalty;
     }
 
+    /**
+     * Computes the cost of a node of an indexed tree based on its label and the labels of its children.
+     *
+     * @param tree indexer of the tree the node belongs to
+     * @param preL left-to-right preorder id of the node
+     * @return the computed cost
+     */
+    private float computeCost(
+            final NodeIndexer<StringNodeData, ?> tree,
+            final int preL
+    ) {
+        float structurePenalty = 0f;
+        for (int child : tree.children[preL]) structurePenalty += getBaseCost(tree.preL_to_label[child]) * 0.1f;
+        return getBaseCost(tree.preL_to_label[preL]) + structurePenalty;
+    }
 
     /**
-     * Retrieves the base cost for a given label, using caching for optimization.
+     * Returns the base cost of a label from the base cost table.
      *
-     * @param label the label of the node
+     * @param label the label id of the node
      * @return the base cost
      */
-    private float getBaseCost(String label) {
-        return baseCostCache.computeIfAbsent(label, this::computeBaseCost);
+    private static float getBaseCost(int label) {
+        CostTables current = TABLES.get();
+        if (label >= current.baseCosts().length) current = grow(label);
+        return current.baseCosts()[label];
+    }
+
+    /**
+     * Returns the label-dependent part of the cost of renaming one label to another from the rename cost table.
+     *
+     * @param label1 the label id of the first node
+     * @param label2 the label id of the second node
+     * @return the rename cost without the structure penalty
+     */
+    private static float renameCost(int label1, int label2) {
+        CostTables current = TABLES.get();
+        if (Math.max(label1, label2) >= current.renameCosts().length) current = grow(Math.max(label1, label2));
+        return current.renameCosts()[label1][label2];
+    }
+
+    /**
+     * Extends the cost tables to all labels known to the dictionary, which includes {@code label}.
+     *
+     * <p>
+     * Rows of labels already in the tables are copied and only extended by the columns of the new labels. If
+     * another thread publishes extended tables first, they are extended in turn, so the semantic similarity of a
+     * pair of labels is computed once per process, except for the rare pairs computed by both threads.
+     * </p>
+     *
+     * @param label a label id not covered by the current tables
+     * @return tables covering the label
+     */
+    private static CostTables grow(int label) {
+        while (true) {
+            CostTables current = TABLES.get();
+            if (label < current.baseCosts().length) return current;
+
+            CostTables extended = extend(current, Math.max(label + 1, DICTIONARY.size()));
+            if (TABLES.compareAndSet(current, extended)) return extended;
+        }
+    }
+
+    /**
+     * Copies the cost tables, extended to the given number of labels.
+     *
+     * @param current the tables to extend
+     * @param size    the number of labels of the extended tables
+     * @return the extended tables
+     */
+    private static CostTables extend(CostTables current, int size) {
+        int known = current.baseCosts().length;
+        float[] baseCosts = Arrays.copyOf(current.baseCosts(), size);
+        for (int id = known; id < size; id++) baseCosts[id] = computeBaseCost(DICTIONARY.label(id));
+
+        float[][] renameCosts = new float[size][];
+        for (int id1 = 0; id1 < size; id1++) {
+            renameCosts[id1] = id1 < known
+                    ? Arrays.copyOf(current.renameCosts()[id1], size)
+                    : new float[size];
+            for (int id2 = id1 < known ? known : 0; id2 < size; id2++) {
+                renameCosts[id1][id2] = id1 == id2 ? 0f : baseCosts[id1] + baseCosts[id2]
+                        + (1.0f - calculateSemanticSimilarity(DICTIONARY.label(id1), DICTIONARY.label(id2))) * 3.0f;
+            }
+        }
+
+        return new CostTables(baseCosts, renameCosts);
     }
 
     /**
@@ -134,7 +304,7 @@ public class WeightedCostModel extends StringUnitCostModel {
      * @param label the label of the node
      * @return the computed base cost
      */
-    private float computeBaseCost(String label) {
+    private static float computeBaseCost(String label) {
         return switch (label.split(" ")[0]) {
             case "Class", "Interface" -> 4.0f;
             case "Method", "Constructor" -> 3.5f;
@@ -160,28 +330,25 @@ public class WeightedCostModel extends StringUnitCostModel {
      * @return the calculated penalty
      */
     private float calculateStructurePenalty(Node<StringNodeData> n) {
-        return n.getChildren().stream()
-                .map(child -> getBaseCost(child.getNodeData().getLabel()) * 0.1f)
-                .reduce(0f, Float::sum);
+        float penalty = 0f;
+        for (Node<StringNodeData> child : n.getChildren()) penalty += getBaseCost(child.getNodeData().labelId()) * 0.1f;
+        return penalty;
     }
 
     /**
-     * Calculates the semantic similarity between two strings using Levenshtein distance.
+     * Calculates the semantic similarity between two strings using Levenshtein distance, in steps of
+     * {@code 1 / 128} up to a distance of {@code 128}.
      *
      * @param s1 the first string
      * @param s2 the second string
      * @return a similarity score between 0.0 and 1.0
      */
-    private float calculateSemanticSimilarity(String s1, String s2) {
-        String key = s1 + "|" + s2;
-        return similarityCache.computeIfAbsent(key, k -> {
-            int len1 = s1.length(), len2 = s2.length();
-            if (len1 == 0 && len2 == 0) return 1.0f;
-            if (len1 == 0 || len2 == 0) return 0.0f;
+    private static float calculateSemanticSimilarity(String s1, String s2) {
+        int len1 = s1.length(), len2 = s2.length();
+        if (len1 == 0 && len2 == 0) return 1.0f;
+        if (len1 == 0 || len2 == 0) return 0.0f;
 
-            int levenshteinDist = calculateLevenshteinDistance(s1, s2);
-            return LEVENSHTEIN_SIMILARITY_MAP.floorEntry(levenshteinDist).getValue();
-        });
+        return Math.min(calculateLevenshteinDistance(s1, s2), 128) / 128.0f;
     }
 
     /**
@@ -191,7 +358,7 @@ public class WeightedCostModel extends StringUnitCostModel {
      * @param s2 the second string
      * @return the Levenshtein distance
      */
-    private int calculateLevenshteinDistance(String s1, String s2) {
+    private static int calculateLevenshteinDistance(String s1, String s2) {
         int len1 = s1.length(), len2 = s2.length();
         int[][] dp = new int[2][len2 + 1];
 
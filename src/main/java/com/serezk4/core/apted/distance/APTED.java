@@ -24,13 +24,14 @@
 package com.serezk4.core.apted.distance;
 
 import com.serezk4.core.apted.costmodel.CostModel;
+import com.serezk4.core.apted.costmodel.IndexedCostModel;
+import com.serezk4.core.apted.node.FlatTree;
 import com.serezk4.core.apted.node.Node;
 import com.serezk4.core.apted.node.NodeIndexer;
 
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Stack;
 
 /**
  * Implements APTED algorithm [1,2].
@@ -78,6 +79,15 @@ public class APTED<C extends CostModel, D> {
      * Cost model to be used for calculating costs of edit operations.
      */
     private final C costModel;
+    /**
+     * The cost model as an {@link IndexedCostModel}, used to price edit
+     * operations by preorder ids in the distance computation.
+     */
+    private final IndexedCostModel<D> costs;
+    /**
+     * Scratch memory reused by every computation of this algorithm object.
+     */
+    private final APTEDWorkspace workspace;
     /**
      * Indexer of the source tree.
      *
@@ -100,9 +110,10 @@ public class APTED<C extends CostModel, D> {
     private int size2;
     /**
      * The distance matrix [1, Sections 3.4,8.2,8.3]. Used to store intermediate
-     * distances between pairs of subtrees.
+     * distances between pairs of subtrees. Stored row-major in one array: the
+     * entry of source node x and destination node y is at x * size2 + y.
      */
-    private float[][] delta;
+    private float[] delta;
     /**
      * One of distance arrays to store intermediate distances in spfA.
      */
@@ -135,7 +146,23 @@ public class APTED<C extends CostModel, D> {
      * @param costModel cost model for edit operations.
      */
     public APTED(C costModel) {
+        this(costModel, new APTEDWorkspace());
+    }
+
+    /**
+     * Constructs the APTED algorithm object with the specified cost model and
+     * scratch memory. The workspace is reused by every computation, so the
+     * algorithm object must not be shared between threads.
+     *
+     * @param costModel cost model for edit operations.
+     * @param workspace scratch memory, not used by any other algorithm object
+     *                  concurrently.
+     */
+    @SuppressWarnings("unchecked")
+    public APTED(C costModel, APTEDWorkspace workspace) {
         this.costModel = costModel;
+        this.costs = IndexedCostModel.of(costModel);
+        this.workspace = workspace;
     }
 
     /**
@@ -149,6 +176,45 @@ public class APTED<C extends CostModel, D> {
     public float computeEditDistance(Node<D> t1, Node<D> t2) {
         // Index the nodes of both input trees.
         init(t1, t2);
+        return computeEditDistance();
+    }
+
+    /**
+     * Compute tree edit distance between source and destination trees that
+     * have already been flattened, see {@link FlatTree}.
+     *
+     * @param t1 source tree.
+     * @param t2 destination tree.
+     * @return tree edit distance.
+     */
+    public float computeEditDistance(FlatTree<D> t1, FlatTree<D> t2) {
+        // Index the nodes of both input trees.
+        init(t1, t2);
+        return computeEditDistance();
+    }
+
+    /**
+     * Compute tree edit distance between source and destination trees that
+     * have already been indexed. Indexers are only read, so the same indexer
+     * can be passed to many computations, also concurrently. Both indexers must
+     * have been built with a cost model equal to the cost model of this
+     * algorithm object.
+     *
+     * @param it1 indexer of the source tree.
+     * @param it2 indexer of the destination tree.
+     * @return tree edit distance.
+     */
+    public float computeEditDistance(NodeIndexer<D, C> it1, NodeIndexer<D, C> it2) {
+        init(it1, it2);
+        return computeEditDistance();
+    }
+
+    /**
+     * Computes the tree edit distance between the indexed input trees.
+     *
+     * @return tree edit distance.
+     */
+    private float computeEditDistance() {
         // Determine the optimal strategy for the distance computation.
         // Use the heuristic from [2, Section 5.3].
         if (it1.lchl < it1.rchl) {
@@ -159,7 +225,7 @@ public class APTED<C extends CostModel, D> {
         // Initialise structures for distance computation.
         tedInit();
         // Compute the distance.
-        return gted(it1, it2);
+        return gted(it1, 0, it2, 0);
     }
 
     /**
@@ -176,22 +242,22 @@ public class APTED<C extends CostModel, D> {
         // Index the nodes of both input trees.
         init(t1, t2);
         // Initialise delta array.
-        delta = new float[size1][size2];
+        delta = new float[size1 * size2];
         // Fix a path type to trigger specific spf.
-        for (int i = 0; i < delta.length; i++) {
-            for (int j = 0; j < delta[i].length; j++) {
+        for (int i = 0; i < size1; i++) {
+            for (int j = 0; j < size2; j++) {
                 // Fix path type.
                 if (spfType == LEFT) {
-                    delta[i][j] = it1.preL_to_lld(i) + 1;
+                    delta[i * size2 + j] = it1.preL_to_lld(i) + 1;
                 } else if (spfType == RIGHT) {
-                    delta[i][j] = it1.preL_to_rld(i) + 1;
+                    delta[i * size2 + j] = it1.preL_to_rld(i) + 1;
                 }
             }
         }
         // Initialise structures for distance computation.
         tedInit();
         // Compute the distance.
-        return gted(it1, it2);
+        return gted(it1, 0, it2, 0);
     }
 
     /**
@@ -207,6 +273,30 @@ public class APTED<C extends CostModel, D> {
         size2 = it2.getSize();
     }
 
+    /**
+     * Initialises node indexers of flattened input trees and stores input
+     * tree sizes.
+     *
+     * @param t1 source input tree.
+     * @param t2 destination input tree.
+     */
+    public void init(FlatTree<D> t1, FlatTree<D> t2) {
+        init(new NodeIndexer<>(t1, costModel), new NodeIndexer<>(t2, costModel));
+    }
+
+    /**
+     * Uses already built node indexers and stores input tree sizes.
+     *
+     * @param it1 indexer of the source input tree.
+     * @param it2 indexer of the destination input tree.
+     */
+    public void init(NodeIndexer<D, C> it1, NodeIndexer<D, C> it2) {
+        this.it1 = it1;
+        this.it2 = it2;
+        size1 = it1.getSize();
+        size2 = it2.getSize();
+    }
+
     /**
      * After the optimal strategy is computed, initialises distances of deleting
      * and inserting subtrees without their root nodes.
@@ -217,10 +307,10 @@ public class APTED<C extends CostModel, D> {
         // Initialize arrays.
         int maxSize = Math.max(size1, size2) + 1;
         // TODO: Move q initialisation to spfA.
-        q = new float[maxSize];
+        q = workspace.q(maxSize);
         // TODO: Do not use fn and ft arrays [1, Section 8.4].
-        fn = new int[maxSize + 1];
-        ft = new int[maxSize + 1];
+        fn = workspace.fn(maxSize + 1);
+        ft = workspace.ft(maxSize + 1);
         // Compute subtree distances without the root nodes when one of subtrees
         // is a single node.
         int sizeX = -1;
@@ -239,11 +329,11 @@ public class APTED<C extends CostModel, D> {
                 // In this method we don't have to verify the order of the input trees
                 // because it is equal to the original.
                 if (sizeX == 1 && sizeY == 1) {
-                    delta[x][y] = 0.0f;
+                    delta[x * size2 + y] = 0.0f;
                 } else if (sizeX == 1) {
-                    delta[x][y] = it2.preL_to_sumInsCost[y] - costModel.ins(it2.preL_to_node[y]); // USE COST MODEL.
+                    delta[x * size2 + y] = it2.preL_to_sumInsCost[y] - it2.preL_to_insCost[y]; // USE COST MODEL.
                 } else if (sizeY == 1) {
-                    delta[x][y] = it1.preL_to_sumDelCost[x] - costModel.del(it1.preL_to_node[x]); // USE COST MODEL.
+                    delta[x * size2 + y] = it1.preL_to_sumDelCost[x] - it1.preL_to_delCost[x]; // USE COST MODEL.
                 }
             }
         }
@@ -255,22 +345,24 @@ public class APTED<C extends CostModel, D> {
      *
      * @param it1 node indexer of the source input tree.
      * @param it2 node indexer of the destination input tree.
-     * @return array with the optimal strategy.
+     * @return row-major size1 x size2 array with the optimal strategy, held
+     * by the workspace of this algorithm object and overwritten by its next
+     * computation.
      */
     // TODO: Document the internals. Point to lines of the lagorithm.
-    public float[][] computeOptStrategy_postL(NodeIndexer it1, NodeIndexer it2) {
+    public float[] computeOptStrategy_postL(NodeIndexer it1, NodeIndexer it2) {
 
         int size1 = it1.getSize();
         int size2 = it2.getSize();
-        float[][] strategy = new float[size1][size2];
-        float[][] cost1_L = new float[size1][];
-        float[][] cost1_R = new float[size1][];
-        float[][] cost1_I = new float[size1][];
-        float[] cost2_L = new float[size2];
-        float[] cost2_R = new float[size2];
-        float[] cost2_I = new float[size2];
-        int[] cost2_path = new int[size2];
-        float[] leafRow = new float[size2];
+        float[] strategy = workspace.strategy(size1, size2);
+        float[][] cost1_L = workspace.cost1L(size1);
+        float[][] cost1_R = workspace.cost1R(size1);
+        float[][] cost1_I = workspace.cost1I(size1);
+        float[] cost2_L = workspace.cost2L(size2);
+        float[] cost2_R = workspace.cost2R(size2);
+        float[] cost2_I = workspace.cost2I(size2);
+        int[] cost2_path = workspace.cost2Path(size2);
+        float[] leafRow = workspace.leafRow(size2);
         int pathIDOffset = size1;
         float minCost = 0x7fffffffffffffffL;
         int strategyPath = -1;
@@ -303,19 +395,15 @@ public class APTED<C extends CostModel, D> {
         int size_v, parent_v_preL, parent_w_preL, parent_w_postL = -1, size_w, parent_v_postL = -1;
         int leftPath_v, rightPath_v;
         float[] cost_Lpointer_v, cost_Rpointer_v, cost_Ipointer_v;
-        float[] strategypointer_v;
+        int strategyoffset_v;
         float[] cost_Lpointer_parent_v = null, cost_Rpointer_parent_v = null, cost_Ipointer_parent_v = null;
-        float[] strategypointer_parent_v = null;
+        int strategyoffset_parent_v = -1;
         int krSum_v, revkrSum_v, descSum_v;
         boolean is_v_leaf;
 
         int v_in_preL;
         int w_in_preL;
 
-        Stack<float[]> rowsToReuse_L = new Stack<float[]>();
-        Stack<float[]> rowsToReuse_R = new Stack<float[]>();
-        Stack<float[]> rowsToReuse_I = new Stack<float[]>();
-
         for (int v = 0; v < size1; v++) {
             v_in_preL = postL_to_preL_1[v];
 
@@ -326,7 +414,7 @@ public class APTED<C extends CostModel, D> {
                 parent_v_postL = preL_to_postL_1[parent_v_preL];
             }
 
-            strategypointer_v = strategy[v_in_preL];
+            strategyoffset_v = v_in_preL * size2;
 
             size_v = pre2size1[v_in_preL];
             leftPath_v = -(preR_to_preL_1[preL_to_preR_1[v_in_preL] + size_v - 1] + 1);// this is the left path's ID which is the leftmost leaf node: l-r_preorder(r-l_preorder(v) + |Fv| - 1)
@@ -340,7 +428,7 @@ public class APTED<C extends CostModel, D> {
                 cost1_R[v] = leafRow;
                 cost1_I[v] = leafRow;
                 for (int i = 0; i < size2; i++) {
-                    strategypointer_v[postL_to_preL_2[i]] = v_in_preL;
+                    strategy[strategyoffset_v + postL_to_preL_2[i]] = v_in_preL;
                 }
             }
 
@@ -349,28 +437,22 @@ public class APTED<C extends CostModel, D> {
             cost_Ipointer_v = cost1_I[v];
 
             if (parent_v_preL != -1 && cost1_L[parent_v_postL] == null) {
-                if (rowsToReuse_L.isEmpty()) {
-                    cost1_L[parent_v_postL] = new float[size2];
-                    cost1_R[parent_v_postL] = new float[size2];
-                    cost1_I[parent_v_postL] = new float[size2];
-                } else {
-                    cost1_L[parent_v_postL] = rowsToReuse_L.pop();
-                    cost1_R[parent_v_postL] = rowsToReuse_R.pop();
-                    cost1_I[parent_v_postL] = rowsToReuse_I.pop();
-                }
+                cost1_L[parent_v_postL] = workspace.takeRow(size2);
+                cost1_R[parent_v_postL] = workspace.takeRow(size2);
+                cost1_I[parent_v_postL] = workspace.takeRow(size2);
             }
 
             if (parent_v_preL != -1) {
                 cost_Lpointer_parent_v = cost1_L[parent_v_postL];
                 cost_Rpointer_parent_v = cost1_R[parent_v_postL];
                 cost_Ipointer_parent_v = cost1_I[parent_v_postL];
-                strategypointer_parent_v = strategy[parent_v_preL];
+                strategyoffset_parent_v = parent_v_preL * size2;
             }
 
-            Arrays.fill(cost2_L, 0L);
-            Arrays.fill(cost2_R, 0L);
-            Arrays.fill(cost2_I, 0L);
-            Arrays.fill(cost2_path, 0);
+            Arrays.fill(cost2_L, 0, size2, 0L);
+            Arrays.fill(cost2_R, 0, size2, 0L);
+            Arrays.fill(cost2_I, 0, size2, 0L);
+            Arrays.fill(cost2_path, 0, size2, 0);
 
             for (int w = 0; w < size2; w++) {
                 w_in_preL = postL_to_preL_2[w];
@@ -407,7 +489,7 @@ public class APTED<C extends CostModel, D> {
                     tmpCost = (float) size_v * (float) pre2descSum2[w_in_preL] + cost_Ipointer_v[w];
                     if (tmpCost < minCost) {
                         minCost = tmpCost;
-                        strategyPath = (int) strategypointer_v[w_in_preL] + 1;
+                        strategyPath = (int) strategy[strategyoffset_v + w_in_preL] + 1;
                     }
                     tmpCost = (float) size_w * (float) krSum_v + cost2_L[w];
                     if (tmpCost < minCost) {
@@ -431,7 +513,7 @@ public class APTED<C extends CostModel, D> {
                     tmpCost = -minCost + cost1_I[v][w];
                     if (tmpCost < cost1_I[parent_v_postL][w]) {
                         cost_Ipointer_parent_v[w] = tmpCost;
-                        strategypointer_parent_v[w_in_preL] = strategypointer_v[w_in_preL];
+                        strategy[strategyoffset_parent_v + w_in_preL] = strategy[strategyoffset_v + w_in_preL];
                     }
                     if (nodeType_R_1[v_in_preL]) {
                         cost_Ipointer_parent_v[w] += cost_Rpointer_parent_v[w];
@@ -460,16 +542,16 @@ public class APTED<C extends CostModel, D> {
                         cost2_L[parent_w_postL] += minCost;
                     }
                 }
-                strategypointer_v[w_in_preL] = strategyPath;
+                strategy[strategyoffset_v + w_in_preL] = strategyPath;
             }
 
             if (!it1.isLeaf(v_in_preL)) {
                 Arrays.fill(cost1_L[v], 0);
                 Arrays.fill(cost1_R[v], 0);
                 Arrays.fill(cost1_I[v], 0);
-                rowsToReuse_L.push(cost1_L[v]);
-                rowsToReuse_R.push(cost1_R[v]);
-                rowsToReuse_I.push(cost1_I[v]);
+                workspace.giveRow(cost1_L[v]);
+                workspace.giveRow(cost1_R[v]);
+                workspace.giveRow(cost1_I[v]);
             }
 
         }
@@ -482,22 +564,24 @@ public class APTED<C extends CostModel, D> {
      *
      * @param it1 node indexer of the source input tree.
      * @param it2 node indexer of the destination input tree.
-     * @return array with the optimal strategy.
+     * @return row-major size1 x size2 array with the optimal strategy, held
+     * by the workspace of this algorithm object and overwritten by its next
+     * computation.
      */
     // QUESTION: Is it possible to merge it with the other strategy computation?
     // TODO: Document the internals. Point to lines of the lagorithm.
-    public float[][] computeOptStrategy_postR(NodeIndexer it1, NodeIndexer it2) {
+    public float[] computeOptStrategy_postR(NodeIndexer it1, NodeIndexer it2) {
         int size1 = it1.getSize();
         int size2 = it2.getSize();
-        float[][] strategy = new float[size1][size2];
-        float[][] cost1_L = new float[size1][];
-        float[][] cost1_R = new float[size1][];
-        float[][] cost1_I = new float[size1][];
-        float[] cost2_L = new float[size2];
-        float[] cost2_R = new float[size2];
-        float[] cost2_I = new float[size2];
-        int[] cost2_path = new int[size2];
-        float[] leafRow = new float[size2];
+        float[] strategy = workspace.strategy(size1, size2);
+        float[][] cost1_L = workspace.cost1L(size1);
+        float[][] cost1_R = workspace.cost1R(size1);
+        float[][] cost1_I = workspace.cost1I(size1);
+        float[] cost2_L = workspace.cost2L(size2);
+        float[] cost2_R = workspace.cost2R(size2);
+        float[] cost2_I = workspace.cost2I(size2);
+        int[] cost2_path = workspace.cost2Path(size2);
+        float[] leafRow = workspace.leafRow(size2);
         int pathIDOffset = size1;
         float minCost = 0x7fffffffffffffffL;
         int strategyPath = -1;
@@ -524,21 +608,17 @@ public class APTED<C extends CostModel, D> {
         int size_v, parent_v, parent_w, size_w;
         int leftPath_v, rightPath_v;
         float[] cost_Lpointer_v, cost_Rpointer_v, cost_Ipointer_v;
-        float[] strategypointer_v;
+        int strategyoffset_v;
         float[] cost_Lpointer_parent_v = null, cost_Rpointer_parent_v = null, cost_Ipointer_parent_v = null;
-        float[] strategypointer_parent_v = null;
+        int strategyoffset_parent_v = -1;
         int krSum_v, revkrSum_v, descSum_v;
         boolean is_v_leaf;
 
-        Stack<float[]> rowsToReuse_L = new Stack<float[]>();
-        Stack<float[]> rowsToReuse_R = new Stack<float[]>();
-        Stack<float[]> rowsToReuse_I = new Stack<float[]>();
-
         for (int v = size1 - 1; v >= 0; v--) {
             is_v_leaf = it1.isLeaf(v);
             parent_v = pre2parent1[v];
 
-            strategypointer_v = strategy[v];
+            strategyoffset_v = v * size2;
 
             size_v = pre2size1[v];
             leftPath_v = -(preR_to_preL_1[preL_to_preR_1[v] + pre2size1[v] - 1] + 1);// this is the left path's ID which is the leftmost leaf node: l-r_preorder(r-l_preorder(v) + |Fv| - 1)
@@ -552,7 +632,7 @@ public class APTED<C extends CostModel, D> {
                 cost1_R[v] = leafRow;
                 cost1_I[v] = leafRow;
                 for (int i = 0; i < size2; i++) {
-                    strategypointer_v[i] = v;
+                    strategy[strategyoffset_v + i] = v;
                 }
             }
 
@@ -561,28 +641,22 @@ public class APTED<C extends CostModel, D> {
             cost_Ipointer_v = cost1_I[v];
 
             if (parent_v != -1 && cost1_L[parent_v] == null) {
-                if (rowsToReuse_L.isEmpty()) {
-                    cost1_L[parent_v] = new float[size2];
-                    cost1_R[parent_v] = new float[size2];
-                    cost1_I[parent_v] = new float[size2];
-                } else {
-                    cost1_L[parent_v] = rowsToReuse_L.pop();
-                    cost1_R[parent_v] = rowsToReuse_R.pop();
-                    cost1_I[parent_v] = rowsToReuse_I.pop();
-                }
+                cost1_L[parent_v] = workspace.takeRow(size2);
+                cost1_R[parent_v] = workspace.takeRow(size2);
+                cost1_I[parent_v] = workspace.takeRow(size2);
             }
 
             if (parent_v != -1) {
                 cost_Lpointer_parent_v = cost1_L[parent_v];
                 cost_Rpointer_parent_v = cost1_R[parent_v];
                 cost_Ipointer_parent_v = cost1_I[parent_v];
-                strategypointer_parent_v = strategy[parent_v];
+                strategyoffset_parent_v = parent_v * size2;
             }
 
-            Arrays.fill(cost2_L, 0L);
-            Arrays.fill(cost2_R, 0L);
-            Arrays.fill(cost2_I, 0L);
-            Arrays.fill(cost2_path, 0);
+            Arrays.fill(cost2_L, 0, size2, 0L);
+            Arrays.fill(cost2_R, 0, size2, 0L);
+            Arrays.fill(cost2_I, 0, size2, 0L);
+            Arrays.fill(cost2_path, 0, size2, 0);
             for (int w = size2 - 1; w >= 0; w--) {
                 size_w = pre2size2[w];
                 if (it2.isLeaf(w)) {
@@ -611,7 +685,7 @@ public class APTED<C extends CostModel, D> {
                     tmpCost = (float) size_v * (float) pre2descSum2[w] + cost_Ipointer_v[w];
                     if (tmpCost < minCost) {
                         minCost = tmpCost;
-                        strategyPath = (int) strategypointer_v[w] + 1;
+                        strategyPath = (int) strategy[strategyoffset_v + w] + 1;
                     }
                     tmpCost = (float) size_w * (float) krSum_v + cost2_L[w];
                     if (tmpCost < minCost) {
@@ -635,7 +709,7 @@ public class APTED<C extends CostModel, D> {
                     tmpCost = -minCost + cost1_I[v][w];
                     if (tmpCost < cost1_I[parent_v][w]) {
                         cost_Ipointer_parent_v[w] = tmpCost;
-                        strategypointer_parent_v[w] = strategypointer_v[w];
+                        strategy[strategyoffset_parent_v + w] = strategy[strategyoffset_v + w];
                     }
                     if (nodeType_L_1[v]) {
                         cost_Ipointer_parent_v[w] += cost_Lpointer_parent_v[w];
@@ -665,16 +739,16 @@ public class APTED<C extends CostModel, D> {
                         cost2_R[parent_w] += minCost;
                     }
                 }
-                strategypointer_v[w] = strategyPath;
+                strategy[strategyoffset_v + w] = strategyPath;
             }
 
             if (!it1.isLeaf(v)) {
                 Arrays.fill(cost1_L[v], 0);
                 Arrays.fill(cost1_R[v], 0);
                 Arrays.fill(cost1_I[v], 0);
-                rowsToReuse_L.push(cost1_L[v]);
-                rowsToReuse_R.push(cost1_R[v]);
-                rowsToReuse_I.push(cost1_I[v]);
+                workspace.giveRow(cost1_L[v]);
+                workspace.giveRow(cost1_R[v]);
+                workspace.giveRow(cost1_I[v]);
             }
         }
         return strategy;
@@ -704,22 +778,17 @@ public class APTED<C extends CostModel, D> {
         int subtreeSize1 = ni1.sizes[subtreeRootNode1];
         int subtreeSize2 = ni2.sizes[subtreeRootNode2];
         if (subtreeSize1 == 1 && subtreeSize2 == 1) {
-            Node<D> n1 = ni1.preL_to_node[subtreeRootNode1];
-            Node<D> n2 = ni2.preL_to_node[subtreeRootNode2];
-            float maxCost = costModel.del(n1) + costModel.ins(n2);
-            float renCost = costModel.ren(n1, n2);
+            float maxCost = ni1.preL_to_delCost[subtreeRootNode1] + ni2.preL_to_insCost[subtreeRootNode2];
+            float renCost = costs.ren(ni1, subtreeRootNode1, ni2, subtreeRootNode2);
             return renCost < maxCost ? renCost : maxCost;
         }
         if (subtreeSize1 == 1) {
-            Node<D> n1 = ni1.preL_to_node[subtreeRootNode1];
-            Node<D> n2 = null;
             float cost = ni2.preL_to_sumInsCost[subtreeRootNode2];
-            float maxCost = cost + costModel.del(n1);
+            float maxCost = cost + ni1.preL_to_delCost[subtreeRootNode1];
             float minRenMinusIns = cost;
             float nodeRenMinusIns = 0;
             for (int i = subtreeRootNode2; i < subtreeRootNode2 + subtreeSize2; i++) {
-                n2 = ni2.preL_to_node[i];
-                nodeRenMinusIns = costModel.ren(n1, n2) - costModel.ins(n2);
+                nodeRenMinusIns = costs.ren(ni1, subtreeRootNode1, ni2, i) - ni2.preL_to_insCost[i];
                 if (nodeRenMinusIns < minRenMinusIns) {
                     minRenMinusIns = nodeRenMinusIns;
                 }
@@ -728,15 +797,12 @@ public class APTED<C extends CostModel, D> {
             return cost < maxCost ? cost : maxCost;
         }
         if (subtreeSize2 == 1) {
-            Node<D> n1 = null;
-            Node<D> n2 = ni2.preL_to_node[subtreeRootNode2];
             float cost = ni1.preL_to_sumDelCost[subtreeRootNode1];
-            float maxCost = cost + costModel.ins(n2);
+            float maxCost = cost + ni2.preL_to_insCost[subtreeRootNode2];
             float minRenMinusDel = cost;
             float nodeRenMinusDel = 0;
             for (int i = subtreeRootNode1; i < subtreeRootNode1 + subtreeSize1; i++) {
-                n1 = ni1.preL_to_node[i];
-                nodeRenMinusDel = costModel.ren(n1, n2) - costModel.del(n1);
+                nodeRenMinusDel = costs.ren(ni1, i, ni2, subtreeRootNode2) - ni1.preL_to_delCost[i];
                 if (nodeRenMinusDel < minRenMinusDel) {
                     minRenMinusDel = nodeRenMinusDel;
                 }
@@ -750,14 +816,16 @@ public class APTED<C extends CostModel, D> {
     /**
      * Implements GTED algorithm [1, Section 3.4].
      *
-     * @param it1 node indexer for the source input tree.
-     * @param it2 node indexer for the destination input tree.
+     * @param it1             node indexer for the source input tree.
+     * @param currentSubtree1 left-to-right preorder id of the root of the
+     *                        currently processed source subtree.
+     * @param it2             node indexer for the destination input tree.
+     * @param currentSubtree2 left-to-right preorder id of the root of the
+     *                        currently processed destination subtree.
      * @return the tree edit distance between the source and destination trees.
      */
     // TODO: Document the internals. Point to lines of the algorithm.
-    private float gted(NodeIndexer it1, NodeIndexer it2) {
-        int currentSubtree1 = it1.getCurrentNode();
-        int currentSubtree2 = it2.getCurrentNode();
+    private float gted(NodeIndexer it1, int currentSubtree1, NodeIndexer it2, int currentSubtree2) {
         int subtreeSize1 = it1.sizes[currentSubtree1];
         int subtreeSize2 = it2.sizes[currentSubtree2];
 
@@ -766,7 +834,7 @@ public class APTED<C extends CostModel, D> {
             return spf1(it1, currentSubtree1, it2, currentSubtree2);
         }
 
-        int strategyPathID = (int) delta[currentSubtree1][currentSubtree2];
+        int strategyPathID = (int) delta[currentSubtree1 * size2 + currentSubtree2];
 
         byte strategyPathType = -1;
         int currentPathNode = Math.abs(strategyPathID) - 1;
@@ -781,26 +849,22 @@ public class APTED<C extends CostModel, D> {
                 for (int i = 0; i < k; i++) {
                     int child = ai[i];
                     if (child != currentPathNode) {
-                        it1.setCurrentNode(child);
-                        gted(it1, it2);
+                        gted(it1, child, it2, currentSubtree2);
                     }
                 }
                 currentPathNode = parent;
             }
-            // TODO: Move this property away from node indexer and pass directly to spfs.
-            it1.setCurrentNode(currentSubtree1);
-
             // Pass to spfs a boolean that says says if the order of input subtrees
             // has been swapped compared to the order of the initial input trees.
             // Used for accessing delta array and deciding on the edit operation
             // [1, Section 3.4].
             if (strategyPathType == 0) {
-                return spfL(it1, it2, false);
+                return spfL(it1, currentSubtree1, it2, currentSubtree2, false);
             }
             if (strategyPathType == 1) {
-                return spfR(it1, it2, false);
+                return spfR(it1, currentSubtree1, it2, currentSubtree2, false);
             }
-            return spfA(it1, it2, Math.abs(strategyPathID) - 1, strategyPathType, false);
+            return spfA(it1, currentSubtree1, it2, currentSubtree2, Math.abs(strategyPathID) - 1, strategyPathType, false);
         }
 
         currentPathNode -= pathIDOffset;
@@ -811,26 +875,22 @@ public class APTED<C extends CostModel, D> {
             for (int j = 0; j < l; j++) {
                 int child = ai1[j];
                 if (child != currentPathNode) {
-                    it2.setCurrentNode(child);
-                    gted(it1, it2);
+                    gted(it1, currentSubtree1, it2, child);
                 }
             }
             currentPathNode = parent;
         }
-        // TODO: Move this property away from node indexer and pass directly to spfs.
-        it2.setCurrentNode(currentSubtree2);
-
         // Pass to spfs a boolean that says says if the order of input subtrees
         // has been swapped compared to the order of the initial input trees. Used
         // for accessing delta array and deciding on the edit operation
         // [1, Section 3.4].
         if (strategyPathType == 0) {
-            return spfL(it2, it1, true);
+            return spfL(it2, currentSubtree2, it1, currentSubtree1, true);
         }
         if (strategyPathType == 1) {
-            return spfR(it2, it1, true);
+            return spfR(it2, currentSubtree2, it1, currentSubtree1, true);
         }
-        return spfA(it2, it1, Math.abs(strategyPathID) - pathIDOffset - 1, strategyPathType, true);
+        return spfA(it2, currentSubtree2, it1, currentSubtree1, Math.abs(strategyPathID) - pathIDOffset - 1, strategyPathType, true);
     }
 
     /**
@@ -840,7 +900,11 @@ public class APTED<C extends CostModel, D> {
      * also executes correctly for left and right paths.
      *
      * @param it1          node indexer of the left-hand input subtree.
+     * @param subtree1     left-to-right preorder id of the root of the
+     *                     left-hand input subtree.
      * @param it2          node indexer of the right-hand input subtree.
+     * @param subtree2     left-to-right preorder id of the root of the
+     *                     right-hand input subtree.
      * @param pathID       the left-to-right preorder id of the strategy path's leaf node.
      * @param pathType     type of the strategy path (LEFT, RIGHT, INNER).
      * @param treesSwapped says if the order of input subtrees has been swapped
@@ -853,9 +917,12 @@ public class APTED<C extends CostModel, D> {
     // The implementation has been micro-tuned: variables initialised once,
     // pointers to arrays precomputed and fixed for entire lower-level loops,
     // parts of lower-level loops that don't change moved to upper-level loops.
-    private float spfA(NodeIndexer it1, NodeIndexer it2, int pathID, byte pathType, boolean treesSwapped) {
-        Node<D>[] it2nodes = it2.preL_to_node;
-        Node<D> lFNode;
+    private float spfA(NodeIndexer it1, int subtree1, NodeIndexer it2, int subtree2, int pathID, byte pathType, boolean treesSwapped) {
+        // Costs of deleting nodes of F and inserting nodes of G. If the input
+        // trees have been swapped, F is in the destination tree and the costs
+        // are exchanged.
+        float[] it1delCost = treesSwapped ? it1.preL_to_insCost : it1.preL_to_delCost;
+        float[] it2insCost = treesSwapped ? it2.preL_to_delCost : it2.preL_to_insCost;
         int[] it1sizes = it1.sizes;
         int[] it2sizes = it2.sizes;
         int[] it1parents = it1.parents;
@@ -864,8 +931,8 @@ public class APTED<C extends CostModel, D> {
         int[] it2preL_to_preR = it2.preL_to_preR;
         int[] it1preR_to_preL = it1.preR_to_preL;
         int[] it2preR_to_preL = it2.preR_to_preL;
-        int currentSubtreePreL1 = it1.getCurrentNode();
-        int currentSubtreePreL2 = it2.getCurrentNode();
+        int currentSubtreePreL1 = subtree1;
+        int currentSubtreePreL2 = subtree2;
 
         // Variables to incrementally sum up the forest sizes.
         int currentForestSize1 = 0;
@@ -878,8 +945,8 @@ public class APTED<C extends CostModel, D> {
 
         int subtreeSize2 = it2.sizes[currentSubtreePreL2];
         int subtreeSize1 = it1.sizes[currentSubtreePreL1];
-        float[][] t = new float[subtreeSize2 + 1][subtreeSize2 + 1];
-        float[][] s = new float[subtreeSize1 + 1][subtreeSize2 + 1];
+        float[][] t = workspace.t(subtreeSize2 + 1, subtreeSize2 + 1);
+        float[][] s = workspace.s(subtreeSize1 + 1, subtreeSize2 + 1);
         float minCost = -1;
         // sp1, sp2 and sp3 correspond to three elements of the minimum in the
         // recursive formula [1, Figure 12].
@@ -899,7 +966,8 @@ public class APTED<C extends CostModel, D> {
                 rGfirst_in_preL;
         boolean leftPart, rightPart, fForestIsTree, lFIsConsecutiveNodeOfCurrentPathNode, lFIsLeftSiblingOfCurrentPathNode,
                 rFIsConsecutiveNodeOfCurrentPathNode, rFIsRightSiblingOfCurrentPathNode;
-        float[] sp1spointer, sp2spointer, sp3spointer, sp3deltapointer, swritepointer, sp1tpointer, sp3tpointer;
+        float[] sp1spointer, sp2spointer, sp3spointer, swritepointer, sp1tpointer, sp3tpointer;
+        int sp3deltaoffset;
         // These variables store the id of the source (which array) of looking up
         // elements of the minimum in the recursive formula [1, Figures 12,13].
         byte sp1source, sp3source;
@@ -966,10 +1034,9 @@ public class APTED<C extends CostModel, D> {
                         if (lF == lFlast && !rightPart) {
                             rF = rFlast;
                         }
-                        lFNode = it1.preL_to_node[lF];
                         // Increment size and cost of F forest by node lF.
                         currentForestSize1++;
-                        currentForestCost1 += (treesSwapped ? costModel.ins(lFNode) : costModel.del(lFNode)); // USE COST MODEL - sum up deletion cost of a forest.
+                        currentForestCost1 += it1delCost[lF]; // USE COST MODEL - sum up deletion cost of a forest.
                         // Reset size and cost of forest in G to subtree G_lGfirst.
                         currentForestSize2 = it2sizes[lGfirst];
                         currentForestCost2 = (treesSwapped ? it2.preL_to_sumDelCost[lGfirst] : it2.preL_to_sumInsCost[lGfirst]); // USE COST MODEL - reset to subtree insertion cost.
@@ -981,7 +1048,7 @@ public class APTED<C extends CostModel, D> {
                         sp1spointer = s[(lF + 1) - it1PreLoff];
                         sp2spointer = s[lF - it1PreLoff];
                         sp3spointer = s[0];
-                        sp3deltapointer = treesSwapped ? null : delta[lF];
+                        sp3deltaoffset = lF * size2;
                         swritepointer = s[lF - it1PreLoff];
                         sp1source = 1; // Search sp1 value in s array by default.
                         sp3source = 1; // Search second part of sp3 value in s array by default.
@@ -1021,7 +1088,7 @@ public class APTED<C extends CostModel, D> {
                                 sp1 = currentForestCost2;
                                 break; // USE COST MODEL - Insert G_{lG,rG}.
                         }
-                        sp1 += (treesSwapped ? costModel.ins(lFNode) : costModel.del(lFNode));// USE COST MODEL - Delete lF, leftmost root node in F_{lF,rF}.
+                        sp1 += it1delCost[lF];// USE COST MODEL - Delete lF, leftmost root node in F_{lF,rF}.
                         // sp1 -- END
                         minCost = sp1; // Start with sp1 as minimal value.
                         // sp2 -- START
@@ -1030,16 +1097,16 @@ public class APTED<C extends CostModel, D> {
                         } else { // G_{lG,rG} is a tree.
                             sp2 = q[lF];
                         }
-                        sp2 += (treesSwapped ? costModel.del(it2nodes[lG]) : costModel.ins(it2nodes[lG]));// USE COST MODEL - Insert lG, leftmost root node in G_{lG,rG}.
+                        sp2 += it2insCost[lG];// USE COST MODEL - Insert lG, leftmost root node in G_{lG,rG}.
                         if (sp2 < minCost) { // Check if sp2 is minimal value.
                             minCost = sp2;
                         }
                         // sp2 -- END
                         // sp3 -- START
                         if (sp3 < minCost) {
-                            sp3 += treesSwapped ? delta[lG][lF] : sp3deltapointer[lG];
+                            sp3 += treesSwapped ? delta[lG * size2 + lF] : delta[sp3deltaoffset + lG];
                             if (sp3 < minCost) {
-                                sp3 += (treesSwapped ? costModel.ren(it2nodes[lG], lFNode) : costModel.ren(lFNode, it2nodes[lG])); // USE COST MODEL - Rename the leftmost root nodes in F_{lF,rF} and G_{lG,rG}.
+                                sp3 += (treesSwapped ? costs.ren(it2, lG, it1, lF) : costs.ren(it1, lF, it2, lG)); // USE COST MODEL - Rename the leftmost root nodes in F_{lF,rF} and G_{lG,rG}.
                                 if (sp3 < minCost) {
                                     minCost = sp3;
                                 }
@@ -1054,24 +1121,24 @@ public class APTED<C extends CostModel, D> {
                         while (lG >= lGlast) {
                             // Increment size and cost of G forest by node lG.
                             currentForestSize2++;
-                            currentForestCost2 += (treesSwapped ? costModel.del(it2nodes[lG]) : costModel.ins(it2nodes[lG]));
+                            currentForestCost2 += it2insCost[lG];
                             switch (sp1source) {
                                 case 1:
-                                    sp1 = sp1spointer[lG - it2PreLoff] + (treesSwapped ? costModel.ins(lFNode) : costModel.del(lFNode));
+                                    sp1 = sp1spointer[lG - it2PreLoff] + it1delCost[lF];
                                     break; // USE COST MODEL - Delete lF, leftmost root node in F_{lF,rF}.
                                 case 2:
-                                    sp1 = t[lG - it2PreLoff][rG - it2PreRoff] + (treesSwapped ? costModel.ins(lFNode) : costModel.del(lFNode));
+                                    sp1 = t[lG - it2PreLoff][rG - it2PreRoff] + it1delCost[lF];
                                     break; // USE COST MODEL - Delete lF, leftmost root node in F_{lF,rF}.
                                 case 3:
-                                    sp1 = currentForestCost2 + (treesSwapped ? costModel.ins(lFNode) : costModel.del(lFNode));
+                                    sp1 = currentForestCost2 + it1delCost[lF];
                                     break; // USE COST MODEL - Insert G_{lG,rG} and elete lF, leftmost root node in F_{lF,rF}.
                             }
-                            sp2 = sp2spointer[fn[lG] - it2PreLoff] + (treesSwapped ? costModel.del(it2nodes[lG]) : costModel.ins(it2nodes[lG])); // USE COST MODEL - Insert lG, leftmost root node in G_{lG,rG}.
+                            sp2 = sp2spointer[fn[lG] - it2PreLoff] + it2insCost[lG]; // USE COST MODEL - Insert lG, leftmost root node in G_{lG,rG}.
                             minCost = sp1;
                             if (sp2 < minCost) {
                                 minCost = sp2;
                             }
-                            sp3 = treesSwapped ? delta[lG][lF] : sp3deltapointer[lG];
+                            sp3 = treesSwapped ? delta[lG * size2 + lF] : delta[sp3deltaoffset + lG];
                             if (sp3 < minCost) {
                                 switch (sp3source) {
                                     case 1:
@@ -1085,7 +1152,7 @@ public class APTED<C extends CostModel, D> {
                                         break;
                                 }
                                 if (sp3 < minCost) {
-                                    sp3 += (treesSwapped ? costModel.ren(it2nodes[lG], lFNode) : costModel.ren(lFNode, it2nodes[lG])); // USE COST MODEL - Rename the leftmost root nodes in F_{lF,rF} and G_{lG,rG}.
+                                    sp3 += (treesSwapped ? costs.ren(it2, lG, it1, lF) : costs.ren(it1, lF, it2, lG)); // USE COST MODEL - Rename the leftmost root nodes in F_{lF,rF} and G_{lG,rG}.
                                     if (sp3 < minCost) {
                                         minCost = sp3;
                                     }
@@ -1100,16 +1167,16 @@ public class APTED<C extends CostModel, D> {
                         if (!rightPart) {
                             if (leftPart) {
                                 if (treesSwapped) {
-                                    delta[parent_of_rG_in_preL][endPathNode] = s[(lFlast + 1) - it1PreLoff][(rGminus1_in_preL + 1) - it2PreLoff];
+                                    delta[parent_of_rG_in_preL * size2 + endPathNode] = s[(lFlast + 1) - it1PreLoff][(rGminus1_in_preL + 1) - it2PreLoff];
                                 } else {
-                                    delta[endPathNode][parent_of_rG_in_preL] = s[(lFlast + 1) - it1PreLoff][(rGminus1_in_preL + 1) - it2PreLoff];
+                                    delta[endPathNode * size2 + parent_of_rG_in_preL] = s[(lFlast + 1) - it1PreLoff][(rGminus1_in_preL + 1) - it2PreLoff];
                                 }
                             }
                             if (endPathNode > 0 && endPathNode == parent_of_endPathNode + 1 && endPathNode_in_preR == parent_of_endPathNode_in_preR + 1) {
                                 if (treesSwapped) {
-                                    delta[parent_of_rG_in_preL][parent_of_endPathNode] = s[lFlast - it1PreLoff][(rGminus1_in_preL + 1) - it2PreLoff];
+                                    delta[parent_of_rG_in_preL * size2 + parent_of_endPathNode] = s[lFlast - it1PreLoff][(rGminus1_in_preL + 1) - it2PreLoff];
                                 } else {
-                                    delta[parent_of_endPathNode][parent_of_rG_in_preL] = s[lFlast - it1PreLoff][(rGminus1_in_preL + 1) - it2PreLoff];
+                                    delta[parent_of_endPathNode * size2 + parent_of_rG_in_preL] = s[lFlast - it1PreLoff][(rGminus1_in_preL + 1) - it2PreLoff];
                                 }
                             }
                         }
@@ -1175,7 +1242,7 @@ public class APTED<C extends CostModel, D> {
                         rF_in_preL = it1preR_to_preL[rF];
                         // Increment size and cost of F forest by node rF.
                         currentForestSize1++;
-                        currentForestCost1 += (treesSwapped ? costModel.ins(it1.preL_to_node[rF_in_preL]) : costModel.del(it1.preL_to_node[rF_in_preL])); // USE COST MODEL - sum up deletion cost of a forest.
+                        currentForestCost1 += it1delCost[rF_in_preL]; // USE COST MODEL - sum up deletion cost of a forest.
                         // Reset size and cost of G forest to G_lG.
                         currentForestSize2 = it2sizes[lG];
                         currentForestCost2 = (treesSwapped ? it2.preL_to_sumDelCost[lG] : it2.preL_to_sumInsCost[lG]); // USE COST MODEL - reset to subtree insertion cost.
@@ -1188,11 +1255,10 @@ public class APTED<C extends CostModel, D> {
                             rFIsRightSiblingOfCurrentPathNode = false;
                         }
                         fForestIsTree = rF_in_preL == lF;
-                        Node<D> rFNode = it1.preL_to_node[rF_in_preL];
                         sp1spointer = s[(rF + 1) - it1PreRoff];
                         sp2spointer = s[rF - it1PreRoff];
                         sp3spointer = s[0];
-                        sp3deltapointer = treesSwapped ? null : delta[rF_in_preL];
+                        sp3deltaoffset = rF_in_preL * size2;
                         swritepointer = s[rF - it1PreRoff];
                         sp1tpointer = t[lG - it2PreLoff];
                         sp3tpointer = t[lG - it2PreLoff];
@@ -1237,16 +1303,16 @@ public class APTED<C extends CostModel, D> {
                                 sp1 = currentForestCost2;
                                 break; // USE COST MODEL - Insert G_{lG,rG}.
                         }
-                        sp1 += (treesSwapped ? costModel.ins(rFNode) : costModel.del(rFNode)); // USE COST MODEL - Delete rF.
+                        sp1 += it1delCost[rF_in_preL]; // USE COST MODEL - Delete rF.
                         minCost = sp1;
-                        sp2 += (treesSwapped ? costModel.del(it2nodes[rGfirst_in_preL]) : costModel.ins(it2nodes[rGfirst_in_preL])); // USE COST MODEL - Insert rG.
+                        sp2 += it2insCost[rGfirst_in_preL]; // USE COST MODEL - Insert rG.
                         if (sp2 < minCost) {
                             minCost = sp2;
                         }
                         if (sp3 < minCost) {
-                            sp3 += treesSwapped ? delta[rGfirst_in_preL][rF_in_preL] : sp3deltapointer[rGfirst_in_preL];
+                            sp3 += treesSwapped ? delta[rGfirst_in_preL * size2 + rF_in_preL] : delta[sp3deltaoffset + rGfirst_in_preL];
                             if (sp3 < minCost) {
-                                sp3 += (treesSwapped ? costModel.ren(it2nodes[rGfirst_in_preL], rFNode) : costModel.ren(rFNode, it2nodes[rGfirst_in_preL]));
+                                sp3 += (treesSwapped ? costs.ren(it2, rGfirst_in_preL, it1, rF_in_preL) : costs.ren(it1, rF_in_preL, it2, rGfirst_in_preL));
                                 if (sp3 < minCost) {
                                     minCost = sp3;
                                 }
@@ -1260,24 +1326,24 @@ public class APTED<C extends CostModel, D> {
                             rG_in_preL = it2preR_to_preL[rG];
                             // Increment size and cost of G forest by node rG.
                             currentForestSize2++;
-                            currentForestCost2 += (treesSwapped ? costModel.del(it2nodes[rG_in_preL]) : costModel.ins(it2nodes[rG_in_preL]));
+                            currentForestCost2 += it2insCost[rG_in_preL];
                             switch (sp1source) {
                                 case 1:
-                                    sp1 = sp1spointer[rG - it2PreRoff] + (treesSwapped ? costModel.ins(rFNode) : costModel.del(rFNode));
+                                    sp1 = sp1spointer[rG - it2PreRoff] + it1delCost[rF_in_preL];
                                     break; // USE COST MODEL - Delete rF.
                                 case 2:
-                                    sp1 = sp1tpointer[rG - it2PreRoff] + (treesSwapped ? costModel.ins(rFNode) : costModel.del(rFNode));
+                                    sp1 = sp1tpointer[rG - it2PreRoff] + it1delCost[rF_in_preL];
                                     break; // USE COST MODEL - Delete rF.
                                 case 3:
-                                    sp1 = currentForestCost2 + (treesSwapped ? costModel.ins(rFNode) : costModel.del(rFNode));
+                                    sp1 = currentForestCost2 + it1delCost[rF_in_preL];
                                     break; // USE COST MODEL - Insert G_{lG,rG} and delete rF.
                             }
-                            sp2 = sp2spointer[fn[rG] - it2PreRoff] + (treesSwapped ? costModel.del(it2nodes[rG_in_preL]) : costModel.ins(it2nodes[rG_in_preL])); // USE COST MODEL - Insert rG.
+                            sp2 = sp2spointer[fn[rG] - it2PreRoff] + it2insCost[rG_in_preL]; // USE COST MODEL - Insert rG.
                             minCost = sp1;
                             if (sp2 < minCost) {
                                 minCost = sp2;
                             }
-                            sp3 = treesSwapped ? delta[rG_in_preL][rF_in_preL] : sp3deltapointer[rG_in_preL];
+                            sp3 = treesSwapped ? delta[rG_in_preL * size2 + rF_in_preL] : delta[sp3deltaoffset + rG_in_preL];
                             if (sp3 < minCost) {
                                 switch (sp3source) {
                                     case 1:
@@ -1291,7 +1357,7 @@ public class APTED<C extends CostModel, D> {
                                         break;
                                 }
                                 if (sp3 < minCost) {
-                                    sp3 += (treesSwapped ? costModel.ren(it2nodes[rG_in_preL], rFNode) : costModel.ren(rFNode, it2nodes[rG_in_preL])); // USE COST MODEL - Rename rF to rG.
+                                    sp3 += (treesSwapped ? costs.ren(it2, rG_in_preL, it1, rF_in_preL) : costs.ren(it1, rF_in_preL, it2, rG_in_preL)); // USE COST MODEL - Rename rF to rG.
                                     if (sp3 < minCost) {
                                         minCost = sp3;
                                     }
@@ -1305,16 +1371,16 @@ public class APTED<C extends CostModel, D> {
                     if (lG > currentSubtreePreL2 && lG - 1 == parent_of_lG) {
                         if (rightPart) {
                             if (treesSwapped) {
-                                delta[parent_of_lG][endPathNode] = s[(rFlast + 1) - it1PreRoff][(lGminus1_in_preR + 1) - it2PreRoff];
+                                delta[parent_of_lG * size2 + endPathNode] = s[(rFlast + 1) - it1PreRoff][(lGminus1_in_preR + 1) - it2PreRoff];
                             } else {
-                                delta[endPathNode][parent_of_lG] = s[(rFlast + 1) - it1PreRoff][(lGminus1_in_preR + 1) - it2PreRoff];
+                                delta[endPathNode * size2 + parent_of_lG] = s[(rFlast + 1) - it1PreRoff][(lGminus1_in_preR + 1) - it2PreRoff];
                             }
                         }
                         if (endPathNode > 0 && endPathNode == parent_of_endPathNode + 1 && endPathNode_in_preR == parent_of_endPathNode_in_preR + 1)
                             if (treesSwapped) {
-                                delta[parent_of_lG][parent_of_endPathNode] = s[rFlast - it1PreRoff][(lGminus1_in_preR + 1) - it2PreRoff];
+                                delta[parent_of_lG * size2 + parent_of_endPathNode] = s[rFlast - it1PreRoff][(lGminus1_in_preR + 1) - it2PreRoff];
                             } else {
-                                delta[parent_of_endPathNode][parent_of_lG] = s[rFlast - it1PreRoff][(lGminus1_in_preR + 1) - it2PreRoff];
+                                delta[parent_of_endPathNode * size2 + parent_of_lG] = s[rFlast - it1PreRoff][(lGminus1_in_preR + 1) - it2PreRoff];
                             }
                         for (int rF = rFfirst; rF >= rFlast; rF--) {
                             q[rF] = s[rF - it1PreRoff][(parent_of_lG_in_preR + 1) - it2PreRoff];
@@ -1342,36 +1408,40 @@ public class APTED<C extends CostModel, D> {
      * due to better performance compared to spfA.
      *
      * @param it1          node indexer of the left-hand input subtree.
+     * @param subtree1     left-to-right preorder id of the root of the
+     *                     left-hand input subtree.
      * @param it2          node indexer of the right-hand input subtree.
+     * @param subtree2     left-to-right preorder id of the root of the
+     *                     right-hand input subtree.
      * @param treesSwapped says if the order of input subtrees has been swapped
      *                     compared to the order of the initial input trees. Used
      *                     for accessing delta array and deciding on the edit
      *                     operation.
      * @return tree edit distance between left-hand and right-hand input subtrees.
      */
-    private float spfL(NodeIndexer it1, NodeIndexer it2, boolean treesSwapped) {
+    private float spfL(NodeIndexer it1, int subtree1, NodeIndexer it2, int subtree2, boolean treesSwapped) {
         // Initialise the array to store the keyroot nodes in the right-hand input
         // subtree.
-        int[] keyRoots = new int[it2.sizes[it2.getCurrentNode()]];
-        Arrays.fill(keyRoots, -1);
+        int[] keyRoots = workspace.keyRoots(it2.sizes[subtree2]);
+        Arrays.fill(keyRoots, 0, it2.sizes[subtree2], -1);
         // Get the leftmost leaf node of the right-hand input subtree.
-        int pathID = it2.preL_to_lld(it2.getCurrentNode());
+        int pathID = it2.preL_to_lld(subtree2);
         // Calculate the keyroot nodes in the right-hand input subtree.
         // firstKeyRoot is the index in keyRoots of the first keyroot node that
         // we have to process. We need this index because keyRoots array is larger
         // than the number of keyroot nodes.
-        int firstKeyRoot = computeKeyRoots(it2, it2.getCurrentNode(), pathID, keyRoots, 0);
+        int firstKeyRoot = computeKeyRoots(it2, subtree2, pathID, keyRoots, 0);
         // Initialise an array to store intermediate distances for subforest pairs.
-        float[][] forestdist = new float[it1.sizes[it1.getCurrentNode()] + 1][it2.sizes[it2.getCurrentNode()] + 1];
+        float[][] forestdist = workspace.forestdist(it1.sizes[subtree1] + 1, it2.sizes[subtree2] + 1);
         // Compute the distances between pairs of keyroot nodes. In the left-hand
         // input subtree only the root is the keyroot. Thus, we compute the distance
         // between the left-hand input subtree and all keyroot nodes in the
         // right-hand input subtree.
         for (int i = firstKeyRoot - 1; i >= 0; i--) {
-            treeEditDist(it1, it2, it1.getCurrentNode(), keyRoots[i], forestdist, treesSwapped);
+            treeEditDist(it1, it2, subtree1, keyRoots[i], forestdist, treesSwapped);
         }
         // Return the distance between the input subtrees.
-        return forestdist[it1.sizes[it1.getCurrentNode()]][it2.sizes[it2.getCurrentNode()]];
+        return forestdist[it1.sizes[subtree1]][it2.sizes[subtree2]];
     }
 
     /**
@@ -1425,6 +1495,11 @@ public class APTED<C extends CostModel, D> {
      *                     operation.
      */
     private void treeEditDist(NodeIndexer it1, NodeIndexer it2, int it1subtree, int it2subtree, float[][] forestdist, boolean treesSwapped) {
+        // Costs of deleting nodes of F and inserting nodes of G. If the input
+        // trees have been swapped, F is in the destination tree and the costs
+        // are exchanged.
+        float[] it1delCost = treesSwapped ? it1.preL_to_insCost : it1.preL_to_delCost;
+        float[] it2insCost = treesSwapped ? it2.preL_to_delCost : it2.preL_to_insCost;
         // Translate input subtree root nodes to left-to-right postorder.
         int i = it1.preL_to_postL[it1subtree];
         int j = it2.preL_to_postL[it2subtree];
@@ -1443,10 +1518,10 @@ public class APTED<C extends CostModel, D> {
         // relevant subforest.
         forestdist[0][0] = 0;
         for (int i1 = 1; i1 <= i - ioff; i1++) {
-            forestdist[i1][0] = forestdist[i1 - 1][0] + (treesSwapped ? costModel.ins(it1.postL_to_node(i1 + ioff)) : costModel.del(it1.postL_to_node(i1 + ioff))); // USE COST MODEL - delete i1.
+            forestdist[i1][0] = forestdist[i1 - 1][0] + it1delCost[it1.postL_to_preL[i1 + ioff]]; // USE COST MODEL - delete i1.
         }
         for (int j1 = 1; j1 <= j - joff; j1++) {
-            forestdist[0][j1] = forestdist[0][j1 - 1] + (treesSwapped ? costModel.del(it2.postL_to_node(j1 + joff)) : costModel.ins(it2.postL_to_node(j1 + joff))); // USE COST MODEL - insert j1.
+            forestdist[0][j1] = forestdist[0][j1 - 1] + it2insCost[it2.postL_to_preL[j1 + joff]]; // USE COST MODEL - insert j1.
         }
         // Fill in the remaining costs.
         for (int i1 = 1; i1 <= i - ioff; i1++) {
@@ -1454,21 +1529,21 @@ public class APTED<C extends CostModel, D> {
                 // Increment the number of subproblems.
                 counter++;
                 // Calculate partial distance values for this subproblem.
-                float u = (treesSwapped ? costModel.ren(it2.postL_to_node(j1 + joff), it1.postL_to_node(i1 + ioff)) : costModel.ren(it1.postL_to_node(i1 + ioff), it2.postL_to_node(j1 + joff))); // USE COST MODEL - rename i1 to j1.
-                da = forestdist[i1 - 1][j1] + (treesSwapped ? costModel.ins(it1.postL_to_node(i1 + ioff)) : costModel.del(it1.postL_to_node(i1 + ioff))); // USE COST MODEL - delete i1.
-                db = forestdist[i1][j1 - 1] + (treesSwapped ? costModel.del(it2.postL_to_node(j1 + joff)) : costModel.ins(it2.postL_to_node(j1 + joff))); // USE COST MODEL - insert j1.
+                float u = (treesSwapped ? costs.ren(it2, it2.postL_to_preL[j1 + joff], it1, it1.postL_to_preL[i1 + ioff]) : costs.ren(it1, it1.postL_to_preL[i1 + ioff], it2, it2.postL_to_preL[j1 + joff])); // USE COST MODEL - rename i1 to j1.
+                da = forestdist[i1 - 1][j1] + it1delCost[it1.postL_to_preL[i1 + ioff]]; // USE COST MODEL - delete i1.
+                db = forestdist[i1][j1 - 1] + it2insCost[it2.postL_to_preL[j1 + joff]]; // USE COST MODEL - insert j1.
                 // If current subforests are subtrees.
                 if (it1.postL_to_lld[i1 + ioff] == it1.postL_to_lld[i] && it2.postL_to_lld[j1 + joff] == it2.postL_to_lld[j]) {
                     dc = forestdist[i1 - 1][j1 - 1] + u;
                     // Store the relevant distance value in delta array.
                     if (treesSwapped) {
-                        delta[it2.postL_to_preL[j1 + joff]][it1.postL_to_preL[i1 + ioff]] = forestdist[i1 - 1][j1 - 1];
+                        delta[it2.postL_to_preL[j1 + joff] * size2 + it1.postL_to_preL[i1 + ioff]] = forestdist[i1 - 1][j1 - 1];
                     } else {
-                        delta[it1.postL_to_preL[i1 + ioff]][it2.postL_to_preL[j1 + joff]] = forestdist[i1 - 1][j1 - 1];
+                        delta[it1.postL_to_preL[i1 + ioff] * size2 + it2.postL_to_preL[j1 + joff]] = forestdist[i1 - 1][j1 - 1];
                     }
                 } else {
                     dc = forestdist[it1.postL_to_lld[i1 + ioff] - 1 - ioff][it2.postL_to_lld[j1 + joff] - 1 - joff] +
-                            (treesSwapped ? delta[it2.postL_to_preL[j1 + joff]][it1.postL_to_preL[i1 + ioff]] : delta[it1.postL_to_preL[i1 + ioff]][it2.postL_to_preL[j1 + joff]]) + u;
+                            (treesSwapped ? delta[it2.postL_to_preL[j1 + joff] * size2 + it1.postL_to_preL[i1 + ioff]] : delta[it1.postL_to_preL[i1 + ioff] * size2 + it2.postL_to_preL[j1 + joff]]) + u;
                 }
                 // Calculate final minimum.
                 forestdist[i1][j1] = da >= db ? db >= dc ? dc : db : da >= dc ? dc : da;
@@ -1486,36 +1561,40 @@ public class APTED<C extends CostModel, D> {
      * due to better performance compared to spfA.
      *
      * @param it1          node indexer of the left-hand input subtree.
+     * @param subtree1     left-to-right preorder id of the root of the
+     *                     left-hand input subtree.
      * @param it2          node indexer of the right-hand input subtree.
+     * @param subtree2     left-to-right preorder id of the root of the
+     *                     right-hand input subtree.
      * @param treesSwapped says if the order of input subtrees has been swapped
      *                     compared to the order of the initial input trees. Used
      *                     for accessing delta array and deciding on the edit
      *                     operation.
      * @return tree edit distance between left-hand and right-hand input subtrees.
      */
-    private float spfR(NodeIndexer it1, NodeIndexer it2, boolean treesSwapped) {
+    private float spfR(NodeIndexer it1, int subtree1, NodeIndexer it2, int subtree2, boolean treesSwapped) {
         // Initialise the array to store the keyroot nodes in the right-hand input
         // subtree.
-        int[] revKeyRoots = new int[it2.sizes[it2.getCurrentNode()]];
-        Arrays.fill(revKeyRoots, -1);
+        int[] revKeyRoots = workspace.keyRoots(it2.sizes[subtree2]);
+        Arrays.fill(revKeyRoots, 0, it2.sizes[subtree2], -1);
         // Get the rightmost leaf node of the right-hand input subtree.
-        int pathID = it2.preL_to_rld(it2.getCurrentNode());
+        int pathID = it2.preL_to_rld(subtree2);
         // Calculate the keyroot nodes in the right-hand input subtree.
         // firstKeyRoot is the index in keyRoots of the first keyroot node that
         // we have to process. We need this index because keyRoots array is larger
         // than the number of keyroot nodes.
-        int firstKeyRoot = computeRevKeyRoots(it2, it2.getCurrentNode(), pathID, revKeyRoots, 0);
+        int firstKeyRoot = computeRevKeyRoots(it2, subtree2, pathID, revKeyRoots, 0);
         // Initialise an array to store intermediate distances for subforest pairs.
-        float[][] forestdist = new float[it1.sizes[it1.getCurrentNode()] + 1][it2.sizes[it2.getCurrentNode()] + 1];
+        float[][] forestdist = workspace.forestdist(it1.sizes[subtree1] + 1, it2.sizes[subtree2] + 1);
         // Compute the distances between pairs of keyroot nodes. In the left-hand
         // input subtree only the root is the keyroot. Thus, we compute the distance
         // between the left-hand input subtree and all keyroot nodes in the
         // right-hand input subtree.
         for (int i = firstKeyRoot - 1; i >= 0; i--) {
-            revTreeEditDist(it1, it2, it1.getCurrentNode(), revKeyRoots[i], forestdist, treesSwapped);
+            revTreeEditDist(it1, it2, subtree1, revKeyRoots[i], forestdist, treesSwapped);
         }
         // Return the distance between the input subtrees.
-        return forestdist[it1.sizes[it1.getCurrentNode()]][it2.sizes[it2.getCurrentNode()]];
+        return forestdist[it1.sizes[subtree1]][it2.sizes[subtree2]];
     }
 
     /**
@@ -1570,6 +1649,11 @@ public class APTED<C extends CostModel, D> {
      *                     operation.
      */
     private void revTreeEditDist(NodeIndexer it1, NodeIndexer it2, int it1subtree, int it2subtree, float[][] forestdist, boolean treesSwapped) {
+        // Costs of deleting nodes of F and inserting nodes of G. If the input
+        // trees have been swapped, F is in the destination tree and the costs
+        // are exchanged.
+        float[] it1delCost = treesSwapped ? it1.preL_to_insCost : it1.preL_to_delCost;
+        float[] it2insCost = treesSwapped ? it2.preL_to_delCost : it2.preL_to_insCost;
         // Translate input subtree root nodes to right-to-left postorder.
         int i = it1.preL_to_postR[it1subtree];
         int j = it2.preL_to_postR[it2subtree];
@@ -1588,10 +1672,10 @@ public class APTED<C extends CostModel, D> {
         // relevant subforest.
         forestdist[0][0] = 0;
         for (int i1 = 1; i1 <= i - ioff; i1++) {
-            forestdist[i1][0] = forestdist[i1 - 1][0] + (treesSwapped ? costModel.ins(it1.postR_to_node(i1 + ioff)) : costModel.del(it1.postR_to_node(i1 + ioff))); // USE COST MODEL - delete i1.
+            forestdist[i1][0] = forestdist[i1 - 1][0] + it1delCost[it1.postR_to_preL[i1 + ioff]]; // USE COST MODEL - delete i1.
         }
         for (int j1 = 1; j1 <= j - joff; j1++) {
-            forestdist[0][j1] = forestdist[0][j1 - 1] + (treesSwapped ? costModel.del(it2.postR_to_node(j1 + joff)) : costModel.ins(it2.postR_to_node(j1 + joff))); // USE COST MODEL - insert j1.
+            forestdist[0][j1] = forestdist[0][j1 - 1] + it2insCost[it2.postR_to_preL[j1 + joff]]; // USE COST MODEL - insert j1.
         }
         // Fill in the remaining costs.
         for (int i1 = 1; i1 <= i - ioff; i1++) {
@@ -1599,21 +1683,21 @@ public class APTED<C extends CostModel, D> {
                 // Increment the number of subproblems.
                 counter++;
                 // Calculate partial distance values for this subproblem.
-                float u = (treesSwapped ? costModel.ren(it2.postR_to_node(j1 + joff), it1.postR_to_node(i1 + ioff)) : costModel.ren(it1.postR_to_node(i1 + ioff), it2.postR_to_node(j1 + joff))); // USE COST MODEL - rename i1 to j1.
-                da = forestdist[i1 - 1][j1] + (treesSwapped ? costModel.ins(it1.postR_to_node(i1 + ioff)) : costModel.del(it1.postR_to_node(i1 + ioff))); // USE COST MODEL - delete i1.
-                db = forestdist[i1][j1 - 1] + (treesSwapped ? costModel.del(it2.postR_to_node(j1 + joff)) : costModel.ins(it2.postR_to_node(j1 + joff))); // USE COST MODEL - insert j1.
+                float u = (treesSwapped ? costs.ren(it2, it2.postR_to_preL[j1 + joff], it1, it1.postR_to_preL[i1 + ioff]) : costs.ren(it1, it1.postR_to_preL[i1 + ioff], it2, it2.postR_to_preL[j1 + joff])); // USE COST MODEL - rename i1 to j1.
+                da = forestdist[i1 - 1][j1] + it1delCost[it1.postR_to_preL[i1 + ioff]]; // USE COST MODEL - delete i1.
+                db = forestdist[i1][j1 - 1] + it2insCost[it2.postR_to_preL[j1 + joff]]; // USE COST MODEL - insert j1.
                 // If current subforests are subtrees.
                 if (it1.postR_to_rld[i1 + ioff] == it1.postR_to_rld[i] && it2.postR_to_rld[j1 + joff] == it2.postR_to_rld[j]) {
                     dc = forestdist[i1 - 1][j1 - 1] + u;
                     // Store the relevant distance value in delta array.
                     if (treesSwapped) {
-                        delta[it2.postR_to_preL[j1 + joff]][it1.postR_to_preL[i1 + ioff]] = forestdist[i1 - 1][j1 - 1];
+                        delta[it2.postR_to_preL[j1 + joff] * size2 + it1.postR_to_preL[i1 + ioff]] = forestdist[i1 - 1][j1 - 1];
                     } else {
-                        delta[it1.postR_to_preL[i1 + ioff]][it2.postR_to_preL[j1 + joff]] = forestdist[i1 - 1][j1 - 1];
+                        delta[it1.postR_to_preL[i1 + ioff] * size2 + it2.postR_to_preL[j1 + joff]] = forestdist[i1 - 1][j1 - 1];
                     }
                 } else {
                     dc = forestdist[it1.postR_to_rld[i1 + ioff] - 1 - ioff][it2.postR_to_rld[j1 + joff] - 1 - joff] +
-                            (treesSwapped ? delta[it2.postR_to_preL[j1 + joff]][it1.postR_to_preL[i1 + ioff]] : delta[it1.postR_to_preL[i1 + ioff]][it2.postR_to_preL[j1 + joff]]) + u;
+                            (treesSwapped ? delta[it2.postR_to_preL[j1 + joff] * size2 + it1.postR_to_preL[i1 + ioff]] : delta[it1.postR_to_preL[i1 + ioff] * size2 + it2.postR_to_preL[j1 + joff]]) + u;
                 }
                 // Calculate final minimum.
                 forestdist[i1][j1] = da >= db ? db >= dc ? dc : db : da >= dc ? dc : da;
@@ -1809,11 +1893,11 @@ public class APTED<C extends CostModel, D> {
                     // treedist[di][dj] = forestdist[di][dj];
                 } else {
                     // di and dj are postorder ids of the nodes - starting with 1
-                    // Substituted 'treedist[di][dj]' with 'delta[it1.postL_to_preL[di-1]][it2.postL_to_preL[dj-1]]'
+                    // Substituted 'treedist[di][dj]' with 'delta[it1.postL_to_preL[di-1] * size2 + it2.postL_to_preL[dj-1]]'
                     forestdist[di][dj] = Math.min(Math.min(
                                     forestdist[di - 1][dj] + costModel.del(ted1.postL_to_node(di - 1)),
                                     forestdist[di][dj - 1] + costModel.ins(ted2.postL_to_node(dj - 1))),
-                            forestdist[ted1.postL_to_lld[di - 1]][ted2.postL_to_lld[dj - 1]] + delta[it1.postL_to_preL[di - 1]][it2.postL_to_preL[dj - 1]] + costRen);
+                            forestdist[ted1.postL_to_lld[di - 1]][ted2.postL_to_lld[dj - 1]] + delta[it1.postL_to_preL[di - 1] * size2 + it2.postL_to_preL[dj - 1]] + costRen);
                 }
             }
         }
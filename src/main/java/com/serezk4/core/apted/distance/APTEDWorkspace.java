@@ -0,0 +1,273 @@
+package com.serezk4.core.apted.distance;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Reusable scratch memory of the {@link APTED} algorithm.
+ *
+ * <p>
+ * A single distance computation needs the strategy and distance matrix {@code delta}, the rows of the strategy
+ * computation, the {@code q}, {@code fn} and {@code ft} arrays and the forest distance matrices of the single-path
+ * functions. Allocating them for every pair dominates the garbage produced by a comparison of large trees. A
+ * workspace keeps these buffers between computations and only replaces a buffer when a larger pair arrives, so
+ * that comparisons of trees no larger than those already seen do not allocate.
+ * </p>
+ *
+ * <p>
+ * Buffers are handed out already cleared over the requested region, exactly as freshly allocated arrays would be,
+ * so results do not depend on earlier computations. A workspace retains the memory of the largest pair it has seen
+ * for as long as it is reachable, and is not thread-safe: use one workspace per thread.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>{@code
+ * APTEDWorkspace workspace = new APTEDWorkspace();
+ * APTED<WeightedCostModel, StringNodeData> apted = new APTED<>(costModel, workspace);
+ * float distance = apted.computeEditDistance(indexer1, indexer2);
+ * }</pre>
+ *
+ * @see APTED
+ *
+ * @author serezk4
+ * @version 1.0
+ * @since 1.0
+ */
+public final class APTEDWorkspace {
+    private float[] strategy = new float[0];
+    private float[][] s = new float[0][0];
+    private float[][] t = new float[0][0];
+    private float[][] forestdist = new float[0][0];
+
+    private float[][] cost1L = new float[0][];
+    private float[][] cost1R = new float[0][];
+    private float[][] cost1I = new float[0][];
+    private final Deque<float[]> rows = new ArrayDeque<>();
+    private int rowLength;
+
+    private float[] cost2L = new float[0];
+    private float[] cost2R = new float[0];
+    private float[] cost2I = new float[0];
+    private float[] leafRow = new float[0];
+    private int[] cost2Path = new int[0];
+
+    private float[] q = new float[0];
+    private int[] fn = new int[0];
+    private int[] ft = new int[0];
+    private int[] keyRoots = new int[0];
+
+    /**
+     * Returns the strategy matrix, which {@link APTED} later reuses as its distance matrix {@code delta}.
+     *
+     * <p>
+     * The matrix is stored row-major in a single array, the entry of source node {@code x} and destination node
+     * {@code y} being at {@code x * size2 + y}. Compared to a {@code float[size1][size2]}, this saves one object
+     * and one bounds check per row and keeps the rows adjacent in memory.
+     * </p>
+     *
+     * @param size1 size of the source tree
+     * @param size2 size of the destination tree
+     * @return an array of at least {@code size1 * size2} elements, zeroed in that region
+     * @throws IllegalArgumentException if the matrix does not fit in an array
+     */
+    float[] strategy(
+            final int size1,
+            final int size2
+    ) {
+        final long length = (long) size1 * size2;
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Trees too large to compare: " + size1 + " x " + size2 + " nodes");
+        }
+        if (strategy.length < length) strategy = new float[(int) length];
+        else Arrays.fill(strategy, 0, (int) length, 0);
+        return strategy;
+    }
+
+    /**
+     * @return the matrix {@code s} of spfA, at least {@code rows x columns} and zeroed in that region
+     */
+    float[][] s(
+            final int rows,
+            final int columns
+    ) {
+        s = zeroed(s, rows, columns);
+        return s;
+    }
+
+    /**
+     * @return the matrix {@code t} of spfA, at least {@code rows x columns} and zeroed in that region
+     */
+    float[][] t(
+            final int rows,
+            final int columns
+    ) {
+        t = zeroed(t, rows, columns);
+        return t;
+    }
+
+    /**
+     * @return the forest distance matrix of spfL and spfR, at least {@code rows x columns} and zeroed in that region
+     */
+    float[][] forestdist(
+            final int rows,
+            final int columns
+    ) {
+        forestdist = zeroed(forestdist, rows, columns);
+        return forestdist;
+    }
+
+    /**
+     * @return the row pointers of the left path costs of the strategy computation, {@code null} up to {@code size1}
+     */
+    float[][] cost1L(final int size1) {
+        cost1L = cleared(cost1L, size1);
+        return cost1L;
+    }
+
+    /**
+     * @return the row pointers of the right path costs of the strategy computation, {@code null} up to {@code size1}
+     */
+    float[][] cost1R(final int size1) {
+        cost1R = cleared(cost1R, size1);
+        return cost1R;
+    }
+
+    /**
+     * @return the row pointers of the inner path costs of the strategy computation, {@code null} up to {@code size1}
+     */
+    float[][] cost1I(final int size1) {
+        cost1I = cleared(cost1I, size1);
+        return cost1I;
+    }
+
+    /**
+     * Takes a zeroed cost row of the strategy computation.
+     *
+     * <p>
+     * Rows must be handed back with {@link #giveRow(float[])} once they are zeroed again. All rows of one strategy
+     * computation have the same length, at least {@code size2}; a computation with a larger destination tree
+     * discards the rows of earlier computations.
+     * </p>
+     *
+     * @param size2 size of the destination tree
+     * @return a row of at least {@code size2} zeros
+     */
+    float[] takeRow(final int size2) {
+        if (rowLength < size2) {
+            rows.clear();
+            rowLength = size2;
+        }
+        return rows.isEmpty() ? new float[rowLength] : rows.pop();
+    }
+
+    /**
+     * Hands back a row taken with {@link #takeRow(int)}.
+     *
+     * @param row a row that is zero over its whole length
+     */
+    void giveRow(final float[] row) {
+        if (row.length == rowLength) rows.push(row);
+    }
+
+    /**
+     * @return the left path costs of the destination tree, at least {@code size2} long
+     */
+    float[] cost2L(final int size2) {
+        if (cost2L.length < size2) cost2L = new float[size2];
+        return cost2L;
+    }
+
+    /**
+     * @return the right path costs of the destination tree, at least {@code size2} long
+     */
+    float[] cost2R(final int size2) {
+        if (cost2R.length < size2) cost2R = new float[size2];
+        return cost2R;
+    }
+
+    /**
+     * @return the inner path costs of the destination tree, at least {@code size2} long
+     */
+    float[] cost2I(final int size2) {
+        if (cost2I.length < size2) cost2I = new float[size2];
+        return cost2I;
+    }
+
+    /**
+     * @return the inner paths of the destination tree, at least {@code size2} long
+     */
+    int[] cost2Path(final int size2) {
+        if (cost2Path.length < size2) cost2Path = new int[size2];
+        return cost2Path;
+    }
+
+    /**
+     * @return the cost row shared by all leaves of the source tree, at least {@code size2} long and zeroed
+     */
+    float[] leafRow(final int size2) {
+        if (leafRow.length < size2) leafRow = new float[size2];
+        else Arrays.fill(leafRow, 0, size2, 0);
+        return leafRow;
+    }
+
+    /**
+     * @return the {@code q} array of spfA, at least {@code length} long and zeroed in that region
+     */
+    float[] q(final int length) {
+        if (q.length < length) q = new float[length];
+        else Arrays.fill(q, 0, length, 0);
+        return q;
+    }
+
+    /**
+     * Returns the {@code fn} array. The algorithm uses its last element as a sentinel slot, which is beyond every
+     * node id for any array at least {@code length} long.
+     *
+     * @return the {@code fn} array, at least {@code length} long and zeroed
+     */
+    int[] fn(final int length) {
+        if (fn.length < length) fn = new int[length];
+        else Arrays.fill(fn, 0);
+        return fn;
+    }
+
+    /**
+     * @return the {@code ft} array, at least {@code length} long and zeroed in that region
+     */
+    int[] ft(final int length) {
+        if (ft.length < length) ft = new int[length];
+        else Arrays.fill(ft, 0, length, 0);
+        return ft;
+    }
+
+    /**
+     * @return the keyroot array of spfL and spfR, at least {@code length} long
+     */
+    int[] keyRoots(final int length) {
+        if (keyRoots.length < length) keyRoots = new int[length];
+        return keyRoots;
+    }
+
+    private static float[][] zeroed(
+            final float[][] matrix,
+            final int rows,
+            final int columns
+    ) {
+        if (matrix.length < rows || matrix.length > 0 && matrix[0].length < columns) {
+            final int currentColumns = matrix.length > 0 ? matrix[0].length : 0;
+            return new float[Math.max(rows, matrix.length)][Math.max(columns, currentColumns)];
+        }
+        for (int row = 0; row < rows; row++) Arrays.fill(matrix[row], 0, columns, 0);
+        return matrix;
+    }
+
+    private static float[][] cleared(
+            final float[][] pointers,
+            final int length
+    ) {
+        if (pointers.length < length) return new float[length][];
+        Arrays.fill(pointers, 0, length, null);
+        return pointers;
+    }
+}
@@ -0,0 +1,182 @@
+package com.serezk4.core.apted.distance;
+
+import com.serezk4.core.apted.costmodel.CostModel;
+import com.serezk4.core.apted.costmodel.IndexedCostModel;
+import com.serezk4.core.apted.node.NodeIndexer;
+
+import java.util.Arrays;
+
+/**
+ * Threshold-aware tree edit distance.
+ *
+ * <p>
+ * Callers that only need to know whether two trees are within a maximum edit cost do not need the exact distance
+ * of pairs that are far apart. This class computes the exact {@link APTED} distance only for pairs that survive
+ * two cheaper lower bounds, each valid for any {@link CostModel} whose costs depend only on the nodes involved:
+ * <ol>
+ *     <li><b>Size bound</b>: at least {@code |n1 - n2|} nodes of the larger tree cannot be mapped, so the distance
+ *     is at least that many times the cheapest deletion (or insertion) of that tree. Costs {@code O(n)}.</li>
+ *     <li><b>Preorder string bound</b>: every tree edit mapping preserves the preorder of both trees, so it is also
+ *     an alignment of the preorder node sequences with the same cost. The string edit distance of the preorder
+ *     sequences is therefore a lower bound. It is computed in a band of width {@code maxCost / minIndelCost} and
+ *     abandoned as soon as a whole row of the band exceeds {@code maxCost}. Costs {@code O(n * band)}.</li>
+ * </ol>
+ * Pairs proven to exceed the bound are reported as {@link #ABOVE_BOUND}.
+ * </p>
+ *
+ * <p>
+ * An instance keeps the rows of the banded string edit distance and an {@link APTED} instance, together with its
+ * {@link APTEDWorkspace}, between computations, growing them only when a larger pair arrives. It is therefore not
+ * thread-safe: use one instance per thread at a time, e.g. through a {@link ThreadLocal} or a pool of instances.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>{@code
+ * BoundedTED<WeightedCostModel, StringNodeData> ted = new BoundedTED<>(costModel);
+ * float distance = ted.computeEditDistance(indexer1, indexer2, maxCost);
+ * if (distance != BoundedTED.ABOVE_BOUND) ...
+ * }</pre>
+ *
+ * @param <C> type of cost model
+ * @param <D> type of node data
+ *
+ * @see APTED
+ *
+ * @author serezk4
+ * @version 1.0
+ * @since 1.0
+ */
+public class BoundedTED<C extends CostModel, D> {
+
+    /**
+     * Result of a computation whose distance is proven to exceed the maximum cost.
+     */
+    public static final float ABOVE_BOUND = Float.POSITIVE_INFINITY;
+
+    /**
+     * Relative slack applied before a lower bound rejects a pair, so that float rounding in the bounds never
+     * rejects a pair whose exact distance is within the maximum cost.
+     */
+    private static final float TOLERANCE = 1e-4f;
+
+    private final IndexedCostModel<D> costs;
+    private final APTED<C, D> apted;
+
+    private float[] previous = new float[0];
+    private float[] current = new float[0];
+
+    /**
+     * Constructs the bounded algorithm with the specified cost model.
+     *
+     * @param costModel cost model for edit operations, equal to the one the indexers were built with
+     */
+    @SuppressWarnings("unchecked")
+    public BoundedTED(final C costModel) {
+        this.costs = IndexedCostModel.of(costModel);
+        this.apted = new APTED<>(costModel);
+    }
+
+    /**
+     * Computes the exact tree edit distance, without any bound, reusing the scratch memory of this instance.
+     *
+     * @param it1 indexer of the source tree
+     * @param it2 indexer of the destination tree
+     * @return the exact tree edit distance
+     */
+    public float computeEditDistance(
+            final NodeIndexer<D, C> it1,
+            final NodeIndexer<D, C> it2
+    ) {
+        return apted.computeEditDistance(it1, it2);
+    }
+
+    /**
+     * Computes the tree edit distance if it does not exceed the maximum cost.
+     *
+     * @param it1     indexer of the source tree
+     * @param it2     indexer of the destination tree
+     * @param maxCost the maximum distance of interest
+     * @return the exact tree edit distance if it is at most {@code maxCost}, {@link #ABOVE_BOUND} otherwise
+     */
+    public float computeEditDistance(
+            final NodeIndexer<D, C> it1,
+            final NodeIndexer<D, C> it2,
+            final float maxCost
+    ) {
+        if (maxCost < 0) return ABOVE_BOUND;
+        final float limit = maxCost + TOLERANCE * Math.max(1.0f, maxCost);
+
+        final float minDel = minCost(it1.preL_to_delCost);
+        final float minIns = minCost(it2.preL_to_insCost);
+
+        final int sizeDifference = it1.getSize() - it2.getSize();
+        final float sizeBound = sizeDifference > 0 ? sizeDifference * minDel : -sizeDifference * minIns;
+        if (sizeBound > limit) return ABOVE_BOUND;
+
+        if (preorderDistanceExceeds(it1, it2, Math.min(minDel, minIns), limit)) {
+            return ABOVE_BOUND;
+        }
+
+        final float distance = apted.computeEditDistance(it1, it2);
+        return distance <= limit ? distance : ABOVE_BOUND;
+    }
+
+    /**
+     * Runs the banded string edit distance of the preorder node sequences.
+     *
+     * @return {@code true} if the preorder distance, and therefore the tree edit distance, exceeds the limit
+     */
+    private boolean preorderDistanceExceeds(
+            final NodeIndexer<D, C> it1,
+            final NodeIndexer<D, C> it2,
+            final float minIndel,
+            final float limit
+    ) {
+        final int n = it1.getSize();
+        final int m = it2.getSize();
+        final float[] delCost = it1.preL_to_delCost;
+        final float[] insCost = it2.preL_to_insCost;
+        final int band = minIndel > 0 ? (int) Math.min(n + m, Math.floor(limit / minIndel)) : n + m;
+
+        if (previous.length < m + 1) {
+            previous = new float[m + 1];
+            current = new float[m + 1];
+        }
+
+        float[] previous = this.previous;
+        float[] current = this.current;
+        Arrays.fill(previous, 0, m + 1, Float.POSITIVE_INFINITY);
+        previous[0] = 0;
+        for (int j = 1; j <= Math.min(m, band); j++) previous[j] = previous[j - 1] + insCost[j - 1];
+
+        for (int i = 1; i <= n; i++) {
+            Arrays.fill(current, 0, m + 1, Float.POSITIVE_INFINITY);
+            final int from = Math.max(0, i - band);
+            final int to = Math.min(m, i + band);
+            final float del = delCost[i - 1];
+
+            float rowMin = Float.POSITIVE_INFINITY;
+            for (int j = from; j <= to; j++) {
+                float cost = previous[j] + del;
+                if (j > 0) {
+                    cost = Math.min(cost, current[j - 1] + insCost[j - 1]);
+                    cost = Math.min(cost, previous[j - 1] + costs.ren(it1, i - 1, it2, j - 1));
+                }
+                current[j] = cost;
+                rowMin = Math.min(rowMin, cost);
+            }
+            if (rowMin > limit) return true;
+
+            final float[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[m] > limit;
+    }
+
+    private static float minCost(final float[] costs) {
+        float min = Float.POSITIVE_INFINITY;
+        for (float cost : costs) min = Math.min(min, cost);
+        return Math.max(0, min);
+    }
+}
@@ -0,0 +1,204 @@
+package com.serezk4.core.apted.node;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.ToIntFunction;
+
+/**
+ * Immutable tree laid out as flat arrays indexed by left-to-right preorder id.
+ *
+ * <p>
+ * A flat tree stores, for every node, an integer label id, the size of its subtree and its parent, and stores the
+ * children of all nodes in one shared array (compressed sparse rows): the children of node {@code n} are
+ * {@code children[childOffsets[n]]} to {@code children[childOffsets[n + 1] - 1]}, from left to right. The
+ * original {@link Node}s are kept alongside, because cost models price edit operations on node data.
+ * </p>
+ *
+ * <p>
+ * Flat trees are built without recursion, so arbitrarily deep trees are supported, and are meant to be built
+ * once per class and reused for every comparison the class takes part in: a {@link NodeIndexer} is created from a
+ * flat tree by plain array loops. Instances are safe to share between threads.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>{@code
+ * FlatTree<StringNodeData> tree = FlatTree.of(NodeUtil.parseTreeToNode(clazz.tree()));
+ * float distance = new APTED<>(new WeightedCostModel()).computeEditDistance(tree, otherTree);
+ * }</pre>
+ *
+ * @param <D> type of node data
+ *
+ * @see LabelDictionary
+ * @see NodeIndexer
+ *
+ * @author serezk4
+ * @version 1.0
+ * @since 1.0
+ */
+public final class FlatTree<D> {
+
+    /**
+     * Label id of nodes of trees built without a labeler.
+     */
+    public static final int NO_LABEL = -1;
+
+    private final Node<D>[] nodes;
+    private final int[] labels;
+    private final int[] sizes;
+    private final int[] parents;
+    private final int[] childOffsets;
+    private final int[] children;
+
+    private FlatTree(
+            final Node<D>[] nodes,
+            final int[] labels,
+            final int[] sizes,
+            final int[] parents,
+            final int[] childOffsets,
+            final int[] children
+    ) {
+        this.nodes = nodes;
+        this.labels = labels;
+        this.sizes = sizes;
+        this.parents = parents;
+        this.childOffsets = childOffsets;
+        this.children = children;
+    }
+
+    /**
+     * Flattens a tree of string labels, resolving labels through the shared {@link LabelDictionary}.
+     *
+     * @param root root of the tree
+     * @return the flattened tree
+     */
+    public static FlatTree<StringNodeData> of(final Node<StringNodeData> root) {
+        final LabelDictionary dictionary = LabelDictionary.getInstance();
+        return of(root, data -> dictionary.id(data.getLabel()));
+    }
+
+    /**
+     * Flattens a tree, computing label ids with the given function.
+     *
+     * <p>
+     * A {@code null} labeler leaves every label at {@link #NO_LABEL}, for callers that only need the structure.
+     * </p>
+     *
+     * @param root    root of the tree
+     * @param labeler maps node data to a label id, or {@code null}
+     * @param <D>     type of node data
+     * @return the flattened tree
+     */
+    @SuppressWarnings("unchecked")
+    public static <D> FlatTree<D> of(
+            final Node<D> root,
+            final ToIntFunction<? super D> labeler
+    ) {
+        int size = 0;
+        final Deque<Node<D>> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            size++;
+            stack.pop().getChildren().forEach(stack::push);
+        }
+
+        final Node<D>[] nodes = new Node[size];
+        final int[] labels = new int[size];
+        final int[] parents = new int[size];
+        final int[] childCounts = new int[size];
+
+        final Deque<Integer> parentStack = new ArrayDeque<>();
+        stack.push(root);
+        parentStack.push(-1);
+        for (int preorder = 0; !stack.isEmpty(); preorder++) {
+            final Node<D> node = stack.pop();
+            nodes[preorder] = node;
+            labels[preorder] = labeler != null ? labeler.applyAsInt(node.getNodeData()) : NO_LABEL;
+            parents[preorder] = parentStack.pop();
+            childCounts[preorder] = node.getChildren().size();
+            for (int i = node.getChildren().size() - 1; i >= 0; i--) {
+                stack.push(node.getChildren().get(i));
+                parentStack.push(preorder);
+            }
+        }
+
+        final int[] sizes = new int[size];
+        for (int preorder = size - 1; preorder >= 0; preorder--) {
+            sizes[preorder]++;
+            if (parents[preorder] >= 0) sizes[parents[preorder]] += sizes[preorder];
+        }
+
+        final int[] childOffsets = new int[size + 1];
+        for (int preorder = 0; preorder < size; preorder++) {
+            childOffsets[preorder + 1] = childOffsets[preorder] + childCounts[preorder];
+        }
+
+        // Children are visited in preorder, which is left-to-right for siblings.
+        final int[] children = new int[size - 1];
+        final int[] cursor = new int[size];
+        for (int preorder = 1; preorder < size; preorder++) {
+            final int parent = parents[preorder];
+            children[childOffsets[parent] + cursor[parent]++] = preorder;
+        }
+
+        return new FlatTree<>(nodes, labels, sizes, parents, childOffsets, children);
+    }
+
+    /**
+     * @return the number of nodes in the tree
+     */
+    public int size() {
+        return nodes.length;
+    }
+
+    /**
+     * @param preorder left-to-right preorder id of a node
+     * @return the {@link Node} of the node
+     */
+    public Node<D> node(final int preorder) {
+        return nodes[preorder];
+    }
+
+    /**
+     * @param preorder left-to-right preorder id of a node
+     * @return the label id of the node, or {@link #NO_LABEL}
+     */
+    public int label(final int preorder) {
+        return labels[preorder];
+    }
+
+    /**
+     * @param preorder left-to-right preorder id of a node
+     * @return the number of nodes in the subtree rooted at the node, including the node itself
+     */
+    public int subtreeSize(final int preorder) {
+        return sizes[preorder];
+    }
+
+    /**
+     * @param preorder left-to-right preorder id of a node
+     * @return the preorder id of the parent, or {@code -1} for the root
+     */
+    public int parent(final int preorder) {
+        return parents[preorder];
+    }
+
+    /**
+     * @param preorder left-to-right preorder id of a node
+     * @return the number of children of the node
+     */
+    public int childCount(final int preorder) {
+        return childOffsets[preorder + 1] - childOffsets[preorder];
+    }
+
+    /**
+     * @param preorder left-to-right preorder id of a node
+     * @param index    position of the child among its siblings, starting with {@code 0}
+     * @return the preorder id of the child
+     */
+    public int child(
+            final int preorder,
+            final int index
+    ) {
+        return children[childOffsets[preorder] + index];
+    }
+}
@@ -0,0 +1,96 @@
+package com.serezk4.core.apted.node;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide dictionary mapping node labels to dense integer ids.
+ *
+ * <p>
+ * Ids are assigned in the order labels are first seen, starting with {@code 0}, and never change for the
+ * lifetime of the process. Comparing two ids is therefore equivalent to comparing the labels they stand for,
+ * which lets {@link FlatTree} and cost models work on primitive arrays instead of strings.
+ * </p>
+ *
+ * <p>
+ * The dictionary is thread-safe. Looking up a known label does not lock; only the first occurrence of a label
+ * synchronizes to assign its id.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>{@code
+ * int id = LabelDictionary.getInstance().id("ClassBodyContext");
+ * String label = LabelDictionary.getInstance().label(id);
+ * }</pre>
+ *
+ * @see FlatTree
+ *
+ * @author serezk4
+ * @version 1.0
+ * @since 1.0
+ */
+public final class LabelDictionary {
+    private static final LabelDictionary INSTANCE = new LabelDictionary();
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] labels = new String[256];
+    private volatile int size;
+
+    private LabelDictionary() {
+    }
+
+    /**
+     * Returns the dictionary shared by the whole process.
+     *
+     * @return the singleton instance
+     */
+    public static LabelDictionary getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the id of a label, assigning the next free id if the label has not been seen before.
+     *
+     * @param label the label to look up
+     * @return the id of the label
+     */
+    public int id(final String label) {
+        final Integer id = ids.get(label);
+        return id != null ? id : assign(label);
+    }
+
+    /**
+     * Returns the label of an id.
+     *
+     * @param id an id previously returned by {@link #id(String)}
+     * @return the label the id stands for
+     */
+    public String label(final int id) {
+        return labels[id];
+    }
+
+    /**
+     * Returns the number of labels known to the dictionary. Every id is lower than this value.
+     *
+     * @return the number of assigned ids
+     */
+    public int size() {
+        return size;
+    }
+
+    private synchronized int assign(final String label) {
+        final Integer existing = ids.get(label);
+        if (existing != null) return existing;
+
+        final int id = size;
+        String[] current = labels;
+        if (id == current.length) current = Arrays.copyOf(current, current.length * 2);
+        current[id] = label;
+        labels = current;
+        size = id + 1;
+
+        ids.put(label, id);
+        return id;
+    }
+}
@@ -24,10 +24,8 @@
 package com.serezk4.core.apted.node;
 
 import com.serezk4.core.apted.costmodel.CostModel;
+import com.serezk4.core.apted.costmodel.IndexedCostModel;
 
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.Optional;
 
 /**
  * Indexes nodes of the input tree to the algorithm that is already parsed to
@@ -54,6 +52,10 @@ import java.util.Optional;
  *      efficient. Information Systems 56. 2016.
  * </ul>
  *
+ * <p>An indexer is not modified after construction. It can be built once per
+ * input tree and cost model, and shared between threads and {@code APTED}
+ * instances computing distances of that tree.
+ *
  * @param <D> type of node data.
  * @param <C> type of cost model.
  * @see node.Node
@@ -71,38 +73,47 @@ public class NodeIndexer<D, C extends CostModel> {
      *
      * @see node.Node
      */
-    public Node<D>[] preL_to_node;
+    public final Node<D>[] preL_to_node;
+
+    /**
+     * Index from left-to-right preorder id of node n (starting with {@code 0})
+     * to the {@link LabelDictionary} id of n's label, or
+     * {@link FlatTree#NO_LABEL} for node data without a string label. Used by
+     * {@link IndexedCostModel}s to price edit operations without dereferencing
+     * nodes.
+     */
+    public final int[] preL_to_label;
 
     /**
      * Index from left-to-right preorder id of node n (starting with {@code 0})
      * to the size of n's subtree (node n and all its descendants).
      */
-    public int[] sizes;
+    public final int[] sizes;
 
     /**
      * Index from left-to-right preorder id of node n (starting with {@code 0})
      * to the left-to-right preorder id of n's parent.
      */
-    public int[] parents;
+    public final int[] parents;
 
     /**
      * Index from left-to-right preorder id of node n (starting with {@code 0})
      * to the array of n's children. Size of children array at node n equals the number
      * of n's children.
      */
-    public int[][] children;
+    public final int[][] children;
 
     /**
      * Index from left-to-right postorder id of node n (starting with {@code 0})
      * to the left-to-right postorder id of n's leftmost leaf descendant.
      */
-    public int[] postL_to_lld;
+    public final int[] postL_to_lld;
 
     /**
      * Index from right-to-left postorder id of node n (starting with {@code 0})
      * to the right-to-left postorder id of n's rightmost leaf descendant.
      */
-    public int[] postR_to_rld;
+    public final int[] postR_to_rld;
 
     /**
      * Index from left-to-right preorder id of node n (starting with {@code 0})
@@ -110,7 +121,7 @@ public class NodeIndexer<D, C extends CostModel> {
      * If there is no leaf node to the left of n, it is represented with the
      * value {@code -1} [1, Section 8.4].
      */
-    public int[] preL_to_ln;
+    public final int[] preL_to_ln;
 
     /**
      * Index from right-to-left preorder id of node n (starting with {@code 0})
@@ -118,21 +129,21 @@ public class NodeIndexer<D, C extends CostModel> {
      * If there is no leaf node to the right of n, it is represented with the
      * value {@code -1} [1, Section 8.4].
      */
-    public int[] preR_to_ln;
+    public final int[] preR_to_ln;
 
     /**
      * Index from left-to-right preorder id of node n (starting with {@code 0})
      * to a boolean value that states if node n lies on the leftmost path
      * starting at n's parent [2, Algorithm 1, Lines 26,36].
      */
-    public boolean[] nodeType_L;
+    public final boolean[] nodeType_L;
 
     /**
      * Index from left-to-right preorder id of node n (starting with {@code 0})
      * to a boolean value that states if node n lies on the rightmost path
      * starting at n's parent input tree [2, Section 5.3, Algorithm 1, Lines 26,36].
      */
-    public boolean[] nodeType_R;
+    public final boolean[] nodeType_R;
 
     // Traversal translation indices.
 
@@ -140,37 +151,37 @@ public class NodeIndexer<D, C extends CostModel> {
      * Index from left-to-right preorder id of node n (starting with {@code 0})
      * to the right-to-left preorder id of n.
      */
-    public int[] preL_to_preR;
+    public final int[] preL_to_preR;
 
     /**
      * Index from right-to-left preorder id of node n (starting with {@code 0})
      * to the left-to-right preorder id of n.
      */
-    public int[] preR_to_preL;
+    public final int[] preR_to_preL;
 
     /**
      * Index from left-to-right preorder id of node n (starting with {@code 0})
      * to the left-to-right postorder id of n.
      */
-    public int[] preL_to_postL;
+    public final int[] preL_to_postL;
 
     /**
      * Index from left-to-right postorder id of node n (starting with {@code 0})
      * to the left-to-right preorder id of n.
      */
-    public int[] postL_to_preL;
+    public final int[] postL_to_preL;
 
     /**
      * Index from left-to-right preorder id of node n (starting with {@code 0})
      * to the right-to-left postorder id of n.
      */
-    public int[] preL_to_postR;
+    public final int[] preL_to_postR;
 
     /**
      * Index from right-to-left postorder id of node n (starting with {@code 0})
      * to the left-to-right preorder id of n.
      */
-    public int[] postR_to_preL;
+    public final int[] postR_to_preL;
 
     // Cost indices.
 
@@ -179,85 +190,65 @@ public class NodeIndexer<D, C extends CostModel> {
      * to the cost of spf_L (single path function using the leftmost path) for
      * the subtree rooted at n [1, Section 5.2].
      */
-    public int[] preL_to_kr_sum;
+    public final int[] preL_to_kr_sum;
 
     /**
      * Index from left-to-right preorder id of node n (starting with {@code 0})
      * to the cost of spf_R (single path function using the rightmost path) for
      * the subtree rooted at n [1, Section 5.2].
      */
-    public int[] preL_to_rev_kr_sum;
+    public final int[] preL_to_rev_kr_sum;
 
     /**
      * Index from left-to-right preorder id of node n (starting with {@code 0})
      * to the cost of spf_A (single path function using an inner path) for the
      * subtree rooted at n [1, Section 5.2].
      */
-    public int[] preL_to_desc_sum;
+    public final int[] preL_to_desc_sum;
+
+    /**
+     * Index from left-to-right preorder id of node n (starting with {@code 0})
+     * to the cost of deleting n. Computed once per indexer, so the algorithms
+     * never call the cost model to delete a node.
+     */
+    public final float[] preL_to_delCost;
+
+    /**
+     * Index from left-to-right preorder id of node n (starting with {@code 0})
+     * to the cost of inserting n. Computed once per indexer, so the algorithms
+     * never call the cost model to insert a node.
+     */
+    public final float[] preL_to_insCost;
 
     /**
      * Index from left-to-right preorder id of node n (starting with {@code 0})
      * to the cost of deleting all nodes in the subtree rooted at n.
      */
-    public float[] preL_to_sumDelCost;
+    public final float[] preL_to_sumDelCost;
 
     /**
      * Index from left-to-right preorder id of node n (starting with {@code 0})
      * to the cost of inserting all nodes in the subtree rooted at n.
      */
-    public float[] preL_to_sumInsCost;
+    public final float[] preL_to_sumInsCost;
 
-    // Variables holding values modified at runtime while the algorithm executes.
+    // Structure single-value variables.
     /**
      * Stores the number of leftmost-child leaf nodes in the input tree
      * [2, Section 5.3].
      */
     public int lchl;
 
-    // Structure single-value variables.
     /**
      * Stores the number of rightmost-child leaf nodes in the input tree
      * [2, Section 5.3].
      */
     public int rchl;
-    /**
-     * Stores the left-to-right preorder id of the current subtree's root node.
-     * Used in the tree decomposition phase of APTED [1, Algorithm 1].
-     */
-    private int currentNode;
     /**
      * Stores the size of the input tree.
      */
     private final int treeSize;
 
-    // Variables used temporarily while indexing.
-    /**
-     * Temporary variable used in indexing for storing subtree size.
-     */
-    private int sizeTmp;
-
-    /**
-     * Temporary variable used in indexing for storing sum of subtree sizes
-     * rooted at descendant nodes.
-     */
-    private int descSizesTmp;
-
-    /**
-     * Temporary variable used in indexing for storing sum of keyroot node sizes.
-     */
-    private int krSizesSumTmp;
-
-    /**
-     * Temporary variable used in indexing for storing sum of right-to-left
-     * keyroot node sizes.
-     */
-    private int revkrSizesSumTmp;
-
-    /**
-     * Temporary variable used in indexing for storing preorder index of a node.
-     */
-    private int preorderTmp;
-
     private final C costModel;
 
     /**
@@ -265,18 +256,26 @@ public class NodeIndexer<D, C extends CostModel> {
      * from APTED algorithm.
      *
      * @param inputTree an input tree to APTED. Its nodes will be indexed.
-     * @param costModel instance of a cost model to compute preL_to_sumDelCost
-     *                  and preL_to_sumInsCost.
+     * @param costModel instance of a cost model to compute preL_to_delCost,
+     *                  preL_to_insCost, preL_to_sumDelCost and
+     *                  preL_to_sumInsCost.
      */
     public NodeIndexer(Node<D> inputTree, C costModel) {
-        // Initialise variables.
-        sizeTmp = 0;
-        descSizesTmp = 0;
-        krSizesSumTmp = 0;
-        revkrSizesSumTmp = 0;
-        preorderTmp = 0;
-        currentNode = 0;
-        treeSize = inputTree.getNodeCount();
+        this(FlatTree.of(inputTree, null), costModel);
+    }
+
+    /**
+     * Indexes the nodes of an already flattened input tree. The flat tree can
+     * be built once and used to index the same tree for many computations.
+     *
+     * @param inputTree an input tree to APTED. Its nodes will be indexed.
+     * @param costModel instance of a cost model to compute preL_to_delCost,
+     *                  preL_to_insCost, preL_to_sumDelCost and
+     *                  preL_to_sumInsCost.
+     * @see FlatTree
+     */
+    public NodeIndexer(FlatTree<D> inputTree, C costModel) {
+        treeSize = inputTree.size();
 
         // Initialise indices with the lengths equal to the tree size.
         sizes = new int[treeSize];
@@ -289,12 +288,15 @@ public class NodeIndexer<D, C extends CostModel> {
         postL_to_lld = new int[treeSize];
         postR_to_rld = new int[treeSize];
         preL_to_node = new Node[treeSize];
+        preL_to_label = new int[treeSize];
         preL_to_ln = new int[treeSize];
         preR_to_ln = new int[treeSize];
         preL_to_kr_sum = new int[treeSize];
         preL_to_rev_kr_sum = new int[treeSize];
         preL_to_desc_sum = new int[treeSize];
 
+        preL_to_delCost = new float[treeSize];
+        preL_to_insCost = new float[treeSize];
         preL_to_sumDelCost = new float[treeSize];
         preL_to_sumInsCost = new float[treeSize];
 
@@ -302,12 +304,11 @@ public class NodeIndexer<D, C extends CostModel> {
         nodeType_L = new boolean[treeSize];
         nodeType_R = new boolean[treeSize];
         parents = new int[treeSize];
-        parents[0] = -1; // The root has no parent.
 
         this.costModel = costModel;
 
         // Index the nodes.
-        indexNodes(inputTree, -1);
+        indexNodes(inputTree);
         postTraversalIndexing();
     }
 
@@ -316,88 +317,76 @@ public class NodeIndexer<D, C extends CostModel> {
      * node in index arrays. It computes the following indices: {@link #parents},
      * {@link #children}, {@link #nodeType_L}, {@link #nodeType_R},
      * {@link #preL_to_desc_sum}, {@link #preL_to_kr_sum},
-     * {@link #preL_to_rev_kr_sum}, {@link #preL_to_node}, {@link #sizes},
+     * {@link #preL_to_rev_kr_sum}, {@link #preL_to_node}, {@link #preL_to_label},
+     * {@link #sizes},
      * {@link #preL_to_preR}, {@link #preR_to_preL}, {@link #postL_to_preL},
      * {@link #preL_to_postL}, {@link #preL_to_postR}, {@link #postR_to_preL}.
      *
-     * <p>It is a recursive method that traverses the tree once.
+     * <p>It iterates the nodes twice: top-down to copy the structure and
+     * compute depths, and bottom-up (reversed preorder visits children before
+     * their parents) to accumulate the keyroot and descendant sums.
      *
-     * @param node      is the current node while traversing the input tree.
-     * @param postorder is the postorder id of the current node.
-     * @return postorder id of the current node.
-     */
-    private int indexNodes(Node<D> node, int postorder) {
-        // Initialise variables.
-        int currentSize = 0;
-        int childrenCount = 0;
-        int descSizes = 0;
-        int krSizesSum = 0;
-        int revkrSizesSum = 0;
-        int preorder = preorderTmp;
-        int preorderR = 0;
-        int currentPreorder = -1;
-        // Initialise empty array to store children of this node.
-        ArrayList<Integer> childrenPreorders = new ArrayList<>();
-
-        // Store the preorder id of the current node to use it after the recursion.
-        preorderTmp++;
-
-        // Loop over children of a node.
-        Iterator<Node<D>> childrenIt = node.getChildren().iterator();
-        while (childrenIt.hasNext()) {
-            childrenCount++;
-            currentPreorder = preorderTmp;
-            parents[currentPreorder] = preorder;
-
-            // Execute method recursively for next child.
-            postorder = indexNodes(childrenIt.next(), postorder);
-
-            childrenPreorders.add(Integer.valueOf(currentPreorder));
-
-            currentSize += 1 + sizeTmp;
-            descSizes += descSizesTmp;
-            if (childrenCount > 1) {
-                krSizesSum += krSizesSumTmp + sizeTmp + 1;
-            } else {
-                krSizesSum += krSizesSumTmp;
-                nodeType_L[currentPreorder] = true;
+     * @param tree the flattened input tree.
+     */
+    private void indexNodes(FlatTree<D> tree) {
+        // Sums over the descendants of a node, excluding the node itself. The
+        // sums of subtree sizes grow quadratically with the depth of the tree,
+        // so they are kept in longs even where the resulting index fits an int.
+        long[] descSizes = new long[treeSize];
+        int[] krSizesSum = new int[treeSize];
+        int[] revkrSizesSum = new int[treeSize];
+        int[] depths = new int[treeSize];
+
+        for (int preorder = 0; preorder < treeSize; preorder++) {
+            preL_to_node[preorder] = tree.node(preorder);
+            int label = tree.label(preorder);
+            if (label == FlatTree.NO_LABEL && preL_to_node[preorder].getNodeData() instanceof StringNodeData data) {
+                label = data.labelId();
             }
-            if (childrenIt.hasNext()) {
-                revkrSizesSum += revkrSizesSumTmp + sizeTmp + 1;
-            } else {
-                revkrSizesSum += revkrSizesSumTmp;
-                nodeType_R[currentPreorder] = true;
+            preL_to_label[preorder] = label;
+            sizes[preorder] = tree.subtreeSize(preorder);
+            parents[preorder] = tree.parent(preorder);
+            if (parents[preorder] > -1) {
+                depths[preorder] = depths[parents[preorder]] + 1;
             }
-        }
-
-        postorder++;
 
-        int currentDescSizes = descSizes + currentSize + 1;
-        preL_to_desc_sum[preorder] = ((currentSize + 1) * (currentSize + 1 + 3)) / 2 - currentDescSizes;
-        preL_to_kr_sum[preorder] = krSizesSum + currentSize + 1;
-        preL_to_rev_kr_sum[preorder] = revkrSizesSum + currentSize + 1;
-
-        // Store pointer to a node object corresponding to preorder.
-        preL_to_node[preorder] = node;
-
-        sizes[preorder] = currentSize + 1;
-        preorderR = treeSize - 1 - postorder;
-        preL_to_preR[preorder] = preorderR;
-        preR_to_preL[preorderR] = preorder;
-
-        children[preorder] = toIntArray(childrenPreorders);
+            int childrenCount = tree.childCount(preorder);
+            children[preorder] = new int[childrenCount];
+            for (int i = 0; i < childrenCount; i++) {
+                children[preorder][i] = tree.child(preorder, i);
+            }
+            if (childrenCount > 0) {
+                nodeType_L[children[preorder][0]] = true;
+                nodeType_R[children[preorder][childrenCount - 1]] = true;
+            }
 
-        descSizesTmp = currentDescSizes;
-        sizeTmp = currentSize;
-        krSizesSumTmp = krSizesSum;
-        revkrSizesSumTmp = revkrSizesSum;
+            // A node is finished in postorder after all nodes preceding it in
+            // preorder except its ancestors, and after all its descendants.
+            int postorder = preorder - depths[preorder] + sizes[preorder] - 1;
+            int preorderR = treeSize - 1 - postorder;
+            preL_to_preR[preorder] = preorderR;
+            preR_to_preL[preorderR] = preorder;
+            postL_to_preL[postorder] = preorder;
+            preL_to_postL[preorder] = postorder;
+            preL_to_postR[preorder] = treeSize - 1 - preorder;
+            postR_to_preL[treeSize - 1 - preorder] = preorder;
+        }
 
-        postL_to_preL[postorder] = preorder;
-        preL_to_postL[preorder] = postorder;
-        preL_to_postR[preorder] = treeSize - 1 - preorder;
-        postR_to_preL[treeSize - 1 - preorder] = preorder;
+        for (int preorder = treeSize - 1; preorder >= 0; preorder--) {
+            int[] nodeChildren = children[preorder];
+            for (int i = 0; i < nodeChildren.length; i++) {
+                int child = nodeChildren[i];
+                descSizes[preorder] += descSizes[child] + sizes[child];
+                krSizesSum[preorder] += krSizesSum[child] + (i > 0 ? sizes[child] : 0);
+                revkrSizesSum[preorder] += revkrSizesSum[child] + (i < nodeChildren.length - 1 ? sizes[child] : 0);
+            }
 
-        return postorder;
+            int size = sizes[preorder];
+            long currentDescSizes = descSizes[preorder] + size;
+            preL_to_desc_sum[preorder] = (int) (((long) size * (size + 3)) / 2 - currentDescSizes);
+            preL_to_kr_sum[preorder] = krSizesSum[preorder] + size;
+            preL_to_rev_kr_sum[preorder] = revkrSizesSum[preorder] + size;
+        }
     }
 
     /**
@@ -409,7 +398,9 @@ public class NodeIndexer<D, C extends CostModel> {
      * <p>Runs in linear time in the input tree size. Currently requires two
      * loops over input tree nodes. Can be reduced to one loop (see the code).
      */
+    @SuppressWarnings("unchecked")
     private void postTraversalIndexing() {
+        IndexedCostModel<D> costs = IndexedCostModel.of(costModel);
         int currentLeaf = -1;
         int nodeForSum = -1;
         int parentForSum = -1;
@@ -454,13 +445,16 @@ public class NodeIndexer<D, C extends CostModel> {
                 }
             }
 
-            // Sum up costs of deleting and inserting entire subtrees.
+            // Compute the costs of deleting and inserting single nodes, and sum
+            // up costs of deleting and inserting entire subtrees.
             // Reverse the node index. Here, we need traverse nodes bottom-up.
             nodeForSum = treeSize - i - 1;
             parentForSum = parents[nodeForSum];
             // Update myself.
-            preL_to_sumDelCost[nodeForSum] += costModel.del(preL_to_node[nodeForSum]);
-            preL_to_sumInsCost[nodeForSum] += costModel.ins(preL_to_node[nodeForSum]);
+            preL_to_delCost[nodeForSum] = costs.del(this, nodeForSum);
+            preL_to_insCost[nodeForSum] = costs.ins(this, nodeForSum);
+            preL_to_sumDelCost[nodeForSum] += preL_to_delCost[nodeForSum];
+            preL_to_sumInsCost[nodeForSum] += preL_to_insCost[nodeForSum];
             if (parentForSum > -1) {
                 // Update my parent.
                 preL_to_sumDelCost[parentForSum] += preL_to_sumDelCost[nodeForSum];
@@ -540,42 +534,4 @@ public class NodeIndexer<D, C extends CostModel> {
     public boolean isLeaf(int node) {
         return sizes[node] == 1;
     }
-
-    /**
-     * Converts {@link ArrayList} of integer values to an array. Reads all items
-     * in the list and copies to the output array. The size of output array equals
-     * the number of elements in the list.
-     *
-     * @param integers ArrayList with integer values.
-     * @return array with values from input ArrayList.
-     */
-    private int[] toIntArray(ArrayList<Integer> integers) {
-        int[] ints = new int[integers.size()];
-        int i = 0;
-        for (Integer n : integers) {
-            ints[i++] = n.intValue();
-        }
-        return ints;
-    }
-
-    /**
-     * Returns the root node of the currently processed subtree in the tree
-     * decomposition part of APTED [1, Algorithm 1]. At each point, we have to
-     * know which subtree do we process.
-     *
-     * @return current subtree root node.
-     */
-    public int getCurrentNode() {
-        return currentNode;
-    }
-
-    /**
-     * Stores the root nodes's preorder id of the currently processes subtree.
-     *
-     * @param preorder preorder id of the root node.
-     */
-    public void setCurrentNode(int preorder) {
-        currentNode = preorder;
-    }
-
 }
@@ -39,6 +39,11 @@ public class StringNodeData {
      */
     private final String label;
 
+    /**
+     * Id of the label in the {@link LabelDictionary}, resolved on first use.
+     */
+    private transient int labelId = -1;
+
     /**
      * Constructs node data with a specified label.
      *
@@ -57,4 +62,18 @@ public class StringNodeData {
     public String getLabel() {
         return label;
     }
+
+    /**
+     * Returns the id of the label in the process-wide {@link LabelDictionary}.
+     *
+     * <p>The id is looked up once per node data and cached, so cost models can
+     * index tables by label without hashing the label string.
+     *
+     * @return the label id.
+     */
+    public int labelId() {
+        int id = labelId;
+        if (id < 0) labelId = id = LabelDictionary.getInstance().id(label);
+        return id;
+    }
 }
@@ -1,14 +1,19 @@
 package com.serezk4.core.apted.util;
 
+import com.serezk4.core.antlr4.JavaParser;
 import com.serezk4.core.apted.node.Node;
 import com.serezk4.core.apted.node.StringNodeData;
 import com.serezk4.core.lab.storage.CustomParseTree;
+import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.tree.ParseTree;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 
 public class NodeUtil {
     public static Node<StringNodeData> parseTreeToNode(ParseTree tree) {
+        if (tree instanceof CustomParseTree customTree) return customTree.getNode();
         if (tree == null || tree.getChildCount() == 0) return null;
 
         String type = tree.getClass().getSimpleName();
@@ -22,6 +27,18 @@ public class NodeUtil {
         return node;
     }
 
+    /**
+     * @return every label {@link #parseTreeToNode(ParseTree)} can produce, that is the names of the rule
+     *         contexts of the grammar
+     */
+    public static List<String> grammarLabels() {
+        return Arrays.stream(JavaParser.class.getDeclaredClasses())
+                .filter(ParserRuleContext.class::isAssignableFrom)
+                .map(Class::getSimpleName)
+                .sorted()
+                .toList();
+    }
+
     public static ParseTree parseNodeToTree(Node<StringNodeData> node) {
         if (node == null) return null;
         return new CustomParseTree(node);
@@ -25,7 +25,7 @@ import java.util.Map;
  *
  * <p><b>Usage:</b></p>
  * <pre>{@code
- * HtmlGenerator.generateHtmlReport(isu, labNumber, labs, results);
+ * HtmlGenerator.generateHtmlReport(isu, labNumber, targetLab, results);
  * }</pre>
  *
  * @see Lab
@@ -54,7 +54,6 @@ public class HtmlGenerator {
      *  @param isu       The ISU identifier of the student whose lab is being analyzed.
      *
      * @param labNumber The lab number being analyzed.
-     * @param labs      A list of {@link Lab} objects representing all available labs.
      * @param targetLab
      * @param results   A map where the key is another student's ISU identifier, and the value is a list of
      *                  {@link Plagiarist} objects representing detected plagiarism cases.
@@ -62,9 +61,29 @@ public class HtmlGenerator {
     public static void generateHtmlReport(
             final String isu,
             final int labNumber,
-            final List<Lab> labs,
             final Lab targetLab,
             final Map<String, List<Plagiarist>> results
+    ) {
+        generateHtmlReport(isu, labNumber, targetLab, results, Path.of("plagiarism_report.html"));
+    }
+
+    /**
+     * Generates an HTML report like {@link #generateHtmlReport(String, int, Lab, Map)}, saving it to the
+     * given path instead of the current directory. Missing parent directories are created.
+     *
+     * @param isu        The ISU identifier of the student whose lab is being analyzed.
+     * @param labNumber  The lab number being analyzed.
+     * @param targetLab  The lab of the student whose lab is being analyzed.
+     * @param results    A map where the key is another student's ISU identifier, and the value is a list of
+     *                   {@link Plagiarist} objects representing detected plagiarism cases.
+     * @param reportPath The path the report is written to.
+     */
+    public static void generateHtmlReport(
+            final String isu,
+            final int labNumber,
+            final Lab targetLab,
+            final Map<String, List<Plagiarist>> results,
+            final Path reportPath
     ) {
         StringBuilder htmlBuilder = new StringBuilder();
         htmlBuilder.append("<!DOCTYPE html>")
@@ -165,8 +184,10 @@ public class HtmlGenerator {
 
         htmlBuilder.append("</body>").append("</html>");
 
-        Path reportPath = Path.of("plagiarism_report.html");
         try {
+            if (reportPath.toAbsolutePath().getParent() != null) {
+                Files.createDirectories(reportPath.toAbsolutePath().getParent());
+            }
             Files.writeString(reportPath, htmlBuilder.toString());
         } catch (IOException e) {
             System.err.println(e.getMessage());
@@ -45,6 +45,11 @@ import java.util.Properties;
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 public class CheckstyleAnalyzer {
 
+    /**
+     * Prefix of the entry reported instead of the issues when the analysis of a file fails.
+     */
+    public static final String FAILURE_PREFIX = "Failed to analyze: ";
+
     private static CheckstyleAnalyzer instance;
     private Checker checker;
 
@@ -105,8 +110,23 @@ public class CheckstyleAnalyzer {
             try (var _ = new CustomListener(this, checker)) {
                 checker.process(Collections.singletonList(path.toFile()));
             } catch (Exception e) {
-                add("Failed to analyze: %s".formatted(e.getMessage()));
+                add(FAILURE_PREFIX + e.getMessage());
             }
         }};
     }
+
+    /**
+     * Checks whether a report returned by {@link #analyzeCode(Path)} comes from a failed analysis.
+     *
+     * <p>
+     * A failed analysis may be caused by a transient error, such as an unreadable file, so its report must not be
+     * reused for later analyses of the same source.
+     * </p>
+     *
+     * @param report the report to check
+     * @return {@code true} if the report contains a {@link #FAILURE_PREFIX} entry, {@code false} otherwise
+     */
+    public static boolean isFailure(final List<String> report) {
+        return report.stream().anyMatch(issue -> issue.startsWith(FAILURE_PREFIX));
+    }
 }
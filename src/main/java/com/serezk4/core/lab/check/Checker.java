@@ -49,4 +49,56 @@ public interface Checker {
      * @return a {@code double} value representing the similarity score, ranging from {@code 0.0} to {@code 1.0}
      */
     double detect(Clazz source, Clazz target);
+
+    /**
+     * Detects the similarity between two {@link Clazz} objects when only scores above a threshold matter.
+     *
+     * <p>
+     * If the similarity exceeds the threshold, the exact score is returned. Otherwise implementations may stop
+     * as soon as they can prove that the score cannot exceed the threshold and return any value not above it,
+     * which is much cheaper for dissimilar classes. The default implementation computes the exact score.
+     * </p>
+     *
+     * @param source    the source {@link Clazz} to be compared
+     * @param target    the target {@link Clazz} to compare against
+     * @param threshold the similarity above which the exact score is required
+     * @return the exact similarity score if it exceeds {@code threshold}, a score not above it otherwise
+     */
+    default double detect(Clazz source, Clazz target, double threshold) {
+        return detect(source, target);
+    }
+
+    /**
+     * Cheaply checks whether the similarity of two {@link Clazz} objects can exceed a threshold.
+     *
+     * <p>
+     * Callers use this as a pre-filter before {@link #detect(Clazz, Clazz, double)}: pairs for which it returns
+     * {@code false} are known not to exceed the threshold and need not be scored at all. Implementations must
+     * never return {@code false} for a pair whose similarity exceeds the threshold. The default implementation
+     * cannot rule out any pair.
+     * </p>
+     *
+     * @param source    the source {@link Clazz} to be compared
+     * @param target    the target {@link Clazz} to compare against
+     * @param threshold the similarity threshold
+     * @return {@code false} if the similarity is proven not to exceed {@code threshold}, {@code true} otherwise
+     */
+    default boolean canExceed(Clazz source, Clazz target, double threshold) {
+        return true;
+    }
+
+    /**
+     * Identifies the algorithm and cost model producing the scores of this checker.
+     *
+     * <p>
+     * Persisted scores are keyed by this version, see {@link com.serezk4.core.lab.storage.SimilarityStore}.
+     * Implementations must return a different value whenever a change would alter the scores they compute,
+     * so that scores of the previous version are no longer reused.
+     * </p>
+     *
+     * @return the version of the similarity scores computed by this checker
+     */
+    default String version() {
+        return getClass().getName();
+    }
 }
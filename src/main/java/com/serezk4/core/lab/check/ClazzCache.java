@@ -0,0 +1,131 @@
+package com.serezk4.core.lab.check;
+
+import com.serezk4.core.lab.model.Clazz;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Values derived from classes, computed once per class and dropped together with the class.
+ *
+ * <p>
+ * Comparisons need values derived from the tree of a class, such as its
+ * {@link com.serezk4.core.apted.node.NodeIndexer}, that are too expensive to recompute for every pair the class
+ * takes part in, but must not outlive the class, since labs are streamed and dropped once compared. Values are
+ * therefore keyed by the identity of the class and only kept while the class is reachable, so that {@link Clazz}
+ * itself stays a plain record.
+ * </p>
+ *
+ * <p>
+ * Lookups of known classes take no lock, so the cache can be shared by all threads scoring pairs. Two threads
+ * missing the same class at the same time may both compute its value; either one is kept and returned to both.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>{@code
+ * ClazzCache<TreeProfile> profiles = new ClazzCache<>(clazz -> TreeProfile.of(flatten(clazz)));
+ * TreeProfile profile = profiles.get(clazz);
+ * }</pre>
+ *
+ * @param <V> type of the cached values
+ *
+ * @author serezk4
+ * @version 1.0
+ * @since 1.0
+ */
+public final class ClazzCache<V> {
+    private final Map<Key, V> values = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Clazz> collected = new ReferenceQueue<>();
+    private final Function<Clazz, V> compute;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param compute computes the value of a class on its first lookup, must not return {@code null} or keep a
+     *                reference to the class
+     */
+    public ClazzCache(final Function<Clazz, V> compute) {
+        this.compute = compute;
+    }
+
+    /**
+     * Returns the value of a class, computing it on the first lookup of the class.
+     *
+     * @param clazz the class
+     * @return the value of the class
+     */
+    public V get(final Clazz clazz) {
+        final V cached = values.get(new Lookup(clazz));
+        if (cached != null) return cached;
+
+        expungeCollected();
+        final V value = Objects.requireNonNull(compute.apply(clazz), "value");
+        final V previous = values.putIfAbsent(new WeakKey(clazz, collected), value);
+        return previous != null ? previous : value;
+    }
+
+    /**
+     * @return the number of classes with a cached value, including collected classes not yet removed
+     */
+    public int size() {
+        expungeCollected();
+        return values.size();
+    }
+
+    private void expungeCollected() {
+        for (Reference<? extends Clazz> key; (key = collected.poll()) != null; ) values.remove((Key) key);
+    }
+
+    /**
+     * A class compared by identity, either a stored weak key or a lookup.
+     */
+    private interface Key {
+        Clazz clazz();
+    }
+
+    private static final class WeakKey extends WeakReference<Clazz> implements Key {
+        private final int hash;
+
+        private WeakKey(
+                final Clazz clazz,
+                final ReferenceQueue<Clazz> queue
+        ) {
+            super(clazz, queue);
+            this.hash = System.identityHashCode(clazz);
+        }
+
+        @Override
+        public Clazz clazz() {
+            return get();
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (other == this) return true;
+            final Clazz clazz = get();
+            return clazz != null && other instanceof Key key && key.clazz() == clazz;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private record Lookup(Clazz clazz) implements Key {
+        @Override
+        public boolean equals(final Object other) {
+            return other instanceof Key key && key.clazz() == clazz;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(clazz);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.serezk4.core.lab.check;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Runs the CPU-bound comparison phase on a fixed pool of platform threads.
+ *
+ * <p>
+ * A batch of comparison tasks, typically one per (source class, target class) pair, is scored by at most
+ * {@code parallelism} workers. The workers share a single work queue, represented by a counter over the task
+ * list, so that long tree edit distance computations do not leave other workers idle. The score of task {@code i}
+ * is written to slot {@code i} of the result array, which makes the output independent of scheduling.
+ * </p>
+ *
+ * <p>
+ * Tree edit distance never blocks, so running it on virtual threads or the common {@code ForkJoinPool} only adds
+ * contention: the pool is sized to the number of available processors by default and is the only place the
+ * comparison phase runs on. The size can be set with the {@value #PARALLELISM_PROPERTY} system property, see
+ * {@link #fromSystemProperties()}.
+ * </p>
+ *
+ * <p>
+ * Tasks are never queued in the executor. A worker takes the next task only after it has finished the previous
+ * one, so at most {@code parallelism} tasks are in flight at any time, however many are scored. Since the worker
+ * threads live as long as the scheduler, scorers can keep reusable scratch memory, such as dynamic programming
+ * matrices, in a {@link ThreadLocal} or a pool without it growing with the number of tasks.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>{@code
+ * try (PairScheduler scheduler = PairScheduler.fromSystemProperties()) {
+ *     double[] similarities = scheduler.score(pairs, pair -> checker.detect(pair.source(), pair.target()));
+ * }
+ * }</pre>
+ *
+ * @see Checker
+ *
+ * @author serezk4
+ * @version 1.0
+ * @since 1.0
+ */
+public final class PairScheduler implements AutoCloseable {
+
+    /**
+     * System property holding the number of worker threads, the number of available processors if absent.
+     */
+    public static final String PARALLELISM_PROPERTY = "labguard.compute.threads";
+
+    private final int parallelism;
+    private final ExecutorService pool;
+
+    /**
+     * Creates a scheduler with the given number of worker threads.
+     *
+     * @param parallelism the number of platform threads scoring tasks concurrently (must be positive)
+     */
+    public PairScheduler(final int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        this.parallelism = parallelism;
+        this.pool = Executors.newFixedThreadPool(parallelism, Thread.ofPlatform()
+                .name("pair-scheduler-", 0)
+                .daemon(true)
+                .factory());
+    }
+
+    /**
+     * Creates a scheduler sized by the {@value #PARALLELISM_PROPERTY} system property.
+     *
+     * @return a scheduler with the configured number of worker threads, or one per available processor
+     */
+    public static PairScheduler fromSystemProperties() {
+        return new PairScheduler(Integer.getInteger(PARALLELISM_PROPERTY, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Scores every task and waits for all of them to complete.
+     *
+     * @param tasks  the tasks to score
+     * @param scorer computes the score of a task, called concurrently from the worker threads
+     * @param <T>    type of task
+     * @return the scores, at the same positions as the tasks they belong to
+     * @throws IllegalStateException if the scorer failed for a task or the calling thread was interrupted
+     */
+    public <T> double[] score(
+            final List<T> tasks,
+            final ToDoubleFunction<? super T> scorer
+    ) {
+        final double[] scores = new double[tasks.size()];
+        final AtomicInteger next = new AtomicInteger();
+
+        final List<Future<?>> workers = new ArrayList<>();
+        for (int worker = 0; worker < Math.min(parallelism, tasks.size()); worker++) {
+            workers.add(pool.submit(() -> {
+                for (int task = next.getAndIncrement(); task < tasks.size(); task = next.getAndIncrement()) {
+                    scores[task] = scorer.applyAsDouble(tasks.get(task));
+                }
+            }));
+        }
+
+        try {
+            for (Future<?> worker : workers) worker.get();
+        } catch (InterruptedException e) {
+            workers.forEach(worker -> worker.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while scoring pairs", e);
+        } catch (ExecutionException e) {
+            workers.forEach(worker -> worker.cancel(true));
+            throw new IllegalStateException("Error scoring pairs: " + e.getCause().getMessage(), e.getCause());
+        }
+        return scores;
+    }
+
+    /**
+     * @return the number of worker threads
+     */
+    public int parallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Stops the worker threads. Tasks that are already running are completed.
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+}
@@ -2,14 +2,18 @@ package com.serezk4.core.lab.check.apted;
 
 import com.serezk4.core.apted.costmodel.WeightedCostModel;
 import com.serezk4.core.apted.distance.APTED;
+import com.serezk4.core.apted.distance.BoundedTED;
+import com.serezk4.core.apted.node.FlatTree;
 import com.serezk4.core.apted.node.Node;
+import com.serezk4.core.apted.node.NodeIndexer;
 import com.serezk4.core.apted.node.StringNodeData;
 import com.serezk4.core.apted.util.NodeUtil;
 import com.serezk4.core.lab.check.Checker;
+import com.serezk4.core.lab.check.ClazzCache;
+import com.serezk4.core.lab.check.filter.LowerBoundFilter;
+import com.serezk4.core.lab.check.filter.TreeProfile;
 import com.serezk4.core.lab.model.Clazz;
 
-import java.util.stream.Stream;
-
 /**
  * Implementation of the {@link Checker} interface that uses the APTED (All Path Tree Edit Distance) algorithm
  * to calculate the similarity between two Java classes represented as tree structures.
@@ -31,6 +35,11 @@ import java.util.stream.Stream;
  * {@link APTED} algorithm with a customizable {@link WeightedCostModel}.
  * </p>
  *
+ * <p>
+ * The tree of a class is flattened, profiled and indexed once per checker, see {@link ClazzCache}, and reused by
+ * every comparison the class takes part in. A checker is meant to be shared by all comparisons of a run.
+ * </p>
+ *
  * <p><b>Usage:</b></p>
  * <pre>{@code
  * Checker checker = new AptedCheck();
@@ -49,12 +58,32 @@ import java.util.stream.Stream;
  * @since 1.0
  */
 public class AptedCheck implements Checker {
+    private static final String VERSION = "apted/weighted-cost-model/2";
+    private static final WeightedCostModel COST_MODEL = new WeightedCostModel();
+
+    static {
+        WeightedCostModel.preload(NodeUtil.grammarLabels());
+    }
+
+    /**
+     * Lower bound on every {@link WeightedCostModel} operation that changes a tree: deletions and insertions cost
+     * at least the minimum base cost, renames of different labels at least twice that.
+     */
+    public static final float MIN_OPERATION_COST = 1.0f;
+
+    /**
+     * Engines with their reusable scratch memory, leased for the duration of one comparison.
+     */
+    private static final AptedEnginePool ENGINES = AptedEnginePool.fromSystemProperties(COST_MODEL);
+
+    private final LowerBoundFilter filter = new LowerBoundFilter(MIN_OPERATION_COST);
+    private final ClazzCache<ClazzTree> trees = new ClazzCache<>(ClazzTree::of);
 
     /**
      * Detects the similarity between two Java classes using the APTED algorithm.
      *
      * <p>
-     * This method converts the {@link Clazz} objects into tree representations using {@link NodeUtil}.
+     * This method uses the comparison-ready trees of the {@link Clazz} objects, indexed once per class.
      * It then computes the edit distance between the two trees and normalizes the score based on the
      * size of the larger tree.
      * </p>
@@ -72,33 +101,112 @@ public class AptedCheck implements Checker {
             final Clazz source,
             final Clazz target
     ) {
-        final Node<StringNodeData> node1 = NodeUtil.parseTreeToNode(source.tree());
-        final Node<StringNodeData> node2 = NodeUtil.parseTreeToNode(target.tree());
+        final NodeIndexer<StringNodeData, WeightedCostModel> indexer1 = trees.get(source).indexer();
+        final NodeIndexer<StringNodeData, WeightedCostModel> indexer2 = trees.get(target).indexer();
 
-        final APTED<WeightedCostModel, StringNodeData> apted = new APTED<>(new WeightedCostModel());
+        final float distance;
+        try (AptedEnginePool.Lease lease = ENGINES.lease()) {
+            distance = lease.engine().computeEditDistance(indexer1, indexer2);
+        }
 
-        return 1.0 - (apted.computeEditDistance(node1, node2) / Math.max(
-                calculateSubtreeSize(node1),
-                calculateSubtreeSize(node2)
+        return 1.0 - (distance / Math.max(
+                indexer1.getSize(),
+                indexer2.getSize()
         ));
     }
 
     /**
-     * Calculates the size of a subtree rooted at the given node.
+     * Detects the similarity between two Java classes, computing the exact edit distance only for pairs that can
+     * exceed the threshold.
      *
      * <p>
-     * The size of a subtree is defined as the total number of nodes it contains,
-     * including the root node and all of its descendants. This method is implemented
-     * recursively and optimized for parallel computation using {@link Stream#parallel()} ()}.
+     * The threshold is converted into a maximum edit cost of {@code (1 - threshold) * maxSubtreeSize}, and
+     * {@link BoundedTED} rejects pairs whose cheap lower bounds already exceed it. Rejected pairs score
+     * {@code 0.0}.
      * </p>
      *
-     * @param node the root node of the subtree
-     * @return the size of the subtree as an integer; returns 0 if the node is {@code null}
+     * @param source    the source {@link Clazz} to be compared
+     * @param target    the target {@link Clazz} to compare against
+     * @param threshold the similarity above which the exact score is required
+     * @return the exact similarity score if it exceeds {@code threshold}, {@code 0.0} or the exact score otherwise
      */
-    private static int calculateSubtreeSize(final Node<StringNodeData> node) {
-        if (node == null) return 0;
-        return 1 + node.getChildren().parallelStream()
-                .mapToInt(AptedCheck::calculateSubtreeSize)
-                .sum();
+    @Override
+    public double detect(
+            final Clazz source,
+            final Clazz target,
+            final double threshold
+    ) {
+        final NodeIndexer<StringNodeData, WeightedCostModel> indexer1 = trees.get(source).indexer();
+        final NodeIndexer<StringNodeData, WeightedCostModel> indexer2 = trees.get(target).indexer();
+        final int maxSize = Math.max(indexer1.getSize(), indexer2.getSize());
+
+        final float distance;
+        try (AptedEnginePool.Lease lease = ENGINES.lease()) {
+            distance = lease.engine().computeEditDistance(indexer1, indexer2, (float) ((1.0 - threshold) * maxSize));
+        }
+
+        return distance == BoundedTED.ABOVE_BOUND ? 0.0 : 1.0 - distance / maxSize;
+    }
+
+    /**
+     * Rules out pairs using the size, leaf, label and degree bounds of {@link LowerBoundFilter}, without building
+     * the {@link NodeIndexer}s of the classes.
+     *
+     * @param source    the source {@link Clazz} to be compared
+     * @param target    the target {@link Clazz} to compare against
+     * @param threshold the similarity threshold
+     * @return {@code false} if the similarity is proven not to exceed {@code threshold}, {@code true} otherwise
+     */
+    @Override
+    public boolean canExceed(
+            final Clazz source,
+            final Clazz target,
+            final double threshold
+    ) {
+        return filter.canExceed(trees.get(source).profile(), trees.get(target).profile(), threshold);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String version() {
+        return VERSION;
+    }
+
+    /**
+     * The flattened tree of a class with its {@link TreeProfile} and, once the class passes the lower bounds, its
+     * {@link NodeIndexer} for the shared cost model.
+     *
+     * <p>
+     * Profiles are needed for every pair and are computed with the tree, indexers only for pairs that are compared
+     * and are built on first use. Both are immutable, so two threads indexing a class concurrently may both build an
+     * indexer and either is kept.
+     * </p>
+     */
+    private static final class ClazzTree {
+        private final FlatTree<StringNodeData> tree;
+        private final TreeProfile profile;
+        private volatile NodeIndexer<StringNodeData, WeightedCostModel> indexer;
+
+        private ClazzTree(final FlatTree<StringNodeData> tree) {
+            this.tree = tree;
+            this.profile = TreeProfile.of(tree);
+        }
+
+        private static ClazzTree of(final Clazz clazz) {
+            final Node<StringNodeData> root = NodeUtil.parseTreeToNode(clazz.tree());
+            return new ClazzTree(root != null ? FlatTree.of(root) : null);
+        }
+
+        private TreeProfile profile() {
+            return profile;
+        }
+
+        private NodeIndexer<StringNodeData, WeightedCostModel> indexer() {
+            NodeIndexer<StringNodeData, WeightedCostModel> result = indexer;
+            if (result == null) indexer = result = new NodeIndexer<>(tree, COST_MODEL);
+            return result;
+        }
     }
 }
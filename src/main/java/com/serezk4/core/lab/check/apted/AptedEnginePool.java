@@ -0,0 +1,138 @@
+package com.serezk4.core.lab.check.apted;
+
+import com.serezk4.core.apted.costmodel.WeightedCostModel;
+import com.serezk4.core.apted.distance.BoundedTED;
+import com.serezk4.core.apted.node.StringNodeData;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of reusable tree edit distance engines, shared by all comparisons of the process.
+ *
+ * <p>
+ * An engine is a {@link BoundedTED} with its {@link com.serezk4.core.apted.distance.APTED} instance and their
+ * scratch memory, bound to the shared {@link WeightedCostModel}. Building one per pair would allocate all dynamic
+ * programming buffers for every comparison; a pooled engine keeps them between comparisons and only grows them
+ * when a larger pair arrives, so the fixed cost of a pair is only what the algorithm itself needs.
+ * </p>
+ *
+ * <p>
+ * Engines are handed out as {@link Lease}s: a lease gives exclusive use of one engine until it is closed, and
+ * closing it returns the engine to the pool. Unlike a {@link ThreadLocal}, the pool does not tie engines to threads,
+ * so the number of engines follows the number of concurrent comparisons rather than the number of threads that
+ * ever compared a pair, and virtual threads do not each build their own. Idle engines are kept up to a maximum
+ * (the {@value #MAX_IDLE_PROPERTY} system property, the number of available processors by default); engines
+ * returned beyond it are dropped together with their memory. Leasing and returning never block.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>{@code
+ * try (AptedEnginePool.Lease lease = pool.lease()) {
+ *     float distance = lease.engine().computeEditDistance(indexer1, indexer2, maxCost);
+ * }
+ * }</pre>
+ *
+ * @see BoundedTED
+ * @see AptedCheck
+ *
+ * @author serezk4
+ * @version 1.0
+ * @since 1.0
+ */
+public final class AptedEnginePool {
+    /**
+     * System property holding the maximum number of idle engines kept by the pool, the number of available
+     * processors if absent.
+     */
+    public static final String MAX_IDLE_PROPERTY = "labguard.apted.engines";
+
+    private final WeightedCostModel costModel;
+    private final int maxIdle;
+    private final ConcurrentLinkedDeque<BoundedTED<WeightedCostModel, StringNodeData>> idle =
+            new ConcurrentLinkedDeque<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    /**
+     * Exclusive use of one engine, returned to the pool when the lease is closed.
+     */
+    public final class Lease implements AutoCloseable {
+        private BoundedTED<WeightedCostModel, StringNodeData> engine;
+
+        private Lease(final BoundedTED<WeightedCostModel, StringNodeData> engine) {
+            this.engine = engine;
+        }
+
+        /**
+         * @return the leased engine, not to be used after the lease is closed
+         * @throws IllegalStateException if the lease has been closed
+         */
+        public BoundedTED<WeightedCostModel, StringNodeData> engine() {
+            if (engine == null) throw new IllegalStateException("Engine lease has been closed");
+            return engine;
+        }
+
+        /**
+         * Returns the engine to the pool. Closing a lease again has no effect.
+         */
+        @Override
+        public void close() {
+            if (engine == null) return;
+            release(engine);
+            engine = null;
+        }
+    }
+
+    /**
+     * Creates an empty pool.
+     *
+     * @param costModel the cost model of all engines, equal to the one the compared indexers were built with
+     * @param maxIdle   the maximum number of idle engines kept for reuse (must not be negative)
+     */
+    public AptedEnginePool(
+            final WeightedCostModel costModel,
+            final int maxIdle
+    ) {
+        if (maxIdle < 0) throw new IllegalArgumentException("Maximum idle engines must not be negative: " + maxIdle);
+        this.costModel = costModel;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Creates an empty pool keeping the number of idle engines configured by the {@value #MAX_IDLE_PROPERTY}
+     * system property.
+     *
+     * @param costModel the cost model of all engines
+     * @return the pool
+     */
+    public static AptedEnginePool fromSystemProperties(final WeightedCostModel costModel) {
+        return new AptedEnginePool(
+                costModel,
+                Integer.getInteger(MAX_IDLE_PROPERTY, Runtime.getRuntime().availableProcessors())
+        );
+    }
+
+    /**
+     * Takes an idle engine, building a new one if none is idle.
+     *
+     * @return the lease of the engine, to be closed when the comparison is done
+     */
+    public Lease lease() {
+        final BoundedTED<WeightedCostModel, StringNodeData> engine = idle.pollFirst();
+        if (engine == null) return new Lease(new BoundedTED<>(costModel));
+
+        idleCount.decrementAndGet();
+        return new Lease(engine);
+    }
+
+    /**
+     * Puts an engine back to be leased next, while its buffers are still likely to be in the processor caches.
+     */
+    private void release(final BoundedTED<WeightedCostModel, StringNodeData> engine) {
+        if (idleCount.incrementAndGet() > maxIdle) {
+            idleCount.decrementAndGet();
+            return;
+        }
+        idle.offerFirst(engine);
+    }
+}
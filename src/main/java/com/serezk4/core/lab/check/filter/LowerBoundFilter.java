@@ -0,0 +1,81 @@
+package com.serezk4.core.lab.check.filter;
+
+/**
+ * Cascade of cheap tree edit distance lower bounds that discards pairs which cannot reach a similarity threshold.
+ *
+ * <p>
+ * Similarity is {@code 1 - distance / max(n1, n2)}, so a pair can only exceed threshold {@code t} if its distance
+ * is below {@code (1 - t) * max(n1, n2)}. Every edit operation that changes a tree costs at least
+ * {@code minOperationCost}, which gives the following bounds, checked from cheapest to most expensive:
+ * <ol>
+ *     <li><b>Node count</b>: each deletion or insertion changes the node count by one.</li>
+ *     <li><b>Leaf count</b>: each deletion or insertion changes the leaf count by at most one.</li>
+ *     <li><b>Label histogram</b>: each operation changes the L1 distance of the label histograms by at most two.</li>
+ *     <li><b>Degree histogram</b>: deleting or inserting a node changes its own degree entry and the degree of its
+ *     parent, so the L1 distance of the degree histograms changes by at most three.</li>
+ * </ol>
+ * The bounds are computed from the {@link TreeProfile}s of the trees, which the caller computes once per class and
+ * reuses for every pair the class takes part in.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>{@code
+ * LowerBoundFilter filter = new LowerBoundFilter(1.0f);
+ * if (filter.canExceed(TreeProfile.of(source), TreeProfile.of(target), 0.61)) {
+ *     distance = apted.computeEditDistance(source, target);
+ * }
+ * }</pre>
+ *
+ * @see TreeProfile
+ * @see com.serezk4.core.apted.distance.BoundedTED
+ *
+ * @author serezk4
+ * @version 1.0
+ * @since 1.0
+ */
+public final class LowerBoundFilter {
+    private final float minOperationCost;
+
+    /**
+     * Creates a filter for a cost model.
+     *
+     * @param minOperationCost a lower bound on the cost of every deletion, insertion and rename of nodes with
+     *                         different labels under the cost model the distance is computed with
+     */
+    public LowerBoundFilter(final float minOperationCost) {
+        this.minOperationCost = minOperationCost;
+    }
+
+    /**
+     * Checks whether the similarity of two trees can exceed the threshold.
+     *
+     * @param profile1  the profile of the source tree
+     * @param profile2  the profile of the target tree
+     * @param threshold the similarity threshold
+     * @return {@code false} if the similarity is proven not to exceed the threshold, {@code true} otherwise
+     */
+    public boolean canExceed(
+            final TreeProfile profile1,
+            final TreeProfile profile2,
+            final double threshold
+    ) {
+        final double maxCost = (1.0 - threshold) * Math.max(profile1.nodeCount(), profile2.nodeCount());
+
+        if (exceeds(Math.abs(profile1.nodeCount() - profile2.nodeCount()), 1, maxCost)) return false;
+        if (exceeds(Math.abs(profile1.leafCount() - profile2.leafCount()), 1, maxCost)) return false;
+        if (exceeds(profile1.labelDistance(profile2), 2, maxCost)) return false;
+        return !exceeds(profile1.degreeDistance(profile2), 3, maxCost);
+    }
+
+    /**
+     * Checks a bound of the form {@code ceil(difference / changePerOperation) * minOperationCost}.
+     */
+    private boolean exceeds(
+            final int difference,
+            final int changePerOperation,
+            final double maxCost
+    ) {
+        final int operations = (difference + changePerOperation - 1) / changePerOperation;
+        return operations * (double) minOperationCost > maxCost;
+    }
+}
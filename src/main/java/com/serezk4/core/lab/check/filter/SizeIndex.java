@@ -0,0 +1,127 @@
+package com.serezk4.core.lab.check.filter;
+
+import com.serezk4.core.apted.node.Node;
+import com.serezk4.core.apted.util.NodeUtil;
+import com.serezk4.core.lab.model.Clazz;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Classes of a lab sorted by tree node count, answering which of them can reach a similarity threshold with a
+ * given class.
+ *
+ * <p>
+ * Similarity is {@code 1 - distance / max(n1, n2)}, and every deletion or insertion changes the node count by one
+ * at a cost of at least {@code minOperationCost}. A pair can therefore only exceed threshold {@code t} if
+ * {@code |n1 - n2| * minOperationCost < (1 - t) * max(n1, n2)}, that is if {@code n2} lies in
+ * {@code (k * n1, n1 / k)} for {@code k = 1 - (1 - t) / minOperationCost}, which is {@code (0.61 * n1, n1 / 0.61)}
+ * for the default threshold and unit costs. This is the node count bound of {@link LowerBoundFilter}, so the index
+ * never excludes a pair the filter would pass, and the range is found with two binary searches: a query costs
+ * {@code O(log n + k)} for {@code k} candidates, and nothing is computed from the source text.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>{@code
+ * SizeIndex index = new SizeIndex(targetLab.clazzes(), 1.0f);
+ * for (Clazz target : index.candidates(clazz, 0.61)) compare(clazz, target);
+ * }</pre>
+ *
+ * @see LowerBoundFilter
+ *
+ * @author serezk4
+ * @version 1.0
+ * @since 1.0
+ */
+public final class SizeIndex {
+    private final float minOperationCost;
+    private final List<Clazz> clazzes;
+    private final int[] nodeCounts;
+
+    /**
+     * Builds the index of a set of classes.
+     *
+     * @param clazzes          the classes to index
+     * @param minOperationCost a lower bound on the cost of every deletion and insertion under the cost model the
+     *                         distance is computed with
+     */
+    public SizeIndex(
+            final List<Clazz> clazzes,
+            final float minOperationCost
+    ) {
+        this.minOperationCost = minOperationCost;
+        this.clazzes = clazzes.stream()
+                .sorted(Comparator.comparingInt(SizeIndex::nodeCount))
+                .toList();
+        this.nodeCounts = this.clazzes.stream()
+                .mapToInt(SizeIndex::nodeCount)
+                .toArray();
+    }
+
+    /**
+     * Returns the indexed classes whose node count allows a similarity above the threshold with a class.
+     *
+     * @param clazz     the class to find candidates for
+     * @param threshold the similarity threshold
+     * @return the candidate classes in ascending node count, a view backed by the index
+     */
+    public List<Clazz> candidates(
+            final Clazz clazz,
+            final double threshold
+    ) {
+        return candidates(nodeCount(clazz), threshold);
+    }
+
+    /**
+     * Returns the indexed classes whose node count allows a similarity above the threshold with a class of the
+     * given node count, for callers that already know the node count of the class.
+     *
+     * @param nodeCount the node count of the class to find candidates for, see {@link #nodeCount(Clazz)}
+     * @param threshold the similarity threshold
+     * @return the candidate classes in ascending node count, a view backed by the index
+     */
+    public List<Clazz> candidates(
+            final int nodeCount,
+            final double threshold
+    ) {
+        final double k = 1.0 - (1.0 - threshold) / minOperationCost;
+        if (k <= 0) return clazzes;
+
+        // Bounds are widened to whole node counts, so rounding never excludes a pair on the boundary
+        final int from = lowerBound((int) Math.floor(k * nodeCount));
+        final int to = lowerBound((int) Math.min(Integer.MAX_VALUE - 1L, (long) Math.ceil(nodeCount / k)) + 1);
+        return clazzes.subList(from, to);
+    }
+
+    /**
+     * @return the number of indexed classes
+     */
+    public int size() {
+        return clazzes.size();
+    }
+
+    /**
+     * @return the position of the first class with at least {@code nodeCount} nodes
+     */
+    private int lowerBound(final int nodeCount) {
+        int low = 0;
+        int high = nodeCounts.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (nodeCounts[middle] < nodeCount) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Counts the nodes of the tree of a class, in time linear in the tree size.
+     *
+     * @param clazz the class
+     * @return the node count of the class tree, {@code 0} if the class has no tree
+     */
+    public static int nodeCount(final Clazz clazz) {
+        final Node<?> root = NodeUtil.parseTreeToNode(clazz.tree());
+        return root != null ? root.getNodeCount() : 0;
+    }
+}
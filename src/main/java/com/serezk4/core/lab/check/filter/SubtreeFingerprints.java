@@ -0,0 +1,96 @@
+package com.serezk4.core.lab.check.filter;
+
+import com.serezk4.core.apted.node.FlatTree;
+import com.serezk4.core.apted.node.StringNodeData;
+
+import java.util.Arrays;
+
+/**
+ * Computes Merkle fingerprints of the subtrees of a class tree.
+ *
+ * <p>
+ * The fingerprint of a node combines the hash of its label with the fingerprints of its children in order, so two
+ * subtrees have the same fingerprint exactly when they have the same shape and labels, up to hash collisions.
+ * Labels are parse rule names and do not include identifiers or literals, so renaming variables or methods does not
+ * change any fingerprint, and reordering members only changes the fingerprints of their common ancestors. Only
+ * subtrees of at least {@code minSize} nodes are kept, which leaves out the small fragments every class shares.
+ * </p>
+ *
+ * <p>
+ * Fingerprints are computed from label strings rather than from the process-wide label ids, so they are stable
+ * across runs and can be persisted.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>{@code
+ * FlatTree<StringNodeData> tree = FlatTree.of(NodeUtil.parseTreeToNode(clazz.tree()));
+ * long[] fingerprints = SubtreeFingerprints.of(tree, SubtreeFingerprints.DEFAULT_MIN_SIZE);
+ * }</pre>
+ *
+ * @see com.serezk4.core.lab.storage.FingerprintIndex
+ *
+ * @author serezk4
+ * @version 1.0
+ * @since 1.0
+ */
+public final class SubtreeFingerprints {
+    /**
+     * Default minimum number of nodes of a fingerprinted subtree, about the size of a single simple statement.
+     */
+    public static final int DEFAULT_MIN_SIZE = 16;
+
+    private static final long[] NONE = new long[0];
+
+    private SubtreeFingerprints() {
+    }
+
+    /**
+     * Computes the fingerprints of all subtrees of at least {@code minSize} nodes.
+     *
+     * @param tree    the tree to fingerprint, or {@code null} for a class without a tree
+     * @param minSize the minimum number of nodes of a fingerprinted subtree
+     * @return the distinct fingerprints, ascending
+     */
+    public static long[] of(
+            final FlatTree<StringNodeData> tree,
+            final int minSize
+    ) {
+        if (tree == null || tree.size() < minSize) return NONE;
+
+        final int size = tree.size();
+        final long[] hashes = new long[size];
+        final long[] fingerprints = new long[size];
+        int count = 0;
+
+        // Children follow their parent in preorder, so a reverse preorder pass sees all children first
+        for (int preorder = size - 1; preorder >= 0; preorder--) {
+            long hash = mix(tree.node(preorder).getNodeData().getLabel().hashCode());
+            for (int child = 0; child < tree.childCount(preorder); child++) {
+                hash = hash * 0x9E3779B97F4A7C15L + hashes[tree.child(preorder, child)];
+            }
+            hashes[preorder] = mix(hash);
+            if (tree.subtreeSize(preorder) >= minSize) fingerprints[count++] = hashes[preorder];
+        }
+
+        final long[] sorted = Arrays.copyOf(fingerprints, count);
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) sorted[distinct++] = sorted[i];
+        }
+        return Arrays.copyOf(sorted, distinct);
+    }
+
+    /**
+     * Finalizer of MurmurHash3, spreading every input bit over the whole hash.
+     */
+    private static long mix(final long value) {
+        long hash = value;
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB93FE1A85EC3L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
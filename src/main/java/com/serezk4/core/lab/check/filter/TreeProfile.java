@@ -0,0 +1,113 @@
+package com.serezk4.core.lab.check.filter;
+
+import com.serezk4.core.apted.node.FlatTree;
+
+import java.util.Arrays;
+
+/**
+ * Compact summary of a class tree used to bound the tree edit distance of a pair without comparing the trees.
+ *
+ * <p>
+ * A profile holds the node count, the leaf count, the multiset of node labels and the multiset of node degrees
+ * (number of children). The multisets are stored as histograms so that the L1 distance of two profiles is a
+ * linear merge. Profiles are computed once per class and are immutable.
+ * </p>
+ *
+ * @param nodeCount      number of nodes in the tree
+ * @param leafCount      number of leaves in the tree
+ * @param labelIds       distinct label ids of the tree, ascending, see
+ *                       {@link com.serezk4.core.apted.node.LabelDictionary}
+ * @param labelCounts    number of nodes with the label at the same position in {@code labelIds}
+ * @param degreeCounts   number of nodes with {@code i} children at position {@code i}
+ *
+ * @see LowerBoundFilter
+ *
+ * @author serezk4
+ * @version 1.0
+ * @since 1.0
+ */
+public record TreeProfile(
+        int nodeCount,
+        int leafCount,
+        int[] labelIds,
+        int[] labelCounts,
+        int[] degreeCounts
+) {
+    private static final TreeProfile EMPTY = new TreeProfile(0, 0, new int[0], new int[0], new int[0]);
+
+    /**
+     * Computes the profile of a tree.
+     *
+     * @param tree the tree to summarize, or {@code null} for a class without a tree
+     * @return the profile of the tree
+     */
+    public static TreeProfile of(final FlatTree<?> tree) {
+        if (tree == null) return EMPTY;
+
+        final int size = tree.size();
+        final int[] labels = new int[size];
+        int maxDegree = 0;
+        int leafCount = 0;
+        for (int i = 0; i < size; i++) {
+            labels[i] = tree.label(i);
+            maxDegree = Math.max(maxDegree, tree.childCount(i));
+            if (tree.childCount(i) == 0) leafCount++;
+        }
+
+        final int[] degreeCounts = new int[maxDegree + 1];
+        for (int i = 0; i < size; i++) degreeCounts[tree.childCount(i)]++;
+
+        Arrays.sort(labels);
+        int distinct = 0;
+        for (int i = 0; i < size; i++) if (i == 0 || labels[i] != labels[i - 1]) distinct++;
+
+        final int[] labelIds = new int[distinct];
+        final int[] labelCounts = new int[distinct];
+        for (int i = 0, slot = -1; i < size; i++) {
+            if (i == 0 || labels[i] != labels[i - 1]) labelIds[++slot] = labels[i];
+            labelCounts[slot]++;
+        }
+
+        return new TreeProfile(size, leafCount, labelIds, labelCounts, degreeCounts);
+    }
+
+    /**
+     * Returns the L1 distance between the label histograms of two profiles.
+     *
+     * @param other the profile to compare with
+     * @return the number of label occurrences not shared by the two trees
+     */
+    public int labelDistance(final TreeProfile other) {
+        int distance = 0;
+        int i = 0;
+        int j = 0;
+        while (i < labelIds.length && j < other.labelIds.length) {
+            if (labelIds[i] == other.labelIds[j]) {
+                distance += Math.abs(labelCounts[i++] - other.labelCounts[j++]);
+            } else if (labelIds[i] < other.labelIds[j]) {
+                distance += labelCounts[i++];
+            } else {
+                distance += other.labelCounts[j++];
+            }
+        }
+        while (i < labelIds.length) distance += labelCounts[i++];
+        while (j < other.labelIds.length) distance += other.labelCounts[j++];
+        return distance;
+    }
+
+    /**
+     * Returns the L1 distance between the degree histograms of two profiles.
+     *
+     * @param other the profile to compare with
+     * @return the number of degree occurrences not shared by the two trees
+     */
+    public int degreeDistance(final TreeProfile other) {
+        int distance = 0;
+        for (int degree = 0; degree < Math.max(degreeCounts.length, other.degreeCounts.length); degree++) {
+            final int count = degree < degreeCounts.length ? degreeCounts[degree] : 0;
+            final int otherCount = degree < other.degreeCounts.length ? other.degreeCounts[degree] : 0;
+            distance += Math.abs(count - otherCount);
+        }
+        return distance;
+    }
+}
@@ -0,0 +1,108 @@
+package com.serezk4.core.lab.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of durations in nanoseconds with a bounded relative error.
+ *
+ * <p>
+ * Values are counted in log-linear buckets: every power of two is split into {@value #SUB_BUCKETS} equal buckets,
+ * so a percentile is reported with a relative error of at most {@code 1 / SUB_BUCKETS}, whatever the magnitude of
+ * the values. The histogram has a fixed size of a few kilobytes, and {@link #record(long)} is a handful of atomic
+ * increments, so it can be called from every comparison on every worker thread.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>{@code
+ * LatencyHistogram histogram = new LatencyHistogram();
+ * histogram.record(System.nanoTime() - start);
+ * long p99 = histogram.percentile(0.99);
+ * }</pre>
+ *
+ * @see RunMetrics
+ *
+ * @author serezk4
+ * @version 1.0
+ * @since 1.0
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos the duration in nanoseconds, negative values are counted as {@code 0}
+     */
+    public void record(final long nanos) {
+        final long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucket(value));
+        count.increment();
+        sum.add(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * @return the number of recorded durations
+     */
+    public long count() {
+        return count.sum();
+    }
+
+    /**
+     * @return the mean of the recorded durations in nanoseconds, {@code 0} if none has been recorded
+     */
+    public double mean() {
+        final long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * @return the longest recorded duration in nanoseconds
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * Returns an upper bound of a percentile of the recorded durations.
+     *
+     * @param percentile the percentile, from {@code 0} to {@code 1}
+     * @return the upper bound of the bucket holding the percentile in nanoseconds, never above {@link #max()}
+     */
+    public long percentile(final double percentile) {
+        final long n = count.sum();
+        if (n == 0) return 0;
+
+        final long rank = Math.max(1, (long) Math.ceil(percentile * n));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank) return Math.min(upperBound(bucket), max.get());
+        }
+        return max.get();
+    }
+
+    private static int bucket(final long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        final int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBound(final int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        final int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        final long subBucket = bucket % SUB_BUCKETS;
+        final long upper = ((SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+        return upper < 0 ? Long.MAX_VALUE : upper;
+    }
+}
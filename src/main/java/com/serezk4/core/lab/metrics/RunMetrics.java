@@ -0,0 +1,241 @@
+package com.serezk4.core.lab.metrics;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Collects the timings, counters and latency histograms of a single run and exports them as JSON.
+ *
+ * <p>
+ * A run is described by three kinds of metrics:
+ * <ul>
+ *     <li><b>Stages</b>: total time and number of calls per named stage, such as parsing or loading the corpus.
+ *     Stages recorded from several threads at once, such as parsing of individual files, report the sum of the
+ *     time spent by all threads, which can exceed the wall-clock time of the run.</li>
+ *     <li><b>Counters</b>: named event counts, such as considered pairs or cache hits.</li>
+ *     <li><b>Latency histograms</b>: the time of individual tree edit distance computations, one
+ *     {@link LatencyHistogram} per power-of-two size class of the larger tree of the pair.</li>
+ * </ul>
+ * All methods are thread-safe. Recording to a stage or counter that already exists takes no lock, so they can be
+ * called for every pair on the comparison workers; only the first recording of a name registers it, in the order
+ * stages and counters are exported.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>{@code
+ * RunMetrics metrics = new RunMetrics();
+ * Lab lab = metrics.time("load.target", () -> storage.load(isu, labNumber, path));
+ * metrics.increment("pairs.considered");
+ * metrics.write(Path.of("metrics.json"));
+ * }</pre>
+ *
+ * @see LatencyHistogram
+ *
+ * @author serezk4
+ * @version 1.0
+ * @since 1.0
+ */
+public final class RunMetrics {
+    /**
+     * System property holding the file the metrics of a run are written to, {@code labguard-metrics.json} in the
+     * working directory if absent.
+     */
+    public static final String FILE_PROPERTY = "labguard.metrics.file";
+
+    private static final String DEFAULT_FILE = "labguard-metrics.json";
+
+    private final Gson gson = new GsonBuilder()
+            .setPrettyPrinting()
+            .disableHtmlEscaping()
+            .create();
+
+    private final Map<String, Stage> stages = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Queue<String> stageOrder = new ConcurrentLinkedQueue<>();
+    private final Queue<String> counterOrder = new ConcurrentLinkedQueue<>();
+    private final Map<Integer, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+
+    /**
+     * Accumulated time of a stage.
+     */
+    private static final class Stage {
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder calls = new LongAdder();
+    }
+
+    /**
+     * Adds the time of one call of a stage.
+     *
+     * @param stage the name of the stage
+     * @param nanos the time spent in the stage in nanoseconds
+     */
+    public void recordStage(
+            final String stage,
+            final long nanos
+    ) {
+        final Stage accumulated = stages.computeIfAbsent(stage, name -> {
+            stageOrder.add(name);
+            return new Stage();
+        });
+        accumulated.nanos.add(nanos);
+        accumulated.calls.increment();
+    }
+
+    /**
+     * Runs an action and adds its time to a stage.
+     *
+     * @param stage  the name of the stage
+     * @param action the action to run
+     * @param <T>    type of result
+     * @return the result of the action
+     */
+    public <T> T time(
+            final String stage,
+            final Supplier<T> action
+    ) {
+        final long start = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            recordStage(stage, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Increments a counter by one.
+     *
+     * @param counter the name of the counter
+     */
+    public void increment(final String counter) {
+        add(counter, 1);
+    }
+
+    /**
+     * Adds to a counter.
+     *
+     * @param counter the name of the counter
+     * @param delta   the value to add
+     */
+    public void add(
+            final String counter,
+            final long delta
+    ) {
+        counters.computeIfAbsent(counter, name -> {
+            counterOrder.add(name);
+            return new LongAdder();
+        }).add(delta);
+    }
+
+    /**
+     * Records the time of one tree edit distance computation.
+     *
+     * @param treeSize the number of nodes of the larger tree of the pair
+     * @param nanos    the time of the computation in nanoseconds
+     */
+    public void recordLatency(
+            final int treeSize,
+            final long nanos
+    ) {
+        latencies.computeIfAbsent(sizeClass(treeSize), size -> new LatencyHistogram()).record(nanos);
+    }
+
+    /**
+     * Returns the current value of a counter.
+     *
+     * @param counter the name of the counter
+     * @return the value of the counter, {@code 0} if it has never been recorded
+     */
+    public long counter(final String counter) {
+        final LongAdder value = counters.get(counter);
+        return value != null ? value.sum() : 0;
+    }
+
+    /**
+     * Renders all metrics recorded so far as JSON.
+     *
+     * <p>
+     * Stage times are in milliseconds, latencies in microseconds. Histograms are keyed by the upper bound of
+     * their size class, as in {@code "nodes<=512"}.
+     * </p>
+     *
+     * @return the metrics as a JSON object with the {@code stages}, {@code counters} and {@code aptedLatency} keys
+     */
+    public String toJson() {
+        final Map<String, Object> stageValues = new LinkedHashMap<>();
+        for (String name : stageOrder) {
+            final Stage stage = stages.get(name);
+            if (stage == null) continue; // registered concurrently, not published yet
+            final Map<String, Object> values = new LinkedHashMap<>();
+            values.put("millis", stage.nanos.sum() / 1e6);
+            values.put("calls", stage.calls.sum());
+            stageValues.put(name, values);
+        }
+
+        final Map<String, Long> counterValues = new LinkedHashMap<>();
+        for (String name : counterOrder) {
+            final LongAdder value = counters.get(name);
+            if (value != null) counterValues.put(name, value.sum());
+        }
+
+        final Map<String, Object> latencyValues = new LinkedHashMap<>();
+        new TreeMap<>(latencies).forEach((size, histogram) -> {
+            final Map<String, Object> values = new LinkedHashMap<>();
+            values.put("count", histogram.count());
+            values.put("meanMicros", histogram.mean() / 1e3);
+            values.put("p50Micros", histogram.percentile(0.50) / 1e3);
+            values.put("p90Micros", histogram.percentile(0.90) / 1e3);
+            values.put("p99Micros", histogram.percentile(0.99) / 1e3);
+            values.put("maxMicros", histogram.max() / 1e3);
+            latencyValues.put("nodes<=" + size, values);
+        });
+
+        final Map<String, Object> json = new LinkedHashMap<>();
+        json.put("stages", stageValues);
+        json.put("counters", counterValues);
+        json.put("aptedLatency", latencyValues);
+        return gson.toJson(json);
+    }
+
+    /**
+     * Writes all metrics recorded so far to a file, see {@link #toJson()}.
+     *
+     * @param file the file to write, replaced if it exists
+     * @throws IOException if the file cannot be written
+     */
+    public void write(final Path file) throws IOException {
+        final Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        Files.writeString(file, toJson());
+    }
+
+    /**
+     * Writes all metrics recorded so far to the file given by the {@value #FILE_PROPERTY} system property.
+     *
+     * @return the file the metrics were written to
+     * @throws IOException if the file cannot be written
+     */
+    public Path writeToConfiguredFile() throws IOException {
+        final Path file = Path.of(System.getProperty(FILE_PROPERTY, DEFAULT_FILE));
+        write(file);
+        return file;
+    }
+
+    /**
+     * @return the smallest power of two not below {@code treeSize}
+     */
+    private static int sizeClass(final int treeSize) {
+        return treeSize <= 1 ? 1 : Integer.highestOneBit(treeSize - 1) << 1;
+    }
+}
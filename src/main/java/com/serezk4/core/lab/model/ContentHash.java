@@ -0,0 +1,61 @@
+package com.serezk4.core.lab.model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * A 128-bit content fingerprint of a piece of text.
+ *
+ * <p>
+ * The fingerprint consists of the first 128 bits of the SHA-256 digest of the UTF-8 encoded text. It is used
+ * to identify class sources independently of the student, file or run they come from, for example as a key of
+ * persistent caches.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>{@code
+ * ContentHash hash = ContentHash.of(LabStorage.normalize(code));
+ * System.out.println(hash); // 32 hex digits
+ * }</pre>
+ *
+ * @param high the most significant 64 bits of the fingerprint
+ * @param low  the least significant 64 bits of the fingerprint
+ *
+ * @author serezk4
+ * @version 1.0
+ * @since 1.0
+ */
+public record ContentHash(
+        long high,
+        long low
+) {
+
+    /**
+     * Computes the fingerprint of the given text.
+     *
+     * @param text the text to fingerprint
+     * @return the fingerprint of the text
+     */
+    public static ContentHash of(final String text) {
+        try {
+            final ByteBuffer digest = ByteBuffer.wrap(MessageDigest.getInstance("SHA-256")
+                    .digest(text.getBytes(StandardCharsets.UTF_8)));
+            return new ContentHash(digest.getLong(), digest.getLong());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Returns the fingerprint as 32 lowercase hex digits.
+     *
+     * @return hex representation of the fingerprint
+     */
+    @Override
+    public String toString() {
+        return HexFormat.of().toHexDigits(high) + HexFormat.of().toHexDigits(low);
+    }
+}
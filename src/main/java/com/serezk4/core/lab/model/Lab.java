@@ -25,7 +25,8 @@ import java.util.List;
  *
  * <p><b>Usage:</b></p>
  * <pre>{@code
- * Lab lab = new Lab("123456", 1, List.of(new Clazz("ExampleClass", parseTree, sourceCode, checkstyleResults)));
+ * Clazz clazz = new Clazz("ExampleClass", parseTree, sourceCode, normalizedSource, checkstyleResults);
+ * Lab lab = new Lab("123456", 1, List.of(clazz));
  * }</pre>
  *
  * <p>
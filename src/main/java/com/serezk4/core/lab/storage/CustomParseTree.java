@@ -3,6 +3,7 @@ package com.serezk4.core.lab.storage;
 import com.serezk4.core.apted.node.Node;
 import com.serezk4.core.apted.node.StringNodeData;
 import lombok.AccessLevel;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import org.antlr.v4.runtime.Parser;
@@ -18,6 +19,7 @@ import java.util.StringJoiner;
 @RequiredArgsConstructor
 public final class CustomParseTree implements ParseTree {
 
+    @Getter
     Node<StringNodeData> node;
 
     @Override
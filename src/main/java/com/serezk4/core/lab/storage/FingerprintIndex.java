@@ -0,0 +1,357 @@
+package com.serezk4.core.lab.storage;
+
+import com.serezk4.core.apted.node.FlatTree;
+import com.serezk4.core.apted.node.Node;
+import com.serezk4.core.apted.node.StringNodeData;
+import com.serezk4.core.apted.util.NodeUtil;
+import com.serezk4.core.lab.check.filter.SubtreeFingerprints;
+import com.serezk4.core.lab.model.Clazz;
+import com.serezk4.core.lab.model.StoredClazz;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Inverted index from subtree fingerprints to the stored classes containing them, one per lab number.
+ *
+ * <p>
+ * When a lab is saved, the {@link SubtreeFingerprints} of each of its classes are appended to the index file of
+ * the lab number. At check time the index is loaded once. A class is then compared only with the classes that share
+ * at least one subtree of {@link SubtreeFingerprints#DEFAULT_MIN_SIZE} nodes or more with it, so the tree edit
+ * distance runs on a shortlist instead of on every size-compatible class of the cohort.
+ * </p>
+ *
+ * <p>
+ * Unlike the lower bounds of {@link com.serezk4.core.lab.check.filter.LowerBoundFilter}, the shortlist is a
+ * heuristic: a pair whose edits touch every subtree of the minimum size shares no fingerprint, however few the
+ * edits are. To stay on the safe side, classes of labs the index does not cover (saved before the index existed,
+ * or whose latest save was not indexed completely) and classes too small to have any fingerprint are always
+ * shortlisted.
+ * </p>
+ *
+ * <p>
+ * Layout (all integers are big-endian):
+ * <pre>{@code
+ * index  := MAGIC:int minSize:int record*
+ * record := RECORD_MAGIC:int isu:utf classCount:int class*
+ * class  := name:utf fingerprintCount:int fingerprint:long*
+ * }</pre>
+ * A later record for the same ISU supersedes earlier ones. A record with a class count of {@code -1} marks the lab
+ * as not indexed, see {@link #invalidate}. An index written with another minimum subtree size is ignored.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>{@code
+ * FingerprintIndex index = storage.loadFingerprintIndex(1);
+ * FingerprintIndex.Shortlist shortlist = index.shortlist(targetClazz);
+ * if (shortlist.contains(isu, clazz)) compare(clazz, targetClazz);
+ * }</pre>
+ *
+ * @see SubtreeFingerprints
+ * @see LabStorage#loadFingerprintIndex(int)
+ *
+ * @author serezk4
+ * @version 1.0
+ * @since 1.0
+ */
+public final class FingerprintIndex {
+    static final int MAGIC = 0x4C474650; // "LGFP"
+    static final int RECORD_MAGIC = 0x46505253; // "FPRS"
+
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int INVALIDATED = -1;
+
+    private static final int MIN_SIZE = SubtreeFingerprints.DEFAULT_MIN_SIZE;
+
+    /**
+     * End of the last record written by this process to every index file. If a file still ends there, nobody has
+     * written to it since, so it is appended to without being scanned again.
+     */
+    private static final Map<Path, Long> WRITTEN_ENDS = new ConcurrentHashMap<>();
+
+    private final Set<String> covered = new HashSet<>();
+    private final Map<Long, List<ClassRef>> postings = new HashMap<>();
+    private final Set<ClassRef> unfingerprinted = new HashSet<>();
+
+    /**
+     * A stored class, identified by its owner and file name.
+     *
+     * @param isu  the ISU identifier of the class owner
+     * @param name the file name of the class
+     */
+    public record ClassRef(
+            String isu,
+            String name
+    ) {
+    }
+
+    /**
+     * The stored classes worth comparing with one class.
+     */
+    public final class Shortlist {
+        private final Set<ClassRef> sharing;
+
+        private Shortlist(final Set<ClassRef> sharing) {
+            this.sharing = sharing;
+        }
+
+        /**
+         * Checks whether a class is on the shortlist.
+         *
+         * @param isu   the ISU identifier of the class owner
+         * @param clazz the class
+         * @return {@code false} if the class is indexed and shares no fingerprint, {@code true} otherwise
+         */
+        public boolean contains(
+                final String isu,
+                final Clazz clazz
+        ) {
+            if (sharing == null || !covered.contains(isu)) return true;
+            final ClassRef ref = new ClassRef(isu, clazz.name());
+            return sharing.contains(ref) || unfingerprinted.contains(ref);
+        }
+    }
+
+    private FingerprintIndex() {
+    }
+
+    /**
+     * @return an index covering no lab, whose shortlists contain every class
+     */
+    public static FingerprintIndex empty() {
+        return new FingerprintIndex();
+    }
+
+    /**
+     * Computes the fingerprints of the classes of a lab and appends them to the index, creating the index if it
+     * does not exist yet.
+     *
+     * @param file    path to the index file
+     * @param isu     the ISU identifier of the lab owner
+     * @param clazzes the classes of the lab in storage form
+     * @throws IOException if the index cannot be written
+     */
+    public static void append(
+            final Path file,
+            final String isu,
+            final List<StoredClazz> clazzes
+    ) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(RECORD_MAGIC);
+        out.writeUTF(isu);
+        out.writeInt(clazzes.size());
+        for (StoredClazz clazz : clazzes) {
+            final long[] fingerprints = fingerprints(clazz.node());
+            out.writeUTF(clazz.filePath());
+            out.writeInt(fingerprints.length);
+            for (long fingerprint : fingerprints) out.writeLong(fingerprint);
+        }
+        write(file, bytes.toByteArray());
+    }
+
+    /**
+     * Marks a lab as not indexed, so that its classes are always shortlisted until it is appended again.
+     *
+     * <p>
+     * Called before a new version of the lab is written to its segment: if that write or the following
+     * {@link #append} fails, the fingerprints of the previous version no longer count for the lab, which would
+     * otherwise drop pairs of the new version that share no subtree with the old one.
+     * </p>
+     *
+     * @param file path to the index file
+     * @param isu  the ISU identifier of the lab owner
+     * @throws IOException if the index cannot be written
+     */
+    public static void invalidate(
+            final Path file,
+            final String isu
+    ) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(RECORD_MAGIC);
+        out.writeUTF(isu);
+        out.writeInt(INVALIDATED);
+        write(file, bytes.toByteArray());
+    }
+
+    /**
+     * Reads the index and builds its postings.
+     *
+     * <p>
+     * A truncated trailing record (for example after a crash during {@link #append}) is ignored.
+     * </p>
+     *
+     * @param file path to the index file
+     * @return the index, empty if the file does not exist or was written with another minimum subtree size
+     * @throws IOException if the index cannot be read or is not an index file
+     */
+    public static FingerprintIndex read(final Path file) throws IOException {
+        final FingerprintIndex index = new FingerprintIndex();
+        if (Files.notExists(file)) return index;
+
+        final Map<String, Map<String, long[]>> labs = new LinkedHashMap<>();
+        final byte[] bytes = Files.readAllBytes(file);
+        if (bytes.length < HEADER_SIZE) return index;
+        scan(bytes, file, labs);
+
+        labs.forEach((isu, clazzes) -> {
+            index.covered.add(isu);
+            clazzes.forEach((name, fingerprints) -> {
+                final ClassRef ref = new ClassRef(isu, name);
+                if (fingerprints.length == 0) index.unfingerprinted.add(ref);
+                for (long fingerprint : fingerprints) {
+                    index.postings.computeIfAbsent(fingerprint, key -> new ArrayList<>()).add(ref);
+                }
+            });
+        });
+        return index;
+    }
+
+    /**
+     * Returns the indexed classes sharing a fingerprint with a class.
+     *
+     * @param clazz the class to find similar classes for
+     * @return the shortlist of the class, containing every class if the class is too small to have fingerprints
+     */
+    public Shortlist shortlist(final Clazz clazz) {
+        final long[] fingerprints = fingerprints(NodeUtil.parseTreeToNode(clazz.tree()));
+        if (fingerprints.length == 0) return new Shortlist(null);
+
+        final Set<ClassRef> sharing = new HashSet<>();
+        for (long fingerprint : fingerprints) {
+            final List<ClassRef> refs = postings.get(fingerprint);
+            if (refs != null) sharing.addAll(refs);
+        }
+        return new Shortlist(sharing);
+    }
+
+    private static long[] fingerprints(final Node<StringNodeData> root) {
+        return root != null ? SubtreeFingerprints.of(FlatTree.of(root), MIN_SIZE) : new long[0];
+    }
+
+    /**
+     * Appends a record while holding an exclusive file lock. A torn trailing record left by a crash during an
+     * earlier write is cut off first, so that the new record directly follows the last complete one and stays
+     * readable. The file is only scanned for a torn record if it does not end where the last write of this process
+     * ended, that is on the first write to it or after another process or a failed write changed it, so saving many
+     * labs in a row does not reread the whole index for each of them.
+     */
+    private static synchronized void write(
+            final Path file,
+            final byte[] record
+    ) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+             var _ = channel.lock()) {
+            final Path key = file.toAbsolutePath().normalize();
+            final long size = channel.size();
+            final long end;
+            if (size >= HEADER_SIZE && WRITTEN_ENDS.getOrDefault(key, -1L) == size) end = size;
+            else end = size < HEADER_SIZE ? 0 : scan(readFully(channel, size), file, new HashMap<>());
+            if (end < size) {
+                System.err.println("Truncating torn fingerprint index tail at offset " + end + " in " + file);
+                channel.truncate(end);
+            }
+
+            channel.position(end);
+            if (end == 0) {
+                writeFully(channel, ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(MIN_SIZE).flip());
+            }
+            writeFully(channel, ByteBuffer.wrap(record));
+            WRITTEN_ENDS.put(key, channel.position());
+        }
+    }
+
+    /**
+     * Reads the records of an index up to the first one that is torn or corrupt.
+     *
+     * @param bytes the whole index file, at least a header long
+     * @param labs  receives the fingerprints of the classes of every indexed lab keyed by ISU
+     * @return the end of the last complete record, the end of the file if it was written with another minimum
+     *         subtree size and its records are left unread
+     * @throws IOException if the file is not an index file
+     */
+    private static long scan(
+            final byte[] bytes,
+            final Path file,
+            final Map<String, Map<String, long[]>> labs
+    ) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (in.readInt() != MAGIC) throw new IOException("Not a fingerprint index: " + file);
+        if (in.readInt() != MIN_SIZE) return bytes.length;
+
+        long end = HEADER_SIZE;
+        try {
+            while (in.available() > 0) {
+                if (in.readInt() != RECORD_MAGIC) {
+                    System.err.println("Ignoring corrupt fingerprint index tail in " + file);
+                    break;
+                }
+                final String isu = in.readUTF();
+                final int clazzCount = in.readInt();
+                if (clazzCount == INVALIDATED) {
+                    labs.remove(isu);
+                } else {
+                    final Map<String, long[]> clazzes = new HashMap<>();
+                    for (int i = 0; i < clazzCount; i++) {
+                        final String name = in.readUTF();
+                        final long[] fingerprints = new long[in.readInt()];
+                        for (int f = 0; f < fingerprints.length; f++) fingerprints[f] = in.readLong();
+                        clazzes.merge(name, fingerprints, FingerprintIndex::union);
+                    }
+                    labs.put(isu, clazzes);
+                }
+                end = bytes.length - in.available();
+            }
+        } catch (EOFException e) {
+            System.err.println("Ignoring truncated fingerprint index tail in " + file);
+        }
+        return end;
+    }
+
+    private static byte[] readFully(
+            final FileChannel channel,
+            final long size
+    ) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(size));
+        for (int read = 0; buffer.hasRemaining() && read >= 0; ) {
+            read = channel.read(buffer, buffer.position());
+        }
+        return buffer.array();
+    }
+
+    private static long[] union(
+            final long[] first,
+            final long[] second
+    ) {
+        final long[] all = new long[first.length + second.length];
+        System.arraycopy(first, 0, all, 0, first.length);
+        System.arraycopy(second, 0, all, first.length, second.length);
+        return all;
+    }
+
+    private static void writeFully(
+            final FileChannel channel,
+            final ByteBuffer buffer
+    ) throws IOException {
+        while (buffer.hasRemaining()) channel.write(buffer);
+    }
+}
@@ -0,0 +1,554 @@
+package com.serezk4.core.lab.storage;
+
+import com.serezk4.core.apted.node.Node;
+import com.serezk4.core.apted.node.StringNodeData;
+import com.serezk4.core.lab.model.StoredClazz;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Binary columnar segment holding every stored lab of a single lab number.
+ *
+ * <p>
+ * A segment is an append-only file: a fixed header followed by one record per saved lab. A record stores the
+ * owner's ISU, an interned label dictionary shared by all classes of the lab and, for every class, its name,
+ * source, Checkstyle report and tree. Trees are stored column-wise in left-to-right preorder: one column of
+ * label ids pointing into the dictionary and one column of child counts, which is enough to rebuild the
+ * {@link Node} structure without recursion or reflection. Parent, first child and subtree size columns are
+ * stored as well so that {@link MappedCorpus} can expose trees directly over the mapped file.
+ * </p>
+ *
+ * <p>
+ * Layout (all integers are big-endian, records and int columns are 4-byte aligned):
+ * <pre>{@code
+ * segment := MAGIC:int VERSION:short 0:short record*
+ * record  := RECORD_MAGIC:int payloadLength:int payload pad
+ * payload := isu:str labelCount:int label:str* classCount:int class*
+ * class   := name:str source:str checkstyleCount:int warning:str* columnCount:int column*
+ * column  := tag:int length:int pad data
+ * str     := byteLength:int utf8Bytes
+ * }</pre>
+ * Unknown columns are skipped by the reader, so new per-node data can be added without breaking old segments.
+ * A later record for the same ISU supersedes earlier ones.
+ * </p>
+ *
+ * @see LabStorage
+ * @see StoredClazz
+ *
+ * @author serezk4
+ * @version 1.0
+ * @since 1.0
+ */
+public final class LabSegment {
+    static final int MAGIC = 0x4C475347; // "LGSG"
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 8;
+
+    static final int RECORD_MAGIC = 0x4C41425F; // "LAB_"
+    static final int RECORD_HEADER_SIZE = 8;
+
+    static final int COLUMN_LABEL = 1;
+    static final int COLUMN_CHILD_COUNT = 2;
+    static final int COLUMN_PARENT = 3;
+    static final int COLUMN_FIRST_CHILD = 4;
+    static final int COLUMN_SUBTREE_SIZE = 5;
+
+    /**
+     * End of the last record appended by this process to every segment. If a segment still ends there, nobody has
+     * written to it since, so it is appended to without walking its record headers again.
+     */
+    private static final Map<Path, Long> APPENDED_ENDS = new ConcurrentHashMap<>();
+
+    private LabSegment() {
+    }
+
+    /**
+     * Appends a lab to the segment, creating the segment if it does not exist yet.
+     *
+     * <p>
+     * The record is fully encoded in memory and written with a single call while holding an exclusive file lock,
+     * so concurrent writers (threads or processes) never interleave their records. A torn trailing record left by
+     * a crash during an earlier append is cut off under the same lock before writing, so that the new record
+     * directly follows the last valid one and stays readable. The record headers are only walked for a torn record
+     * if the segment does not end where the last append of this process ended, that is on the first append to it or
+     * after another process or a failed append changed it.
+     * </p>
+     *
+     * @param segment  path to the segment file
+     * @param isu      the ISU identifier of the lab owner
+     * @param clazzes  the classes of the lab in storage form
+     * @throws IOException if the segment cannot be written
+     */
+    public static synchronized void append(
+            final Path segment,
+            final String isu,
+            final List<StoredClazz> clazzes
+    ) throws IOException {
+        final byte[] record = encodeRecord(isu, clazzes);
+
+        try (FileChannel channel = FileChannel.open(segment,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+             var _ = channel.lock()) {
+            final Path key = segment.toAbsolutePath().normalize();
+            final long size = channel.size();
+            final long end;
+            if (size >= HEADER_SIZE && APPENDED_ENDS.getOrDefault(key, -1L) == size) end = size;
+            else end = size < HEADER_SIZE ? 0 : scan(channel, segment, new HashMap<>());
+            if (end < size) {
+                System.err.println("Truncating torn segment tail at offset " + end + " in " + segment);
+                channel.truncate(end);
+            }
+
+            channel.position(end);
+            if (end == 0) writeFully(channel, header());
+            writeFully(channel, ByteBuffer.wrap(record));
+            APPENDED_ENDS.put(key, channel.position());
+        }
+    }
+
+    /**
+     * Reads all labs stored in the segment with a single sequential read.
+     *
+     * <p>
+     * Labs are returned in the order they were first saved; a lab saved several times is represented by its
+     * latest record. A truncated trailing record (for example after a crash during {@link #append}) is ignored.
+     * </p>
+     *
+     * @param segment path to the segment file
+     * @return the stored classes of every lab keyed by ISU, or an empty map if the segment does not exist
+     * @throws IOException if the segment cannot be read or is not a segment file
+     */
+    public static Map<String, List<StoredClazz>> read(final Path segment) throws IOException {
+        final Map<String, List<StoredClazz>> labs = new LinkedHashMap<>();
+        if (Files.notExists(segment)) return labs;
+
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment));
+        checkHeader(buffer, segment);
+
+        while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+            final int recordStart = buffer.position();
+            final int magic = buffer.getInt();
+            final int payloadLength = buffer.getInt();
+            if (magic != RECORD_MAGIC || payloadLength < 0 || payloadLength > buffer.remaining()) {
+                System.err.println("Ignoring truncated segment tail at offset " + recordStart + " in " + segment);
+                break;
+            }
+
+            final ByteBuffer payload = buffer.slice(buffer.position(), payloadLength);
+            final String isu = readString(payload);
+            labs.put(isu, decodeClazzes(payload, recordStart + RECORD_HEADER_SIZE));
+
+            buffer.position(align(buffer.position() + payloadLength));
+        }
+        return labs;
+    }
+
+    /**
+     * Receives the labs of a segment one at a time, see {@link #stream(Path, RecordConsumer)}.
+     */
+    @FunctionalInterface
+    public interface RecordConsumer {
+        /**
+         * @param isu     the ISU identifier of the lab owner
+         * @param clazzes the stored classes of the lab
+         * @throws InterruptedException if the consumer was interrupted while handing the lab over
+         */
+        void accept(String isu, List<StoredClazz> clazzes) throws InterruptedException;
+    }
+
+    /**
+     * Reads the labs stored in the segment one record at a time.
+     *
+     * <p>
+     * Unlike {@link #read(Path)}, the segment is not loaded into memory as a whole. A first pass reads only the
+     * record headers and owners to find the latest record of every lab, a second pass decodes these records one
+     * by one and hands each to the consumer before reading the next, so memory use is bounded by the largest
+     * record. Labs are passed in the same order as by {@link #read(Path)}.
+     * </p>
+     *
+     * @param segment  path to the segment file
+     * @param consumer receives every stored lab, nothing if the segment does not exist
+     * @throws IOException          if the segment cannot be read or is not a segment file
+     * @throws InterruptedException if the consumer was interrupted
+     */
+    public static void stream(
+            final Path segment,
+            final RecordConsumer consumer
+    ) throws IOException, InterruptedException {
+        if (Files.notExists(segment)) return;
+
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            for (Map.Entry<String, long[]> record : index(channel, segment).entrySet()) {
+                consumer.accept(record.getKey(), decodeRecord(channel, record.getValue()));
+            }
+        }
+    }
+
+    /**
+     * Reads a single lab from the segment without decoding the others.
+     *
+     * @param segment path to the segment file
+     * @param isu     the ISU identifier of the lab owner
+     * @return the stored classes of the latest record of the lab, or {@code null} if the lab is not in the segment
+     * @throws IOException if the segment cannot be read or is not a segment file
+     */
+    public static List<StoredClazz> read(
+            final Path segment,
+            final String isu
+    ) throws IOException {
+        if (Files.notExists(segment)) return null;
+
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            final long[] record = index(channel, segment).get(isu);
+            return record != null ? decodeRecord(channel, record) : null;
+        }
+    }
+
+    /**
+     * Finds the latest record of every lab, reading only record headers and owners.
+     *
+     * @return the payload offset and length of the latest record keyed by ISU, in the order labs were first saved
+     */
+    private static Map<String, long[]> index(
+            final FileChannel channel,
+            final Path segment
+    ) throws IOException {
+        final Map<String, long[]> records = new LinkedHashMap<>();
+        scan(channel, segment, records);
+        return records;
+    }
+
+    /**
+     * Walks the record headers up to the first record that is torn or corrupt.
+     *
+     * @param records receives the payload offset and length of the latest record of every lab keyed by ISU
+     * @return the end of the last valid record
+     */
+    private static long scan(
+            final FileChannel channel,
+            final Path segment,
+            final Map<String, long[]> records
+    ) throws IOException {
+        checkHeader(readAt(channel, 0, HEADER_SIZE), segment);
+
+        final long size = channel.size();
+        long position = HEADER_SIZE;
+        while (size - position >= RECORD_HEADER_SIZE + Integer.BYTES) {
+            final ByteBuffer head = readAt(channel, position, RECORD_HEADER_SIZE + Integer.BYTES);
+            final int magic = head.getInt();
+            final int payloadLength = head.getInt();
+            final int isuLength = head.getInt();
+            if (magic != RECORD_MAGIC || payloadLength < 0 || payloadLength > size - position - RECORD_HEADER_SIZE
+                    || isuLength < 0 || isuLength > payloadLength - Integer.BYTES) {
+                System.err.println("Ignoring truncated segment tail at offset " + position + " in " + segment);
+                break;
+            }
+
+            final ByteBuffer isu = readAt(channel, position + RECORD_HEADER_SIZE + Integer.BYTES, isuLength);
+            records.put(StandardCharsets.UTF_8.decode(isu).toString(),
+                    new long[]{position + RECORD_HEADER_SIZE, payloadLength});
+
+            position = align(position + RECORD_HEADER_SIZE + payloadLength);
+        }
+        return Math.min(position, size);
+    }
+
+    private static List<StoredClazz> decodeRecord(
+            final FileChannel channel,
+            final long[] record
+    ) throws IOException {
+        final ByteBuffer payload = readAt(channel, record[0], (int) record[1]);
+        readString(payload);
+        // Only the offset modulo the column alignment matters for decoding
+        return decodeClazzes(payload, (int) record[0]);
+    }
+
+    private static ByteBuffer readAt(
+            final FileChannel channel,
+            final long position,
+            final int length
+    ) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        for (int read = 0; buffer.hasRemaining() && read >= 0; ) {
+            read = channel.read(buffer, position + buffer.position());
+        }
+        return buffer.flip();
+    }
+
+    static ByteBuffer header() {
+        return ByteBuffer.allocate(HEADER_SIZE)
+                .putInt(MAGIC)
+                .putShort(VERSION)
+                .putShort((short) 0)
+                .flip();
+    }
+
+    static void checkHeader(
+            final ByteBuffer buffer,
+            final Path segment
+    ) throws IOException {
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a lab segment: " + segment);
+        }
+        final short version = buffer.getShort();
+        if (version > VERSION) {
+            throw new IOException("Unsupported lab segment version " + version + ": " + segment);
+        }
+        buffer.getShort();
+    }
+
+    private static byte[] encodeRecord(
+            final String isu,
+            final List<StoredClazz> clazzes
+    ) throws IOException {
+        final Map<String, Integer> dictionary = new LinkedHashMap<>();
+        final List<int[][]> columns = new ArrayList<>(clazzes.size());
+        for (StoredClazz clazz : clazzes) columns.add(flatten(clazz.node(), dictionary));
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(RECORD_MAGIC);
+        out.writeInt(0); // payload length, patched below
+
+        writeString(out, isu);
+        out.writeInt(dictionary.size());
+        for (String label : dictionary.keySet()) writeString(out, label);
+
+        out.writeInt(clazzes.size());
+        for (int i = 0; i < clazzes.size(); i++) {
+            final StoredClazz clazz = clazzes.get(i);
+            writeString(out, clazz.filePath());
+            writeString(out, clazz.source());
+
+            final List<String> checkstyle = clazz.checkstyle() == null ? List.of() : clazz.checkstyle();
+            out.writeInt(checkstyle.size());
+            for (String warning : checkstyle) writeString(out, warning);
+
+            final int[][] tree = columns.get(i);
+            out.writeInt(5);
+            writeColumn(out, COLUMN_LABEL, tree[0]);
+            writeColumn(out, COLUMN_CHILD_COUNT, tree[1]);
+            writeColumn(out, COLUMN_PARENT, tree[2]);
+            writeColumn(out, COLUMN_FIRST_CHILD, tree[3]);
+            writeColumn(out, COLUMN_SUBTREE_SIZE, tree[4]);
+        }
+
+        pad(out);
+        final byte[] record = bytes.toByteArray();
+        ByteBuffer.wrap(record).putInt(4, record.length - RECORD_HEADER_SIZE);
+        return record;
+    }
+
+    private static List<StoredClazz> decodeClazzes(
+            final ByteBuffer payload,
+            final int payloadOffset
+    ) {
+        final String[] dictionary = new String[payload.getInt()];
+        for (int i = 0; i < dictionary.length; i++) dictionary[i] = readString(payload);
+
+        final int clazzCount = payload.getInt();
+        final List<StoredClazz> clazzes = new ArrayList<>(clazzCount);
+        for (int i = 0; i < clazzCount; i++) {
+            final String name = readString(payload);
+            final String source = readString(payload);
+
+            final int warningCount = payload.getInt();
+            final List<String> checkstyle = new ArrayList<>(warningCount);
+            for (int w = 0; w < warningCount; w++) checkstyle.add(readString(payload));
+
+            int[] labels = null;
+            int[] childCounts = null;
+            final int columnCount = payload.getInt();
+            for (int c = 0; c < columnCount; c++) {
+                final int tag = payload.getInt();
+                final int length = payload.getInt();
+                payload.position(align(payloadOffset + payload.position()) - payloadOffset);
+                switch (tag) {
+                    case COLUMN_LABEL -> labels = readInts(payload, length);
+                    case COLUMN_CHILD_COUNT -> childCounts = readInts(payload, length);
+                    default -> payload.position(payload.position() + length);
+                }
+            }
+
+            clazzes.add(new StoredClazz(name, rebuild(labels, childCounts, dictionary), source, checkstyle));
+        }
+        return clazzes;
+    }
+
+    /**
+     * Flattens a tree into preorder label id, child count, parent, first child and subtree size columns,
+     * interning labels into the dictionary.
+     */
+    static int[][] flatten(
+            final Node<StringNodeData> root,
+            final Map<String, Integer> dictionary
+    ) {
+        if (root == null) return new int[][]{new int[0], new int[0], new int[0], new int[0], new int[0]};
+
+        final int size = root.getNodeCount();
+        final int[] labels = new int[size];
+        final int[] childCounts = new int[size];
+        final int[] parents = new int[size];
+
+        final Deque<Node<StringNodeData>> stack = new ArrayDeque<>();
+        final Deque<Integer> parentStack = new ArrayDeque<>();
+        stack.push(root);
+        parentStack.push(-1);
+        for (int preorder = 0; !stack.isEmpty(); preorder++) {
+            final Node<StringNodeData> node = stack.pop();
+            labels[preorder] = dictionary.computeIfAbsent(node.getNodeData().getLabel(), _ -> dictionary.size());
+            childCounts[preorder] = node.getChildren().size();
+            parents[preorder] = parentStack.pop();
+            for (int i = node.getChildren().size() - 1; i >= 0; i--) {
+                stack.push(node.getChildren().get(i));
+                parentStack.push(preorder);
+            }
+        }
+        return new int[][]{labels, childCounts, parents, firstChildren(childCounts), subtreeSizes(parents)};
+    }
+
+    static int[] parents(final int[] childCounts) {
+        final int[] parents = new int[childCounts.length];
+        final Deque<Integer> open = new ArrayDeque<>();
+        final Deque<Integer> remaining = new ArrayDeque<>();
+        for (int preorder = 0; preorder < childCounts.length; preorder++) {
+            if (open.isEmpty()) {
+                parents[preorder] = -1;
+            } else {
+                parents[preorder] = open.peek();
+                remaining.push(remaining.pop() - 1);
+            }
+            open.push(preorder);
+            remaining.push(childCounts[preorder]);
+            while (!remaining.isEmpty() && remaining.peek() == 0) {
+                open.pop();
+                remaining.pop();
+            }
+        }
+        return parents;
+    }
+
+    static int[] firstChildren(final int[] childCounts) {
+        final int[] firstChildren = new int[childCounts.length];
+        for (int preorder = 0; preorder < childCounts.length; preorder++) {
+            firstChildren[preorder] = childCounts[preorder] > 0 ? preorder + 1 : -1;
+        }
+        return firstChildren;
+    }
+
+    static int[] subtreeSizes(final int[] parents) {
+        final int[] sizes = new int[parents.length];
+        for (int preorder = parents.length - 1; preorder >= 0; preorder--) {
+            sizes[preorder]++;
+            if (parents[preorder] >= 0) sizes[parents[preorder]] += sizes[preorder];
+        }
+        return sizes;
+    }
+
+    /**
+     * Rebuilds a tree from its preorder label id and child count columns.
+     */
+    static Node<StringNodeData> rebuild(
+            final int[] labels,
+            final int[] childCounts,
+            final String[] dictionary
+    ) {
+        if (labels == null || childCounts == null || labels.length == 0) return null;
+
+        final Map<Integer, StringNodeData> data = new HashMap<>();
+        final Deque<Node<StringNodeData>> parents = new ArrayDeque<>();
+        final Deque<Integer> remaining = new ArrayDeque<>();
+
+        Node<StringNodeData> root = null;
+        for (int preorder = 0; preorder < labels.length; preorder++) {
+            final Node<StringNodeData> node = new Node<>(
+                    data.computeIfAbsent(labels[preorder], id -> new StringNodeData(dictionary[id])));
+
+            if (parents.isEmpty()) {
+                root = node;
+            } else {
+                parents.peek().addChild(node);
+                remaining.push(remaining.pop() - 1);
+            }
+
+            parents.push(node);
+            remaining.push(childCounts[preorder]);
+            while (!remaining.isEmpty() && remaining.peek() == 0) {
+                parents.pop();
+                remaining.pop();
+            }
+        }
+        return root;
+    }
+
+    private static void writeColumn(
+            final DataOutputStream out,
+            final int tag,
+            final int[] values
+    ) throws IOException {
+        out.writeInt(tag);
+        out.writeInt(values.length * Integer.BYTES);
+        pad(out);
+        for (int value : values) out.writeInt(value);
+    }
+
+    static void writeString(
+            final DataOutputStream out,
+            final String value
+    ) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static int[] readInts(
+            final ByteBuffer buffer,
+            final int length
+    ) {
+        final int[] values = new int[length / Integer.BYTES];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + length);
+        return values;
+    }
+
+    private static void pad(final DataOutputStream out) throws IOException {
+        while (out.size() % Integer.BYTES != 0) out.writeByte(0);
+    }
+
+    static int align(final int position) {
+        return (position + Integer.BYTES - 1) & -Integer.BYTES;
+    }
+
+    static long align(final long position) {
+        return (position + Integer.BYTES - 1) & -Integer.BYTES;
+    }
+
+    private static void writeFully(
+            final FileChannel channel,
+            final ByteBuffer buffer
+    ) throws IOException {
+        while (buffer.hasRemaining()) channel.write(buffer);
+    }
+}
@@ -5,8 +5,13 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.Strictness;
 import com.serezk4.core.antlr4.JavaLexer;
 import com.serezk4.core.antlr4.JavaParser;
+import com.serezk4.core.apted.node.Node;
+import com.serezk4.core.apted.node.StringNodeData;
+import com.serezk4.core.apted.util.NodeUtil;
 import com.serezk4.core.lab.analyze.checkstyle.CheckstyleAnalyzer;
+import com.serezk4.core.lab.metrics.RunMetrics;
 import com.serezk4.core.lab.model.Clazz;
+import com.serezk4.core.lab.model.ContentHash;
 import com.serezk4.core.lab.model.Lab;
 import com.serezk4.core.lab.model.StoredClazz;
 import org.antlr.v4.runtime.CharStream;
@@ -14,6 +19,7 @@ import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.DiagnosticErrorListener;
 import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.tree.ParseTree;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -21,8 +27,10 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -30,15 +38,18 @@ import java.util.stream.Stream;
  *
  * <p>
  * The {@code LabStorage} class provides methods to save labs to the file system, load labs from storage,
- * and parse Java source files into structured representations. It uses a JSON-based caching mechanism for
- * efficient data retrieval and normalization techniques to preprocess Java code for further analysis.
+ * and parse Java source files into structured representations. Stored labs are kept in one binary
+ * {@link LabSegment} per lab number, so the whole corpus of a lab number is loaded with a single sequential
+ * read. Labs saved by older versions as per-class JSON files are still readable and are migrated into the
+ * segment the first time they are loaded.
  * </p>
  *
  * Key features:
  * <ul>
  *     <li>Save and load labs from a predefined storage root.</li>
  *     <li>Parse Java files into {@link Clazz} objects, applying code normalization.</li>
- *     <li>Retrieve all labs for a specific lab number.</li>
+ *     <li>Deduplicate parsing and Checkstyle analysis of identical files through a {@link ParseCache}.</li>
+ *     <li>Retrieve all labs for a specific lab number, at once or streamed through a {@link LabStream}.</li>
  *     <li>Handle concurrent file access and caching of parsed files.</li>
  * </ul>
  *
@@ -58,7 +69,12 @@ import java.util.stream.Stream;
  * @since 1.0
  */
 public final class LabStorage {
-    private static final Path CACHE_ROOT = Paths.get("/Users/serezk4/labguard/core/lab_cache");
+    /**
+     * System property holding the storage root, {@link #DEFAULT_ROOT} if absent.
+     */
+    public static final String ROOT_PROPERTY = "labguard.cache.root";
+
+    private static final Path DEFAULT_ROOT = Paths.get("/Users/serezk4/labguard/core/lab_cache");
 
     private static final Pattern COMMENT_PATTERN = Pattern.compile("(?s)/\\*.*?\\*/|//.*");
     private static final Pattern NUMBER_PATTERN = Pattern.compile("\\b\\d+\\b");
@@ -68,77 +84,220 @@ public final class LabStorage {
             .setStrictness(Strictness.LENIENT)
             .create();
 
+    private final Path root;
+    private final RunMetrics metrics;
+    private final ParseCache parseCache;
     private final Map<Path, Clazz> parsedFileCache = new ConcurrentHashMap<>();
+    private final Map<Integer, Map<String, Lab>> segmentCache = new ConcurrentHashMap<>();
 
     /**
-     * Constructs a new {@code LabStorage} instance and ensures the storage root directory exists.
+     * Constructs a new {@code LabStorage} instance at the root given by the {@value #ROOT_PROPERTY} system property
+     * and ensures the storage root directory exists.
      *
      * @throws IOException if an error occurs while creating the storage root directory
      */
     public LabStorage() throws IOException {
-        Files.createDirectories(CACHE_ROOT);
+        this(new RunMetrics());
+    }
+
+    /**
+     * Constructs a new {@code LabStorage} instance at the root given by the {@value #ROOT_PROPERTY} system property
+     * that records parse and Checkstyle timings and cache hits into the given metrics.
+     *
+     * @param metrics the metrics of the current run
+     * @throws IOException if an error occurs while creating the storage root directory
+     */
+    public LabStorage(final RunMetrics metrics) throws IOException {
+        this(Paths.get(System.getProperty(ROOT_PROPERTY, DEFAULT_ROOT.toString())), metrics);
+    }
+
+    /**
+     * Constructs a new {@code LabStorage} instance at the given root and ensures the root directory exists.
+     *
+     * @param root the directory holding the stored labs, segments and caches
+     * @throws IOException if an error occurs while creating the storage root directory
+     */
+    public LabStorage(final Path root) throws IOException {
+        this(root, new RunMetrics());
+    }
+
+    /**
+     * Constructs a new {@code LabStorage} instance at the given root that records parse and Checkstyle timings and
+     * cache hits into the given metrics.
+     *
+     * @param root    the directory holding the stored labs, segments and caches
+     * @param metrics the metrics of the current run
+     * @throws IOException if an error occurs while creating the storage root directory
+     */
+    public LabStorage(
+            final Path root,
+            final RunMetrics metrics
+    ) throws IOException {
+        this.root = root;
+        this.metrics = metrics;
+        this.parseCache = new ParseCache(root.resolve("objects"));
+        Files.createDirectories(root);
     }
 
     /**
      * Saves the specified lab to the storage.
      *
      * <p>
-     * The lab is serialized into JSON files, where each {@link Clazz} is stored as a separate file.
-     * The storage path is determined based on the lab's ISU and lab number.
+     * The lab is appended as a single record to the {@link LabSegment} of its lab number, and the fingerprints of
+     * its classes to the {@link FingerprintIndex} of the lab number. If the lab was saved before, the new records
+     * supersede the old ones. The lab is invalidated in the fingerprint index before its segment record is written,
+     * so if saving fails halfway, the lab is left unindexed rather than indexed with the fingerprints of an older
+     * version.
      * </p>
      *
      * @param lab the lab to save
      */
     public void save(final Lab lab) {
-        Path labPath = getLabPath(lab.isu(), lab.labNumber());
+        final List<StoredClazz> storedClazzes = lab.clazzes().parallelStream()
+                .map(Clazz::toStoredTree)
+                .toList();
 
         try {
-            Files.createDirectories(labPath);
+            append(lab.isu(), lab.labNumber(), storedClazzes);
         } catch (IOException e) {
-            System.err.println("Error creating lab directory: " + e.getMessage());
+            System.err.println("Error saving lab: " + e.getMessage());
             return;
         }
 
-        lab.clazzes().parallelStream().forEach(clazz -> saveNode(labPath, clazz));
-    }
-
-
-    private void saveNode(
-            final Path path,
-            final Clazz clazz
-    ) {
-        Path outputPath = path.resolve(clazz.name().concat(".json"));
-        try (var writer = Files.newBufferedWriter(outputPath)) {
-            gson.toJson(clazz.toStoredTree(), writer);
-        } catch (IOException e) {
-            System.err.println("Error saving node: " + e.getMessage());
-        }
+        Optional.ofNullable(segmentCache.get(lab.labNumber())).ifPresent(labs -> labs.put(lab.isu(), lab));
     }
 
     /**
      * Loads all labs with the specified lab number from the storage.
      *
      * <p>
-     * This method scans the storage root directory for all ISU identifiers and attempts to load
-     * labs matching the given lab number. It skips labs without any associated classes.
+     * This method reads the {@link LabSegment} of the lab number. Labs that are only present in the legacy
+     * per-class JSON layout are loaded as well and appended to the segment, so subsequent runs only need the
+     * segment. Legacy labs are read and decoded on virtual threads, one per lab, since this stage is bound by
+     * file I/O rather than by CPU. It skips labs without any associated classes.
      * </p>
      *
      * @param labNumber the lab number to load
      * @return a list of labs with the specified lab number, sorted by ISU
      */
     public List<Lab> loadAllByLabNumber(final int labNumber) {
-        try (Stream<Path> isuPaths = Files.list(CACHE_ROOT)) {
-            return isuPaths
-                    .parallel()
+        final Map<String, Lab> labs = loadSegment(labNumber);
+
+        try (Stream<Path> isuPaths = Files.list(root);
+             ExecutorService io = Executors.newVirtualThreadPerTaskExecutor()) {
+            isuPaths
                     .filter(Files::isDirectory)
-                    .map(isuPath -> loadLab(isuPath.getFileName().toString(), labNumber))
-                    .filter(lab -> lab.clazzes() != null)
-                    .sorted(Comparator.comparing(Lab::isu))
-                    .toList();
+                    .map(isuPath -> isuPath.getFileName().toString())
+                    .filter(isu -> !labs.containsKey(isu))
+                    .forEach(isu -> io.execute(() -> Optional.ofNullable(migrateLegacyLab(isu, labNumber))
+                            .ifPresent(lab -> labs.put(isu, lab))));
         } catch (IOException e) {
             System.err.println("Error loading all labs: " + e.getMessage());
-            return new ArrayList<>();
         }
+
+        return labs.values().stream()
+                .filter(lab -> lab.clazzes() != null)
+                .sorted(Comparator.comparing(Lab::isu))
+                .toList();
+    }
+
+    /**
+     * Streams all labs with the specified lab number from the storage.
+     *
+     * <p>
+     * Unlike {@link #loadAllByLabNumber(int)}, the labs are neither collected, sorted nor cached: they are decoded
+     * one at a time from the {@link LabSegment} of the lab number on a background thread and handed over through a
+     * {@link LabStream} holding at most as many labs as the {@value LabStream#WINDOW_PROPERTY} system property
+     * allows, so the caller can compare labs
+     * while the next ones are read and drop them once compared. Labs arrive in the order they were first saved.
+     * Labs only present in the legacy per-class JSON layout follow, migrated into the segment as by
+     * {@link #loadAllByLabNumber(int)}.
+     * </p>
+     *
+     * @param labNumber the lab number to stream
+     * @return the stream of stored labs, which the caller must close
+     */
+    public LabStream streamAllByLabNumber(final int labNumber) {
+        return new LabStream(LabStream.windowFromSystemProperties(), stream -> {
+            final Set<String> streamed = new HashSet<>();
+            LabSegment.stream(getSegmentPath(labNumber), (isu, storedClazzes) -> {
+                streamed.add(isu);
+                stream.put(toLab(isu, labNumber, storedClazzes));
+            });
+
+            try (Stream<Path> isuPaths = Files.list(root);
+                 ExecutorService io = Executors.newVirtualThreadPerTaskExecutor()) {
+                isuPaths
+                        .filter(Files::isDirectory)
+                        .map(isuPath -> isuPath.getFileName().toString())
+                        .filter(isu -> !streamed.contains(isu))
+                        .forEach(isu -> io.execute(() -> {
+                            final Lab lab = migrateLegacyLab(isu, labNumber);
+                            if (lab == null) return;
+                            try {
+                                stream.put(lab);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }));
+            }
+        });
+    }
+
+    /**
+     * Loads the subtree fingerprint index of a lab number.
+     *
+     * <p>
+     * Labs saved before the index was introduced are not covered by it until they are saved again, see
+     * {@link FingerprintIndex}.
+     * </p>
+     *
+     * @param labNumber the lab number whose index to load
+     * @return the index, empty if nothing has been indexed for the lab number or the index cannot be read
+     */
+    public FingerprintIndex loadFingerprintIndex(final int labNumber) {
+        try {
+            return FingerprintIndex.read(getFingerprintPath(labNumber));
+        } catch (IOException e) {
+            System.err.println("Error loading fingerprint index: " + e.getMessage());
+            return FingerprintIndex.empty();
+        }
+    }
+
+    /**
+     * Memory-maps the stored corpus of a lab number.
+     *
+     * <p>
+     * Unlike {@link #loadAllByLabNumber(int)}, no {@link Clazz} or tree objects are created: class trees are
+     * read directly from the mapped {@link LabSegment}. The caller owns the returned corpus and must close it.
+     * Labs still stored in the legacy JSON layout are only visible after they have been migrated by
+     * {@link #loadAllByLabNumber(int)}. The check pipeline does not use the mapped corpus yet; it is meant for
+     * consumers that only need the trees, such as offline analyses of a whole lab number.
+     * </p>
+     *
+     * @param labNumber the lab number to map
+     * @return the mapped corpus, empty if nothing has been stored for the lab number
+     * @throws IOException if the segment cannot be mapped
+     */
+    public MappedCorpus mapLabNumber(final int labNumber) throws IOException {
+        return MappedCorpus.open(getSegmentPath(labNumber));
+    }
+
+    /**
+     * Opens the persistent similarity store of a lab number.
+     *
+     * <p>
+     * Every lab number has its own store, next to its segment and fingerprint index, so opening it only loads the
+     * scores of that lab number. The caller owns the returned store and must close it to persist the scores
+     * computed during the run.
+     * </p>
+     *
+     * @param labNumber the lab number whose scores to open
+     * @return the opened similarity store
+     * @throws IOException if the store exists but cannot be read
+     */
+    public SimilarityStore openSimilarityStore(final int labNumber) throws IOException {
+        return SimilarityStore.open(getSimilarityPath(labNumber));
     }
 
     /**
@@ -175,28 +334,44 @@ public final class LabStorage {
      *     <li>Lexical and syntactical analysis using ANTLR.</li>
      *     <li>Static code analysis using Checkstyle.</li>
      * </ul>
-     * The parsed result is cached for efficiency.
+     * The parsed result is cached per path for the lifetime of the storage. Trees and Checkstyle reports are
+     * additionally looked up in the content-addressed {@link ParseCache}, so files already seen in any lab,
+     * of any student, are neither parsed nor analyzed again. Time spent obtaining trees and reports is recorded in
+     * the {@code parse} and {@code checkstyle} stages of the {@link RunMetrics}, together with the hits and misses
+     * of both caches.
      * </p>
      *
      * @param path the path to the Java source file
      * @return a {@link Clazz} object representing the parsed file, or {@code null} if an error occurs
      */
     private Clazz parseFile(final Path path) {
+        final Clazz parsed = parsedFileCache.get(path);
+        if (parsed != null) {
+            metrics.increment("parsedFileCache.hits");
+            return parsed;
+        }
+        metrics.increment("parsedFileCache.misses");
+
         return parsedFileCache.computeIfAbsent(path, p -> {
             try {
                 String code = Files.readString(p);
                 String normalizedCode = normalize(code);
 
-                CharStream charStream = CharStreams.fromString(normalizedCode);
-                JavaLexer lexer = new JavaLexer(charStream);
-                CommonTokenStream tokens = new CommonTokenStream(lexer);
-                JavaParser parser = new JavaParser(tokens) {{
-                    getInterpreter().setPredictionMode(PredictionMode.SLL);
-                    addErrorListener(new DiagnosticErrorListener());
-                }};
+                long parseStart = System.nanoTime();
+                ContentHash normalizedHash = ContentHash.of(normalizedCode);
+                Optional<Node<StringNodeData>> cachedTree = parseCache.findTree(normalizedHash);
+                Node<StringNodeData> node = cachedTree.orElseGet(() -> NodeUtil.parseTreeToNode(parse(normalizedCode)));
+                metrics.recordStage("parse", System.nanoTime() - parseStart);
+                metrics.increment(cachedTree.isPresent() ? "parseCache.treeHits" : "parseCache.treeMisses");
 
-                List<String> pmdReport = CheckstyleAnalyzer.getInstance().analyzeCode(p);
-                return new Clazz(p.getFileName().toString(), parser.compilationUnit(), code, normalizedCode, pmdReport);
+                List<String> pmdReport = metrics.time("checkstyle", () -> parseCache.checkstyle(
+                        ContentHash.of(code),
+                        () -> CheckstyleAnalyzer.getInstance().analyzeCode(p)
+                ));
+                if (cachedTree.isEmpty()) parseCache.putTree(normalizedHash, node);
+                // The class keeps its tree as nodes, so that comparing or storing it never converts the tree again
+                return new Clazz(p.getFileName().toString(), NodeUtil.parseNodeToTree(node), code, normalizedCode,
+                        pmdReport);
             } catch (IOException e) {
                 System.err.println("Error parsing file: " + e.getMessage());
                 return null;
@@ -204,6 +379,23 @@ public final class LabStorage {
         });
     }
 
+    /**
+     * Parses normalized Java code into a parse tree, without consulting any cache.
+     *
+     * @param normalizedCode the code after {@link #normalize(String)}
+     * @return the parse tree of the compilation unit
+     */
+    public static ParseTree parse(final String normalizedCode) {
+        CharStream charStream = CharStreams.fromString(normalizedCode);
+        JavaLexer lexer = new JavaLexer(charStream);
+        CommonTokenStream tokens = new CommonTokenStream(lexer);
+        JavaParser parser = new JavaParser(tokens) {{
+            getInterpreter().setPredictionMode(PredictionMode.SLL);
+            addErrorListener(new DiagnosticErrorListener());
+        }};
+        return parser.compilationUnit();
+    }
+
     /**
      * Retrieves all Java files from the specified directory path.
      *
@@ -244,40 +436,160 @@ public final class LabStorage {
         ).replaceAll("\"stringLiteral\"");
     }
 
+    /**
+     * Loads a single stored lab.
+     *
+     * <p>
+     * The lab is looked up in the {@link LabSegment} of the lab number first and in the legacy per-class JSON
+     * layout otherwise. Unless the segment has already been loaded by {@link #loadAllByLabNumber(int)}, only the
+     * record of the lab is decoded.
+     * </p>
+     *
+     * @param isu       the ISU identifier of the lab owner
+     * @param labNumber the number of the lab to load
+     * @return the stored lab, or a lab with {@code null} classes if it has never been saved
+     */
     public Lab loadLab(
             final String isu,
             final int labNumber
+    ) {
+        final Map<String, Lab> loaded = segmentCache.get(labNumber);
+        if (loaded != null && loaded.containsKey(isu)) return loaded.get(isu);
+        if (loaded == null) {
+            try {
+                final List<StoredClazz> storedClazzes = LabSegment.read(getSegmentPath(labNumber), isu);
+                if (storedClazzes != null) return toLab(isu, labNumber, storedClazzes);
+            } catch (IOException e) {
+                System.err.println("Error loading lab: " + e.getMessage());
+            }
+        }
+        return loadLegacyLab(isu, labNumber);
+    }
+
+    /**
+     * Reads the segment of a lab number once per storage instance.
+     *
+     * @param labNumber the lab number whose segment to read
+     * @return a mutable map of stored labs keyed by ISU
+     */
+    private Map<String, Lab> loadSegment(final int labNumber) {
+        return segmentCache.computeIfAbsent(labNumber, number -> {
+            final Map<String, Lab> labs = new ConcurrentHashMap<>();
+            try {
+                LabSegment.read(getSegmentPath(number)).forEach((isu, storedClazzes) ->
+                        labs.put(isu, toLab(isu, number, storedClazzes)));
+            } catch (IOException e) {
+                System.err.println("Error loading lab segment: " + e.getMessage());
+            }
+            return labs;
+        });
+    }
+
+    /**
+     * Appends a lab stored in the legacy per-class JSON layout to the segment of its lab number.
+     *
+     * <p>
+     * The stored trees are copied as they are, without a round trip through {@link Clazz}.
+     * </p>
+     *
+     * @param isu       the ISU identifier of the lab owner
+     * @param labNumber the number of the lab to migrate
+     * @return the migrated lab, or {@code null} if there is no legacy lab to migrate
+     */
+    private Lab migrateLegacyLab(
+            final String isu,
+            final int labNumber
+    ) {
+        final List<StoredClazz> storedClazzes = loadLegacyStoredClazzes(isu, labNumber);
+        if (storedClazzes == null) return null;
+
+        try {
+            append(isu, labNumber, storedClazzes);
+        } catch (IOException e) {
+            System.err.println("Error migrating lab: " + e.getMessage());
+        }
+        return toLab(isu, labNumber, storedClazzes);
+    }
+
+    private Lab loadLegacyLab(
+            final String isu,
+            final int labNumber
+    ) {
+        final List<StoredClazz> storedClazzes = loadLegacyStoredClazzes(isu, labNumber);
+        return storedClazzes == null
+                ? new Lab(isu, labNumber, null)
+                : toLab(isu, labNumber, storedClazzes);
+    }
+
+    private List<StoredClazz> loadLegacyStoredClazzes(
+            final String isu,
+            final int labNumber
     ) {
         Path labPath = getLabPath(isu, labNumber);
-        if (Files.notExists(labPath)) return new Lab(isu, labNumber, null);
+        if (Files.notExists(labPath)) return null;
 
         try (Stream<Path> files = Files.list(labPath)) {
-            return new Lab(isu, labNumber,
-                    new LinkedList<>(files.map(this::loadNode)
-                            .filter(Optional::isPresent)
-                            .map(Optional::get)
-                            .sorted(Comparator.comparingInt(clazz -> clazz.source().length()))
-                            .toList()));
+            return files
+                    .filter(file -> file.toString().endsWith(".json"))
+                    .map(this::loadNode)
+                    .flatMap(Optional::stream)
+                    .toList();
         } catch (IOException e) {
             System.err.println("Error loading lab: " + e.getMessage());
-            return new Lab(isu, labNumber, new ArrayList<>());
+            return new ArrayList<>();
         }
     }
 
-    private Optional<Clazz> loadNode(final Path file) {
+    private Optional<StoredClazz> loadNode(final Path file) {
         try (var reader = Files.newBufferedReader(file)) {
-            StoredClazz storedClazz = gson.fromJson(reader, StoredClazz.class);
-            return Optional.of(storedClazz.toClazz());
+            return Optional.of(gson.fromJson(reader, StoredClazz.class));
         } catch (IOException e) {
             System.err.println("Error loading node: " + e.getMessage());
             return Optional.empty();
         }
     }
 
+    private static Lab toLab(
+            final String isu,
+            final int labNumber,
+            final List<StoredClazz> storedClazzes
+    ) {
+        return new Lab(isu, labNumber, storedClazzes.stream()
+                .map(StoredClazz::toClazz)
+                .sorted(Comparator.comparingInt(clazz -> clazz.source().length()))
+                .collect(Collectors.toCollection(LinkedList::new)));
+    }
+
     private Path getLabPath(
             final String isu,
             final int labNumber
     ) {
-        return CACHE_ROOT.resolve(isu).resolve(String.valueOf(labNumber));
+        return root.resolve(isu).resolve(String.valueOf(labNumber));
+    }
+
+    /**
+     * Appends a lab to the segment and the fingerprint index of its lab number, invalidating its fingerprints first,
+     * see {@link FingerprintIndex#invalidate}.
+     */
+    private void append(
+            final String isu,
+            final int labNumber,
+            final List<StoredClazz> storedClazzes
+    ) throws IOException {
+        FingerprintIndex.invalidate(getFingerprintPath(labNumber), isu);
+        LabSegment.append(getSegmentPath(labNumber), isu, storedClazzes);
+        FingerprintIndex.append(getFingerprintPath(labNumber), isu, storedClazzes);
+    }
+
+    private Path getSegmentPath(final int labNumber) {
+        return root.resolve(labNumber + ".segment");
+    }
+
+    private Path getFingerprintPath(final int labNumber) {
+        return root.resolve(labNumber + ".fingerprints");
+    }
+
+    private Path getSimilarityPath(final int labNumber) {
+        return root.resolve(labNumber + ".similarity");
     }
 }
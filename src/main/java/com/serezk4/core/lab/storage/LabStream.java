@@ -0,0 +1,145 @@
+package com.serezk4.core.lab.storage;
+
+import com.serezk4.core.lab.model.Lab;
+
+import java.io.IOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Stored labs of a lab number, read in the background and handed over in batches as they arrive.
+ *
+ * <p>
+ * Labs are read and decoded on a virtual thread and put into a queue of at most {@code window} labs. When the
+ * queue is full, reading blocks until the consumer takes labs, so the number of labs that are decoded but not yet
+ * consumed never exceeds the window, whatever the size of the cohort. Reading the next labs overlaps with the
+ * processing of the current batch, and labs the consumer drops after processing are released, so the memory held
+ * by a streaming run is bounded by the window and the batch in progress.
+ * </p>
+ *
+ * <p>
+ * Labs without classes are skipped. A stream is meant to be consumed by a single thread and must be closed to
+ * stop reading early.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>{@code
+ * try (LabStream stream = storage.streamAllByLabNumber(1)) {
+ *     for (List<Lab> batch = stream.nextBatch(); !batch.isEmpty(); batch = stream.nextBatch()) {
+ *         compare(batch);
+ *     }
+ * }
+ * }</pre>
+ *
+ * @see LabStorage#streamAllByLabNumber(int)
+ *
+ * @author serezk4
+ * @version 1.0
+ * @since 1.0
+ */
+public final class LabStream implements AutoCloseable {
+    /**
+     * System property holding the maximum number of labs read ahead of the consumer, {@code 64} if absent.
+     */
+    public static final String WINDOW_PROPERTY = "labguard.load.window";
+
+    private static final int DEFAULT_WINDOW = 64;
+    private static final Lab END = new Lab("", 0, List.of());
+
+    private final int window;
+    private final BlockingQueue<Lab> queue;
+    private final Thread reader;
+    private boolean finished;
+
+    /**
+     * Reads labs into a stream, called on the reading thread.
+     */
+    @FunctionalInterface
+    interface Source {
+        void read(LabStream stream) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Starts reading labs in the background.
+     *
+     * @param window the maximum number of labs read ahead of the consumer (must be positive)
+     * @param source puts the labs into the stream
+     */
+    LabStream(
+            final int window,
+            final Source source
+    ) {
+        if (window < 1) throw new IllegalArgumentException("Window must be positive: " + window);
+        this.window = window;
+        this.queue = new ArrayBlockingQueue<>(window);
+        this.reader = Thread.ofVirtual().name("lab-stream").start(() -> {
+            try {
+                source.read(this);
+            } catch (InterruptedException | ClosedByInterruptException e) {
+                return;
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Error streaming labs: " + e.getMessage());
+            }
+
+            try {
+                queue.put(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    /**
+     * @return the window configured by the {@value #WINDOW_PROPERTY} system property
+     */
+    static int windowFromSystemProperties() {
+        return Integer.getInteger(WINDOW_PROPERTY, DEFAULT_WINDOW);
+    }
+
+    /**
+     * Hands a lab over to the consumer, waiting while the window is full.
+     *
+     * @param lab the lab to hand over, skipped if it has no classes
+     * @throws InterruptedException if the stream was closed while waiting
+     */
+    void put(final Lab lab) throws InterruptedException {
+        if (lab.clazzes() != null && !lab.clazzes().isEmpty()) queue.put(lab);
+    }
+
+    /**
+     * Takes all labs read so far, waiting for at least one.
+     *
+     * @return the next labs, at most the window, or an empty list once all labs have been taken
+     * @throws IllegalStateException if the calling thread was interrupted while waiting
+     */
+    public List<Lab> nextBatch() {
+        if (finished) return List.of();
+
+        final List<Lab> batch = new ArrayList<>();
+        try {
+            batch.add(queue.take());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while streaming labs", e);
+        }
+        queue.drainTo(batch, window - 1);
+
+        if (batch.getLast() == END) {
+            batch.removeLast();
+            finished = true;
+        }
+        return batch;
+    }
+
+    /**
+     * Stops reading. Labs not taken yet are discarded.
+     */
+    @Override
+    public void close() {
+        reader.interrupt();
+        queue.clear();
+    }
+}
@@ -0,0 +1,326 @@
+package com.serezk4.core.lab.storage;
+
+import com.serezk4.core.lab.model.StoredClazz;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Memory-mapped, read-only view of a {@link LabSegment}.
+ *
+ * <p>
+ * Opening a corpus maps the segment file and walks the record headers once to index the latest record of every
+ * ISU. Class trees are exposed as {@link MappedTree}s whose columns are read directly from the mapping, and
+ * sources and Checkstyle reports are only decoded when requested, so the heap footprint of an open corpus is
+ * independent of the size of the stored trees.
+ * </p>
+ *
+ * <p>
+ * The mapping is released by {@link #close()}; any {@link Entry} or {@link MappedTree} obtained from the corpus
+ * must not be used afterwards. An open corpus may be shared between threads.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>{@code
+ * try (MappedCorpus corpus = MappedCorpus.open(segmentPath)) {
+ *     for (MappedCorpus.Entry entry : corpus.entries()) {
+ *         MappedTree tree = entry.tree();
+ *         int nodes = tree.size();
+ *     }
+ * }
+ * }</pre>
+ *
+ * @see LabSegment
+ * @see MappedTree
+ *
+ * @author serezk4
+ * @version 1.0
+ * @since 1.0
+ */
+public final class MappedCorpus implements AutoCloseable {
+    private static final ValueLayout.OfInt INT = MappedTree.INT;
+
+    private final Arena arena;
+    private final MemorySegment segment;
+    private final List<Entry> entries;
+
+    private MappedCorpus(
+            final Arena arena,
+            final MemorySegment segment,
+            final List<Entry> entries
+    ) {
+        this.arena = arena;
+        this.segment = segment;
+        this.entries = entries;
+    }
+
+    /**
+     * Maps a segment file and indexes its records.
+     *
+     * @param path path to the segment file
+     * @return the opened corpus, empty if the segment does not exist
+     * @throws IOException if the segment cannot be mapped or is not a segment file
+     */
+    public static MappedCorpus open(final Path path) throws IOException {
+        final Arena arena = Arena.ofShared();
+        if (Files.notExists(path)) return new MappedCorpus(arena, MemorySegment.NULL, List.of());
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final MemorySegment segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+            LabSegment.checkHeader(segment.asSlice(0, Math.min(segment.byteSize(), LabSegment.HEADER_SIZE))
+                    .asByteBuffer(), path);
+
+            final MappedCorpus corpus = new MappedCorpus(arena, segment, new ArrayList<>());
+            corpus.index(path);
+            return corpus;
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the classes of the latest record of every ISU, in the order the ISUs were first saved.
+     *
+     * @return unmodifiable list of corpus entries
+     */
+    public List<Entry> entries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Releases the mapping.
+     */
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    private void index(final Path path) {
+        final Map<String, List<Entry>> latest = new LinkedHashMap<>();
+        final long length = segment.byteSize();
+
+        long position = LabSegment.HEADER_SIZE;
+        while (length - position >= LabSegment.RECORD_HEADER_SIZE) {
+            final int magic = segment.get(INT, position);
+            final int payloadLength = segment.get(INT, position + Integer.BYTES);
+            if (magic != LabSegment.RECORD_MAGIC || payloadLength < 0
+                    || payloadLength > length - position - LabSegment.RECORD_HEADER_SIZE) {
+                System.err.println("Ignoring truncated segment tail at offset " + position + " in " + path);
+                break;
+            }
+
+            final Cursor cursor = new Cursor(position + LabSegment.RECORD_HEADER_SIZE);
+            final String isu = cursor.string();
+            latest.put(isu, indexRecord(isu, cursor));
+
+            position = LabSegment.align(position + LabSegment.RECORD_HEADER_SIZE + payloadLength);
+        }
+
+        latest.values().forEach(entries::addAll);
+    }
+
+    private List<Entry> indexRecord(
+            final String isu,
+            final Cursor cursor
+    ) {
+        final String[] dictionary = new String[cursor.integer()];
+        for (int i = 0; i < dictionary.length; i++) dictionary[i] = cursor.string();
+
+        final int clazzCount = cursor.integer();
+        final List<Entry> clazzes = new ArrayList<>(clazzCount);
+        for (int i = 0; i < clazzCount; i++) {
+            final String name = cursor.string();
+            final long sourceOffset = cursor.skipString();
+            final long checkstyleOffset = cursor.position;
+            final int warningCount = cursor.integer();
+            for (int w = 0; w < warningCount; w++) cursor.skipString();
+
+            final MemorySegment[] columns = new MemorySegment[LabSegment.COLUMN_SUBTREE_SIZE + 1];
+            final int columnCount = cursor.integer();
+            for (int c = 0; c < columnCount; c++) {
+                final int tag = cursor.integer();
+                final int columnLength = cursor.integer();
+                cursor.position = LabSegment.align(cursor.position);
+                if (tag > 0 && tag < columns.length) columns[tag] = segment.asSlice(cursor.position, columnLength);
+                cursor.position += columnLength;
+            }
+
+            clazzes.add(new Entry(isu, name, sourceOffset, checkstyleOffset, tree(columns, dictionary)));
+        }
+        return clazzes;
+    }
+
+    /**
+     * Creates the tree view of a class. Records written before the parent, first child and subtree size
+     * columns were introduced get these columns derived on the heap from the child counts.
+     */
+    private static MappedTree tree(
+            final MemorySegment[] columns,
+            final String[] dictionary
+    ) {
+        final MemorySegment labels = columns[LabSegment.COLUMN_LABEL] != null
+                ? columns[LabSegment.COLUMN_LABEL]
+                : MemorySegment.NULL;
+
+        if (columns[LabSegment.COLUMN_PARENT] == null
+                || columns[LabSegment.COLUMN_FIRST_CHILD] == null
+                || columns[LabSegment.COLUMN_SUBTREE_SIZE] == null) {
+            final int[] childCounts = columns[LabSegment.COLUMN_CHILD_COUNT] != null
+                    ? columns[LabSegment.COLUMN_CHILD_COUNT].toArray(INT)
+                    : new int[0];
+            final int[] parents = LabSegment.parents(childCounts);
+            columns[LabSegment.COLUMN_PARENT] = heapColumn(parents);
+            columns[LabSegment.COLUMN_FIRST_CHILD] = heapColumn(LabSegment.firstChildren(childCounts));
+            columns[LabSegment.COLUMN_SUBTREE_SIZE] = heapColumn(LabSegment.subtreeSizes(parents));
+        }
+
+        return new MappedTree(
+                labels,
+                columns[LabSegment.COLUMN_PARENT],
+                columns[LabSegment.COLUMN_FIRST_CHILD],
+                columns[LabSegment.COLUMN_SUBTREE_SIZE],
+                dictionary
+        );
+    }
+
+    private static MemorySegment heapColumn(final int[] values) {
+        final MemorySegment column = MemorySegment.ofArray(new byte[values.length * Integer.BYTES]);
+        for (int i = 0; i < values.length; i++) column.setAtIndex(INT, i, values[i]);
+        return column;
+    }
+
+    private String stringAt(final long offset) {
+        final int byteLength = segment.get(INT, offset);
+        return new String(
+                segment.asSlice(offset + Integer.BYTES, byteLength).toArray(ValueLayout.JAVA_BYTE),
+                StandardCharsets.UTF_8
+        );
+    }
+
+    /**
+     * A stored class of the corpus.
+     */
+    public final class Entry {
+        private final String isu;
+        private final String name;
+        private final long sourceOffset;
+        private final long checkstyleOffset;
+        private final MappedTree tree;
+
+        private Entry(
+                final String isu,
+                final String name,
+                final long sourceOffset,
+                final long checkstyleOffset,
+                final MappedTree tree
+        ) {
+            this.isu = isu;
+            this.name = name;
+            this.sourceOffset = sourceOffset;
+            this.checkstyleOffset = checkstyleOffset;
+            this.tree = tree;
+        }
+
+        /**
+         * @return the ISU identifier of the lab owner
+         */
+        public String isu() {
+            return isu;
+        }
+
+        /**
+         * @return the name of the class, typically derived from the file name
+         */
+        public String name() {
+            return name;
+        }
+
+        /**
+         * @return the tree of the class, viewed over the mapping
+         */
+        public MappedTree tree() {
+            return tree;
+        }
+
+        /**
+         * Decodes the raw source of the class from the mapping.
+         *
+         * @return the raw source code of the class
+         */
+        public String source() {
+            return stringAt(sourceOffset);
+        }
+
+        /**
+         * Decodes the Checkstyle report of the class from the mapping.
+         *
+         * @return the Checkstyle warnings of the class
+         */
+        public List<String> checkstyle() {
+            final Cursor cursor = new Cursor(checkstyleOffset);
+            final int warningCount = cursor.integer();
+            final List<String> warnings = new ArrayList<>(warningCount);
+            for (int i = 0; i < warningCount; i++) warnings.add(cursor.string());
+            return warnings;
+        }
+
+        /**
+         * Materialises the entry as a heap {@link StoredClazz}, building its {@link com.serezk4.core.apted.node.Node}
+         * tree. Only needed by consumers that cannot work on {@link MappedTree} directly.
+         *
+         * @return the entry in storage form
+         */
+        public StoredClazz toStoredClazz() {
+            final int[] childCounts = new int[tree.size()];
+            final int[] labels = new int[tree.size()];
+            for (int i = 0; i < tree.size(); i++) {
+                labels[i] = tree.label(i);
+                if (tree.parent(i) >= 0) childCounts[tree.parent(i)]++;
+            }
+            final String[] dictionary = tree.dictionary().toArray(String[]::new);
+            return new StoredClazz(name, LabSegment.rebuild(labels, childCounts, dictionary), source(), checkstyle());
+        }
+    }
+
+    /**
+     * Sequential reader over the mapping used while indexing records.
+     */
+    private final class Cursor {
+        private long position;
+
+        private Cursor(final long position) {
+            this.position = position;
+        }
+
+        private int integer() {
+            final int value = segment.get(INT, position);
+            position += Integer.BYTES;
+            return value;
+        }
+
+        private String string() {
+            final String value = stringAt(position);
+            skipString();
+            return value;
+        }
+
+        private long skipString() {
+            final long start = position;
+            position += Integer.BYTES + (long) segment.get(INT, position);
+            return start;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.serezk4.core.lab.storage;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Read-only view of a stored class tree laid out as flat preorder int columns.
+ *
+ * <p>
+ * Every column is addressed by the left-to-right preorder id of a node (starting with {@code 0}) and is read
+ * directly from the {@link MemorySegment} it lives in, normally the memory-mapped {@link LabSegment} file.
+ * No {@link com.serezk4.core.apted.node.Node} objects are created; labels are resolved through the dictionary
+ * of the lab record the tree belongs to.
+ * </p>
+ *
+ * <p>
+ * A view is only valid while the {@link MappedCorpus} it was obtained from is open.
+ * </p>
+ *
+ * @see MappedCorpus
+ *
+ * @author serezk4
+ * @version 1.0
+ * @since 1.0
+ */
+public final class MappedTree {
+    static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+    private final MemorySegment labels;
+    private final MemorySegment parents;
+    private final MemorySegment firstChildren;
+    private final MemorySegment subtreeSizes;
+    private final String[] dictionary;
+    private final int size;
+
+    MappedTree(
+            final MemorySegment labels,
+            final MemorySegment parents,
+            final MemorySegment firstChildren,
+            final MemorySegment subtreeSizes,
+            final String[] dictionary
+    ) {
+        this.labels = labels;
+        this.parents = parents;
+        this.firstChildren = firstChildren;
+        this.subtreeSizes = subtreeSizes;
+        this.dictionary = dictionary;
+        this.size = (int) (labels.byteSize() / Integer.BYTES);
+    }
+
+    /**
+     * Returns the number of nodes in the tree.
+     *
+     * @return number of nodes, {@code 0} for a class without a tree
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the label id of a node. Ids index the dictionary of the lab record, see {@link #labelName(int)}.
+     *
+     * @param preorder left-to-right preorder id of the node
+     * @return label id of the node
+     */
+    public int label(final int preorder) {
+        return labels.getAtIndex(INT, preorder);
+    }
+
+    /**
+     * Returns the label of a node.
+     *
+     * @param preorder left-to-right preorder id of the node
+     * @return label of the node
+     */
+    public String labelName(final int preorder) {
+        return dictionary[label(preorder)];
+    }
+
+    /**
+     * Returns the parent of a node.
+     *
+     * @param preorder left-to-right preorder id of the node
+     * @return preorder id of the parent, or {@code -1} for the root
+     */
+    public int parent(final int preorder) {
+        return parents.getAtIndex(INT, preorder);
+    }
+
+    /**
+     * Returns the first child of a node.
+     *
+     * @param preorder left-to-right preorder id of the node
+     * @return preorder id of the leftmost child, or {@code -1} for a leaf
+     */
+    public int firstChild(final int preorder) {
+        return firstChildren.getAtIndex(INT, preorder);
+    }
+
+    /**
+     * Returns the size of the subtree rooted at a node, including the node itself.
+     *
+     * @param preorder left-to-right preorder id of the node
+     * @return subtree size of the node
+     */
+    public int subtreeSize(final int preorder) {
+        return subtreeSizes.getAtIndex(INT, preorder);
+    }
+
+    /**
+     * Returns the next sibling of a node.
+     *
+     * @param preorder left-to-right preorder id of the node
+     * @return preorder id of the right sibling, or {@code -1} if the node is the last child or the root
+     */
+    public int nextSibling(final int preorder) {
+        final int parent = parent(preorder);
+        if (parent < 0) return -1;
+        final int next = preorder + subtreeSize(preorder);
+        return next < parent + subtreeSize(parent) ? next : -1;
+    }
+
+    /**
+     * Returns the label dictionary of the lab record this tree belongs to.
+     *
+     * @return read-only view of the dictionary, indexed by label id
+     */
+    public List<String> dictionary() {
+        return Collections.unmodifiableList(Arrays.asList(dictionary));
+    }
+}
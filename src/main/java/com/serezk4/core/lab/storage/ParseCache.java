@@ -0,0 +1,241 @@
+package com.serezk4.core.lab.storage;
+
+import com.serezk4.core.apted.node.Node;
+import com.serezk4.core.apted.node.StringNodeData;
+import com.serezk4.core.lab.analyze.checkstyle.CheckstyleAnalyzer;
+import com.serezk4.core.lab.model.ContentHash;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Content-addressed store of parse results shared by all students and runs.
+ *
+ * <p>
+ * Students frequently submit files that are identical to files seen before. Parse trees are therefore stored
+ * under the {@link ContentHash} of the normalized source (see {@link LabStorage#normalize(String)}), so a file is
+ * lexed and parsed only once no matter how many students submit it. Checkstyle reports depend on comments and
+ * formatting, which normalization removes, so they are stored under the hash of the raw source instead.
+ * </p>
+ *
+ * <p>
+ * Every entry is a small immutable object file under {@code objects/}, fanned out by the first two hex digits
+ * of its hash. Trees use the same preorder label and child count columns as {@link LabSegment}. Objects are
+ * written to a temporary file and atomically moved into place, so concurrent writers and crashes never expose
+ * partial objects; an object that cannot be decoded is treated as missing. Entries are additionally kept in
+ * memory for the lifetime of the cache.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>{@code
+ * ParseCache cache = new ParseCache(root.resolve("objects"));
+ * Node<StringNodeData> tree = cache.findTree(ContentHash.of(normalizedCode))
+ *         .orElseGet(() -> parse(normalizedCode));
+ * }</pre>
+ *
+ * @see LabStorage
+ * @see ContentHash
+ *
+ * @author serezk4
+ * @version 1.0
+ * @since 1.0
+ */
+public final class ParseCache {
+    private static final int TREE_MAGIC = 0x4C475452; // "LGTR"
+    private static final int CHECKSTYLE_MAGIC = 0x4C474353; // "LGCS"
+    private static final short VERSION = 1;
+
+    private final Path root;
+    private final Map<ContentHash, Node<StringNodeData>> trees = new ConcurrentHashMap<>();
+    private final Map<ContentHash, List<String>> checkstyleReports = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a cache storing its objects below the given directory.
+     *
+     * @param root the object directory, created on first write
+     */
+    public ParseCache(final Path root) {
+        this.root = root;
+    }
+
+    /**
+     * Looks up the tree of a normalized source.
+     *
+     * @param normalizedHash the {@link ContentHash} of the normalized source
+     * @return the cached tree, or an empty {@link Optional} if the source has not been parsed before
+     */
+    public Optional<Node<StringNodeData>> findTree(final ContentHash normalizedHash) {
+        final Node<StringNodeData> cached = trees.get(normalizedHash);
+        if (cached != null) return Optional.of(cached);
+
+        return read(objectPath(normalizedHash, ".tree"), TREE_MAGIC, ParseCache::decodeTree)
+                .map(tree -> {
+                    final Node<StringNodeData> previous = trees.putIfAbsent(normalizedHash, tree);
+                    return previous != null ? previous : tree;
+                });
+    }
+
+    /**
+     * Stores the tree of a normalized source.
+     *
+     * @param normalizedHash the {@link ContentHash} of the normalized source
+     * @param tree           the tree of the source, ignored if {@code null}
+     */
+    public void putTree(
+            final ContentHash normalizedHash,
+            final Node<StringNodeData> tree
+    ) {
+        if (tree == null || trees.putIfAbsent(normalizedHash, tree) != null) return;
+        write(objectPath(normalizedHash, ".tree"), TREE_MAGIC, out -> encodeTree(out, tree));
+    }
+
+    /**
+     * Returns the Checkstyle report of a raw source, running the analysis only if the source has not been
+     * analyzed before.
+     *
+     * <p>
+     * Reports of failed analyses, see {@link CheckstyleAnalyzer#isFailure(List)}, are returned but not cached, so
+     * the source is analyzed again next time.
+     * </p>
+     *
+     * @param sourceHash the {@link ContentHash} of the raw source
+     * @param analyze    runs Checkstyle on the source on a cache miss
+     * @return the Checkstyle warnings of the source
+     */
+    public List<String> checkstyle(
+            final ContentHash sourceHash,
+            final Supplier<List<String>> analyze
+    ) {
+        final List<String> cached = checkstyleReports.get(sourceHash);
+        if (cached != null) return cached;
+
+        final Path path = objectPath(sourceHash, ".checkstyle");
+        final Optional<List<String>> stored = read(path, CHECKSTYLE_MAGIC, ParseCache::decodeCheckstyle);
+        if (stored.isPresent()) {
+            final List<String> previous = checkstyleReports.putIfAbsent(sourceHash, stored.get());
+            return previous != null ? previous : stored.get();
+        }
+
+        final List<String> report = List.copyOf(analyze.get());
+        if (CheckstyleAnalyzer.isFailure(report)) return report;
+        if (checkstyleReports.putIfAbsent(sourceHash, report) == null) {
+            write(path, CHECKSTYLE_MAGIC, out -> encodeCheckstyle(out, report));
+        }
+        return report;
+    }
+
+    private Path objectPath(
+            final ContentHash hash,
+            final String extension
+    ) {
+        final String hex = hash.toString();
+        return root.resolve(hex.substring(0, 2)).resolve(hex + extension);
+    }
+
+    private static <T> Optional<T> read(
+            final Path path,
+            final int magic,
+            final Decoder<T> decoder
+    ) {
+        if (Files.notExists(path)) return Optional.empty();
+
+        try {
+            final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+            if (buffer.getInt() != magic || buffer.getShort() != VERSION) return Optional.empty();
+            buffer.getShort();
+            return Optional.of(decoder.decode(buffer));
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error reading parse cache object " + path + ": " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private static void write(
+            final Path path,
+            final int magic,
+            final Encoder encoder
+    ) {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(magic);
+            out.writeShort(VERSION);
+            out.writeShort(0);
+            encoder.encode(out);
+
+            Files.createDirectories(path.getParent());
+            final Path temp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+            Files.write(temp, bytes.toByteArray());
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing parse cache object " + path + ": " + e.getMessage());
+        }
+    }
+
+    private static void encodeTree(
+            final DataOutputStream out,
+            final Node<StringNodeData> tree
+    ) throws IOException {
+        final Map<String, Integer> dictionary = new LinkedHashMap<>();
+        final int[][] columns = LabSegment.flatten(tree, dictionary);
+
+        out.writeInt(dictionary.size());
+        for (String label : dictionary.keySet()) LabSegment.writeString(out, label);
+
+        out.writeInt(columns[0].length);
+        for (int label : columns[0]) out.writeInt(label);
+        for (int childCount : columns[1]) out.writeInt(childCount);
+    }
+
+    private static Node<StringNodeData> decodeTree(final ByteBuffer buffer) {
+        final String[] dictionary = new String[buffer.getInt()];
+        for (int i = 0; i < dictionary.length; i++) dictionary[i] = LabSegment.readString(buffer);
+
+        final int size = buffer.getInt();
+        final int[] labels = LabSegment.readInts(buffer, size * Integer.BYTES);
+        final int[] childCounts = LabSegment.readInts(buffer, size * Integer.BYTES);
+        return LabSegment.rebuild(labels, childCounts, dictionary);
+    }
+
+    private static void encodeCheckstyle(
+            final DataOutputStream out,
+            final List<String> report
+    ) throws IOException {
+        out.writeInt(report.size());
+        for (String warning : report) LabSegment.writeString(out, warning);
+    }
+
+    private static List<String> decodeCheckstyle(final ByteBuffer buffer) {
+        final int warningCount = buffer.getInt();
+        final List<String> report = new ArrayList<>(warningCount);
+        for (int i = 0; i < warningCount; i++) report.add(LabSegment.readString(buffer));
+        return List.copyOf(report);
+    }
+
+    @FunctionalInterface
+    private interface Encoder {
+        void encode(DataOutputStream out) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface Decoder<T> {
+        T decode(ByteBuffer buffer);
+    }
+}
@@ -0,0 +1,271 @@
+package com.serezk4.core.lab.storage;
+
+import com.serezk4.core.lab.model.ContentHash;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleSupplier;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent store of pairwise similarity scores that survives between runs.
+ *
+ * <p>
+ * A score is keyed by the {@link ContentHash} of both compared classes and by the version of the checker that
+ * produced it, so re-checking unchanged sources costs a map lookup, while changing the checker or its cost
+ * model (and therefore its version) naturally invalidates old scores. Scores are expected to be symmetric, so a pair
+ * is keyed by its two hashes in ascending order and is found whichever class of the pair is the source.
+ * </p>
+ *
+ * <p>
+ * The store file is an append-only log of fixed-size, checksummed records. The whole log is loaded into memory
+ * when the store is opened; new scores are buffered and appended in batches under an exclusive file lock, so
+ * several threads and several processes may write to the same store concurrently. A record torn by a crash is
+ * ignored on the next load and cut off before the next batch is appended, so later records stay aligned to the
+ * record size; records corrupted in place fail their checksum and are ignored. Scores are flushed on
+ * {@link #close()}.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>{@code
+ * try (SimilarityStore store = SimilarityStore.open(path)) {
+ *     double similarity = store.computeIfAbsent(
+ *             ContentHash.of(source.normalizedSource()),
+ *             ContentHash.of(target.normalizedSource()),
+ *             checker.version(),
+ *             () -> checker.detect(source, target));
+ * }
+ * }</pre>
+ *
+ * @see ContentHash
+ * @see com.serezk4.core.lab.check.Checker#version()
+ *
+ * @author serezk4
+ * @version 1.0
+ * @since 1.0
+ */
+public final class SimilarityStore implements AutoCloseable {
+    private static final int MAGIC = 0x4C47534D; // "LGSM"
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+
+    /**
+     * source hash (16) + target hash (16) + checker version (8) + similarity (8) + CRC32 (4) + padding (4).
+     */
+    private static final int RECORD_SIZE = 56;
+    private static final int CHECKSUMMED_SIZE = 48;
+    private static final int FLUSH_THRESHOLD = 4096;
+
+    private final Path path;
+    private final Map<Key, Double> similarities = new ConcurrentHashMap<>();
+    private final Map<String, Long> versionIds = new ConcurrentHashMap<>();
+    private final Queue<ByteBuffer> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    private SimilarityStore(final Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Opens the store at the given path and loads all previously persisted scores.
+     *
+     * @param path path to the store file, created on first flush if it does not exist
+     * @return the opened store
+     * @throws IOException if an existing store cannot be read or is not a similarity store
+     */
+    public static SimilarityStore open(final Path path) throws IOException {
+        final SimilarityStore store = new SimilarityStore(path);
+        if (Files.exists(path)) store.load();
+        return store;
+    }
+
+    /**
+     * Returns the persisted score of a pair, computing and persisting it if it is not known yet.
+     *
+     * <p>
+     * The computation runs outside of any lock; if two threads compute the same pair concurrently, both results
+     * are equal and only the first one is persisted. The order of {@code source} and {@code target} does not
+     * matter: the score of a pair computed in one direction is returned for the other direction too.
+     * </p>
+     *
+     * @param source  content hash of the source class
+     * @param target  content hash of the target class
+     * @param version version of the checker computing the score
+     * @param compute computes the score on a cache miss
+     * @return the similarity score of the pair
+     */
+    public double computeIfAbsent(
+            final ContentHash source,
+            final ContentHash target,
+            final String version,
+            final DoubleSupplier compute
+    ) {
+        final Key key = key(source, target, versionIds.computeIfAbsent(version, SimilarityStore::versionId));
+
+        final Double cached = similarities.get(key);
+        if (cached != null) return cached;
+
+        final double similarity = compute.getAsDouble();
+        if (similarities.putIfAbsent(key, similarity) == null) enqueue(key, similarity);
+        return similarity;
+    }
+
+    /**
+     * Returns the number of scores known to the store.
+     *
+     * @return number of cached pairs, including pairs persisted by earlier runs
+     */
+    public int size() {
+        return similarities.size();
+    }
+
+    /**
+     * Appends all buffered scores to the store file.
+     *
+     * @throws IOException if the store file cannot be written
+     */
+    public synchronized void flush() throws IOException {
+        if (pending.isEmpty()) return;
+
+        final ByteBuffer batch = ByteBuffer.allocate(pendingCount.get() * RECORD_SIZE + RECORD_SIZE);
+        for (ByteBuffer record; batch.remaining() >= RECORD_SIZE && (record = pending.poll()) != null; ) {
+            batch.put(record);
+            pendingCount.decrementAndGet();
+        }
+        batch.flip();
+
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = channel.lock()) {
+            final long size = channel.size();
+            final long end = size < HEADER_SIZE ? 0 : size - (size - HEADER_SIZE) % RECORD_SIZE;
+            if (end < size) {
+                System.err.println("Truncating torn similarity record at offset " + end + " in " + path);
+                channel.truncate(end);
+            }
+
+            channel.position(end);
+            if (end == 0) writeFully(channel, header());
+            writeFully(channel, batch);
+        }
+    }
+
+    /**
+     * Flushes buffered scores.
+     *
+     * @throws IOException if the store file cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    private void enqueue(
+            final Key key,
+            final double similarity
+    ) {
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE)
+                .putLong(key.source().high())
+                .putLong(key.source().low())
+                .putLong(key.target().high())
+                .putLong(key.target().low())
+                .putLong(key.version())
+                .putDouble(similarity);
+        record.putInt(checksum(record.array()));
+        record.putInt(0).flip();
+
+        pending.add(record);
+        if (pendingCount.incrementAndGet() < FLUSH_THRESHOLD) return;
+
+        try {
+            flush();
+        } catch (IOException e) {
+            System.err.println("Error writing similarity store: " + e.getMessage());
+        }
+    }
+
+    private void load() throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a similarity store: " + path);
+        }
+        final short version = buffer.getShort();
+        if (version != VERSION) throw new IOException("Unsupported similarity store version " + version + ": " + path);
+        buffer.getShort();
+
+        int corrupted = 0;
+        final byte[] record = new byte[RECORD_SIZE];
+        while (buffer.remaining() >= RECORD_SIZE) {
+            buffer.get(record);
+            final ByteBuffer fields = ByteBuffer.wrap(record);
+            if (fields.getInt(CHECKSUMMED_SIZE) != checksum(record)) {
+                corrupted++;
+                continue;
+            }
+
+            similarities.put(key(
+                    new ContentHash(fields.getLong(), fields.getLong()),
+                    new ContentHash(fields.getLong(), fields.getLong()),
+                    fields.getLong()
+            ), fields.getDouble());
+        }
+
+        if (corrupted > 0) System.err.println("Ignored " + corrupted + " corrupted similarity records in " + path);
+    }
+
+    private static ByteBuffer header() {
+        return ByteBuffer.allocate(HEADER_SIZE)
+                .putInt(MAGIC)
+                .putShort(VERSION)
+                .putShort((short) 0)
+                .flip();
+    }
+
+    private static int checksum(final byte[] record) {
+        final CRC32 crc = new CRC32();
+        crc.update(record, 0, CHECKSUMMED_SIZE);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Keys a pair by its hashes in ascending order, so that both directions of a pair share one key.
+     */
+    private static Key key(
+            final ContentHash source,
+            final ContentHash target,
+            final long version
+    ) {
+        final int order = source.high() != target.high()
+                ? Long.compareUnsigned(source.high(), target.high())
+                : Long.compareUnsigned(source.low(), target.low());
+        return order <= 0 ? new Key(source, target, version) : new Key(target, source, version);
+    }
+
+    private static long versionId(final String version) {
+        return ContentHash.of(version).high();
+    }
+
+    private static void writeFully(
+            final FileChannel channel,
+            final ByteBuffer buffer
+    ) throws IOException {
+        while (buffer.hasRemaining()) channel.write(buffer);
+    }
+
+    private record Key(
+            ContentHash source,
+            ContentHash target,
+            long version
+    ) {
+    }
+}
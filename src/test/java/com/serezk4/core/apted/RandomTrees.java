@@ -0,0 +1,130 @@
+package com.serezk4.core.apted;
+
+import com.serezk4.core.apted.node.Node;
+import com.serezk4.core.apted.node.StringNodeData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Seeded random trees with parse tree labels for the APTED and filter tests.
+ */
+public final class RandomTrees {
+    private static final List<String> LABELS = List.of(
+            "BlockContext",
+            "StatementContext",
+            "ExpressionContext",
+            "PrimaryContext",
+            "IdentifierContext",
+            "MethodDeclarationContext",
+            "FormalParametersContext",
+            "LocalVariableDeclarationContext"
+    );
+
+    private RandomTrees() {
+    }
+
+    /**
+     * Builds a tree by attaching every new node to a random earlier node.
+     *
+     * @param random the source of randomness
+     * @param size   the number of nodes, at least one
+     * @return the root of the tree
+     */
+    public static Node<StringNodeData> tree(
+            final Random random,
+            final int size
+    ) {
+        final List<Node<StringNodeData>> nodes = new ArrayList<>();
+        nodes.add(node("CompilationUnitContext"));
+        for (int i = 1; i < size; i++) {
+            final Node<StringNodeData> node = node(LABELS.get(random.nextInt(LABELS.size())));
+            nodes.get(random.nextInt(nodes.size())).addChild(node);
+            nodes.add(node);
+        }
+        return nodes.getFirst();
+    }
+
+    /**
+     * Copies a tree and applies random renames, deletions and insertions to the copy.
+     *
+     * @param random the source of randomness
+     * @param tree   the tree to copy, left unchanged
+     * @param edits  the number of edit operations to apply
+     * @return the root of the edited copy
+     */
+    public static Node<StringNodeData> edit(
+            final Random random,
+            final Node<StringNodeData> tree,
+            final int edits
+    ) {
+        final Node<StringNodeData> copy = copy(tree);
+        for (int edit = 0; edit < edits; edit++) {
+            final List<Node<StringNodeData>> nodes = preorder(copy);
+            final Node<StringNodeData> node = nodes.get(random.nextInt(nodes.size()));
+            switch (random.nextInt(3)) {
+                case 0 -> node.setNodeData(new StringNodeData(LABELS.get(random.nextInt(LABELS.size()))));
+                case 1 -> {
+                    // Replaces a child of the node by the children of that child
+                    if (node.getChildren().isEmpty()) continue;
+                    final int index = random.nextInt(node.getChildren().size());
+                    final Node<StringNodeData> removed = node.getChildren().remove(index);
+                    node.getChildren().addAll(index, removed.getChildren());
+                }
+                default -> {
+                    // Moves a range of children of the node below a new child
+                    final int from = random.nextInt(node.getChildren().size() + 1);
+                    final int to = from + random.nextInt(node.getChildren().size() - from + 1);
+                    final Node<StringNodeData> inserted = node(LABELS.get(random.nextInt(LABELS.size())));
+                    final List<Node<StringNodeData>> range = node.getChildren().subList(from, to);
+                    inserted.getChildren().addAll(range);
+                    range.clear();
+                    node.getChildren().add(from, inserted);
+                }
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Builds a chain of nodes, each the only child of the previous one.
+     *
+     * @param size the number of nodes
+     * @return the root of the chain
+     */
+    public static Node<StringNodeData> chain(final int size) {
+        final Node<StringNodeData> root = node("CompilationUnitContext");
+        Node<StringNodeData> last = root;
+        for (int i = 1; i < size; i++) {
+            final Node<StringNodeData> node = node(LABELS.get(i % LABELS.size()));
+            last.addChild(node);
+            last = node;
+        }
+        return root;
+    }
+
+    /**
+     * @return the nodes of a tree in left-to-right preorder
+     */
+    public static List<Node<StringNodeData>> preorder(final Node<StringNodeData> tree) {
+        final List<Node<StringNodeData>> nodes = new ArrayList<>();
+        final List<Node<StringNodeData>> stack = new ArrayList<>(List.of(tree));
+        while (!stack.isEmpty()) {
+            final Node<StringNodeData> node = stack.removeLast();
+            nodes.add(node);
+            for (int i = node.getChildren().size() - 1; i >= 0; i--) stack.add(node.getChildren().get(i));
+        }
+        return nodes;
+    }
+
+    private static Node<StringNodeData> copy(final Node<StringNodeData> tree) {
+        final Node<StringNodeData> copy = node(tree.getNodeData().getLabel());
+        for (Node<StringNodeData> child : tree.getChildren()) copy.addChild(copy(child));
+        return copy;
+    }
+
+    private static Node<StringNodeData> node(final String label) {
+        return new Node<>(new StringNodeData(label));
+    }
+}
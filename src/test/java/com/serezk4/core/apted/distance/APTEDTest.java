@@ -0,0 +1,171 @@
+package com.serezk4.core.apted.distance;
+
+import com.serezk4.core.apted.RandomTrees;
+import com.serezk4.core.apted.costmodel.CostModel;
+import com.serezk4.core.apted.costmodel.StringUnitCostModel;
+import com.serezk4.core.apted.costmodel.WeightedCostModel;
+import com.serezk4.core.apted.node.FlatTree;
+import com.serezk4.core.apted.node.Node;
+import com.serezk4.core.apted.node.NodeIndexer;
+import com.serezk4.core.apted.node.StringNodeData;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class APTEDTest {
+    private static final int PAIRS = 300;
+
+    @Test
+    void unitCostDistanceMatchesZhangShasha() {
+        assertMatchesZhangShasha(new StringUnitCostModel(), new Random(1));
+    }
+
+    @Test
+    void weightedDistanceMatchesZhangShasha() {
+        assertMatchesZhangShasha(new WeightedCostModel(), new Random(2));
+    }
+
+    @Test
+    void boundedDistanceIsExactWithinBound() {
+        final WeightedCostModel costModel = new WeightedCostModel();
+        final BoundedTED<WeightedCostModel, StringNodeData> bounded = new BoundedTED<>(costModel);
+        final Random random = new Random(3);
+
+        int aboveBound = 0;
+        for (int pair = 0; pair < PAIRS; pair++) {
+            final Node<StringNodeData> source = RandomTrees.tree(random, 1 + random.nextInt(40));
+            final Node<StringNodeData> target = random.nextBoolean()
+                    ? RandomTrees.edit(random, source, random.nextInt(8))
+                    : RandomTrees.tree(random, 1 + random.nextInt(40));
+            final NodeIndexer<StringNodeData, WeightedCostModel> it1 =
+                    new NodeIndexer<>(FlatTree.of(source), costModel);
+            final NodeIndexer<StringNodeData, WeightedCostModel> it2 =
+                    new NodeIndexer<>(FlatTree.of(target), costModel);
+
+            final float expected = zhangShasha(costModel, source, target);
+            assertClose(expected, bounded.computeEditDistance(it1, it2));
+
+            for (float maxCost : new float[]{expected, expected * 1.5f, expected * 0.5f, expected - 1, 0}) {
+                final float distance = bounded.computeEditDistance(it1, it2, maxCost);
+                if (distance == BoundedTED.ABOVE_BOUND) {
+                    aboveBound++;
+                    assertTrue(expected > maxCost, "pruned " + expected + " at bound " + maxCost);
+                } else {
+                    assertTrue(expected <= maxCost + 1e-3f * Math.max(1, maxCost), "kept " + expected
+                            + " at bound " + maxCost);
+                    assertClose(expected, distance);
+                }
+            }
+        }
+        assertTrue(aboveBound > 0, "no pair exceeded its bound");
+    }
+
+    private static <C extends CostModel<StringNodeData>> void assertMatchesZhangShasha(
+            final C costModel,
+            final Random random
+    ) {
+        // One engine of each kind for all pairs, so scratch memory sized for a large pair is reused by smaller ones
+        final APTED<C, StringNodeData> apted = new APTED<>(costModel);
+        final APTED<C, StringNodeData> flatApted = new APTED<>(costModel, new APTEDWorkspace());
+
+        for (int pair = 0; pair < PAIRS; pair++) {
+            final Node<StringNodeData> source = RandomTrees.tree(random, 1 + random.nextInt(40));
+            final Node<StringNodeData> target = random.nextBoolean()
+                    ? RandomTrees.edit(random, source, random.nextInt(8))
+                    : RandomTrees.tree(random, 1 + random.nextInt(40));
+
+            final float expected = zhangShasha(costModel, source, target);
+            assertClose(expected, apted.computeEditDistance(source, target));
+            assertClose(expected, flatApted.computeEditDistance(FlatTree.of(source), FlatTree.of(target)));
+        }
+    }
+
+    private static void assertClose(
+            final float expected,
+            final float actual
+    ) {
+        assertEquals(expected, actual, 1e-3 * Math.max(1, expected));
+    }
+
+    /**
+     * Computes the tree edit distance with the algorithm of Zhang and Shasha, directly on the nodes.
+     */
+    private static <C extends CostModel<StringNodeData>> float zhangShasha(
+            final C costModel,
+            final Node<StringNodeData> source,
+            final Node<StringNodeData> target
+    ) {
+        final List<Node<StringNodeData>> nodes1 = new ArrayList<>();
+        final List<Node<StringNodeData>> nodes2 = new ArrayList<>();
+        final List<Integer> leftmost1 = new ArrayList<>();
+        final List<Integer> leftmost2 = new ArrayList<>();
+        postorder(source, nodes1, leftmost1);
+        postorder(target, nodes2, leftmost2);
+
+        final float[][] treeDistance = new float[nodes1.size()][nodes2.size()];
+        for (int keyroot1 : keyroots(leftmost1)) {
+            for (int keyroot2 : keyroots(leftmost2)) {
+                final int l1 = leftmost1.get(keyroot1);
+                final int l2 = leftmost2.get(keyroot2);
+                final float[][] forest = new float[keyroot1 - l1 + 2][keyroot2 - l2 + 2];
+                for (int x = 1; x < forest.length; x++) {
+                    forest[x][0] = forest[x - 1][0] + costModel.del(nodes1.get(l1 + x - 1));
+                }
+                for (int y = 1; y < forest[0].length; y++) {
+                    forest[0][y] = forest[0][y - 1] + costModel.ins(nodes2.get(l2 + y - 1));
+                }
+                for (int x = 1; x < forest.length; x++) {
+                    for (int y = 1; y < forest[0].length; y++) {
+                        final int a = l1 + x - 1;
+                        final int b = l2 + y - 1;
+                        final float delete = forest[x - 1][y] + costModel.del(nodes1.get(a));
+                        final float insert = forest[x][y - 1] + costModel.ins(nodes2.get(b));
+                        if (leftmost1.get(a) == l1 && leftmost2.get(b) == l2) {
+                            final float rename = forest[x - 1][y - 1] + costModel.ren(nodes1.get(a), nodes2.get(b));
+                            forest[x][y] = Math.min(Math.min(delete, insert), rename);
+                            treeDistance[a][b] = forest[x][y];
+                        } else {
+                            final float match = forest[leftmost1.get(a) - l1][leftmost2.get(b) - l2]
+                                    + treeDistance[a][b];
+                            forest[x][y] = Math.min(Math.min(delete, insert), match);
+                        }
+                    }
+                }
+            }
+        }
+        return treeDistance[nodes1.size() - 1][nodes2.size() - 1];
+    }
+
+    /**
+     * Lists the nodes in postorder together with the postorder index of their leftmost leaf.
+     */
+    private static void postorder(
+            final Node<StringNodeData> node,
+            final List<Node<StringNodeData>> nodes,
+            final List<Integer> leftmost
+    ) {
+        final int first = nodes.size();
+        for (Node<StringNodeData> child : node.getChildren()) postorder(child, nodes, leftmost);
+        leftmost.add(node.getChildren().isEmpty() ? first : leftmost.get(first));
+        nodes.add(node);
+    }
+
+    /**
+     * @return the nodes that are the highest ones with their leftmost leaf, in increasing postorder
+     */
+    private static List<Integer> keyroots(final List<Integer> leftmost) {
+        final List<Integer> keyroots = new ArrayList<>();
+        for (int i = 0; i < leftmost.size(); i++) {
+            final int node = i;
+            final boolean highest = leftmost.subList(i + 1, leftmost.size()).stream()
+                    .noneMatch(other -> other.equals(leftmost.get(node)));
+            if (highest) keyroots.add(i);
+        }
+        return keyroots;
+    }
+}
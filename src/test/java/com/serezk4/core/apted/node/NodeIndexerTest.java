@@ -0,0 +1,277 @@
+package com.serezk4.core.apted.node;
+
+import com.serezk4.core.apted.RandomTrees;
+import com.serezk4.core.apted.costmodel.CostModel;
+import com.serezk4.core.apted.costmodel.WeightedCostModel;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NodeIndexerTest {
+    private static final WeightedCostModel COST_MODEL = new WeightedCostModel();
+
+    @Test
+    void randomTreesMatchRecursiveIndexing() {
+        final Random random = new Random(4);
+        for (int tree = 0; tree < 500; tree++) {
+            final Node<StringNodeData> root = RandomTrees.tree(random, 1 + random.nextInt(60));
+            final RecursiveIndex expected = new RecursiveIndex(root, COST_MODEL);
+            assertMatches(expected, new NodeIndexer<>(root, COST_MODEL));
+            assertMatches(expected, new NodeIndexer<>(FlatTree.of(root), COST_MODEL));
+        }
+    }
+
+    @Test
+    void chainMatchesRecursiveIndexing() {
+        final Node<StringNodeData> root = RandomTrees.chain(500);
+        final RecursiveIndex expected = new RecursiveIndex(root, COST_MODEL);
+        assertMatches(expected, new NodeIndexer<>(root, COST_MODEL));
+        assertMatches(expected, new NodeIndexer<>(FlatTree.of(root), COST_MODEL));
+    }
+
+    @Test
+    void deepChainIsIndexedWithoutRecursion() {
+        final int n = 100_000;
+        final NodeIndexer<StringNodeData, WeightedCostModel> indexer =
+                new NodeIndexer<>(FlatTree.of(RandomTrees.chain(n)), COST_MODEL);
+
+        assertEquals(n, indexer.getSize());
+        for (int i = 0; i < n; i++) {
+            assertEquals(n - i, indexer.sizes[i], "sizes");
+            assertEquals(i - 1, indexer.parents[i], "parents");
+            assertEquals(i, indexer.preL_to_preR[i], "preL_to_preR");
+            assertEquals(n - 1 - i, indexer.preL_to_postL[i], "preL_to_postL");
+            assertEquals(n - 1 - i, indexer.preL_to_postR[i], "preL_to_postR");
+            assertEquals(0, indexer.postL_to_lld[i], "postL_to_lld");
+            assertEquals(0, indexer.postR_to_rld[i], "postR_to_rld");
+            assertEquals(-1, indexer.preL_to_ln[i], "preL_to_ln");
+            assertEquals(-1, indexer.preR_to_ln[i], "preR_to_ln");
+            assertEquals(n - i, indexer.preL_to_kr_sum[i], "preL_to_kr_sum");
+            assertEquals(n - i, indexer.preL_to_rev_kr_sum[i], "preL_to_rev_kr_sum");
+            assertEquals(n - i, indexer.preL_to_desc_sum[i], "preL_to_desc_sum");
+            assertTrue(indexer.nodeType_L[i] == i > 0, "nodeType_L");
+            assertTrue(indexer.nodeType_R[i] == i > 0, "nodeType_R");
+        }
+        assertEquals(1, indexer.lchl, "lchl");
+        assertEquals(0, indexer.rchl, "rchl");
+    }
+
+    private static void assertMatches(
+            final RecursiveIndex expected,
+            final NodeIndexer<StringNodeData, WeightedCostModel> actual
+    ) {
+        assertEquals(expected.sizes.length, actual.getSize(), "size");
+        for (int i = 0; i < expected.sizes.length; i++) assertSame(expected.preL_to_node[i], actual.preL_to_node[i]);
+        assertArrayEquals(expected.preL_to_label, actual.preL_to_label, "preL_to_label");
+        assertArrayEquals(expected.sizes, actual.sizes, "sizes");
+        assertArrayEquals(expected.parents, actual.parents, "parents");
+        assertArrayEquals(expected.children, actual.children, "children");
+        assertArrayEquals(expected.postL_to_lld, actual.postL_to_lld, "postL_to_lld");
+        assertArrayEquals(expected.postR_to_rld, actual.postR_to_rld, "postR_to_rld");
+        assertArrayEquals(expected.preL_to_ln, actual.preL_to_ln, "preL_to_ln");
+        assertArrayEquals(expected.preR_to_ln, actual.preR_to_ln, "preR_to_ln");
+        assertArrayEquals(expected.nodeType_L, actual.nodeType_L, "nodeType_L");
+        assertArrayEquals(expected.nodeType_R, actual.nodeType_R, "nodeType_R");
+        assertArrayEquals(expected.preL_to_preR, actual.preL_to_preR, "preL_to_preR");
+        assertArrayEquals(expected.preR_to_preL, actual.preR_to_preL, "preR_to_preL");
+        assertArrayEquals(expected.preL_to_postL, actual.preL_to_postL, "preL_to_postL");
+        assertArrayEquals(expected.postL_to_preL, actual.postL_to_preL, "postL_to_preL");
+        assertArrayEquals(expected.preL_to_postR, actual.preL_to_postR, "preL_to_postR");
+        assertArrayEquals(expected.postR_to_preL, actual.postR_to_preL, "postR_to_preL");
+        assertArrayEquals(expected.preL_to_kr_sum, actual.preL_to_kr_sum, "preL_to_kr_sum");
+        assertArrayEquals(expected.preL_to_rev_kr_sum, actual.preL_to_rev_kr_sum, "preL_to_rev_kr_sum");
+        assertArrayEquals(expected.preL_to_desc_sum, actual.preL_to_desc_sum, "preL_to_desc_sum");
+        assertArrayEquals(expected.preL_to_delCost, actual.preL_to_delCost, 1e-4f, "preL_to_delCost");
+        assertArrayEquals(expected.preL_to_insCost, actual.preL_to_insCost, 1e-4f, "preL_to_insCost");
+        assertArrayEquals(expected.preL_to_sumDelCost, actual.preL_to_sumDelCost, 1e-3f, "preL_to_sumDelCost");
+        assertArrayEquals(expected.preL_to_sumInsCost, actual.preL_to_sumInsCost, 1e-3f, "preL_to_sumInsCost");
+        assertEquals(expected.lchl, actual.lchl, "lchl");
+        assertEquals(expected.rchl, actual.rchl, "rchl");
+    }
+
+    /**
+     * The recursive indexing of APTED as it was before trees were flattened, kept as the reference.
+     */
+    private static final class RecursiveIndex {
+        private final int treeSize;
+        private final Node<StringNodeData>[] preL_to_node;
+        private final int[] preL_to_label;
+        private final int[] sizes;
+        private final int[] parents;
+        private final int[][] children;
+        private final int[] postL_to_lld;
+        private final int[] postR_to_rld;
+        private final int[] preL_to_ln;
+        private final int[] preR_to_ln;
+        private final boolean[] nodeType_L;
+        private final boolean[] nodeType_R;
+        private final int[] preL_to_preR;
+        private final int[] preR_to_preL;
+        private final int[] preL_to_postL;
+        private final int[] postL_to_preL;
+        private final int[] preL_to_postR;
+        private final int[] postR_to_preL;
+        private final int[] preL_to_kr_sum;
+        private final int[] preL_to_rev_kr_sum;
+        private final int[] preL_to_desc_sum;
+        private final float[] preL_to_delCost;
+        private final float[] preL_to_insCost;
+        private final float[] preL_to_sumDelCost;
+        private final float[] preL_to_sumInsCost;
+        private int lchl;
+        private int rchl;
+
+        private int sizeTmp;
+        private int descSizesTmp;
+        private int krSizesSumTmp;
+        private int revkrSizesSumTmp;
+        private int preorderTmp;
+
+        @SuppressWarnings("unchecked")
+        private RecursiveIndex(
+                final Node<StringNodeData> root,
+                final CostModel<StringNodeData> costModel
+        ) {
+            treeSize = root.getNodeCount();
+            preL_to_node = new Node[treeSize];
+            preL_to_label = new int[treeSize];
+            sizes = new int[treeSize];
+            parents = new int[treeSize];
+            children = new int[treeSize][];
+            postL_to_lld = new int[treeSize];
+            postR_to_rld = new int[treeSize];
+            preL_to_ln = new int[treeSize];
+            preR_to_ln = new int[treeSize];
+            nodeType_L = new boolean[treeSize];
+            nodeType_R = new boolean[treeSize];
+            preL_to_preR = new int[treeSize];
+            preR_to_preL = new int[treeSize];
+            preL_to_postL = new int[treeSize];
+            postL_to_preL = new int[treeSize];
+            preL_to_postR = new int[treeSize];
+            postR_to_preL = new int[treeSize];
+            preL_to_kr_sum = new int[treeSize];
+            preL_to_rev_kr_sum = new int[treeSize];
+            preL_to_desc_sum = new int[treeSize];
+            preL_to_delCost = new float[treeSize];
+            preL_to_insCost = new float[treeSize];
+            preL_to_sumDelCost = new float[treeSize];
+            preL_to_sumInsCost = new float[treeSize];
+            parents[0] = -1;
+
+            indexNodes(root, -1);
+            postTraversalIndexing(costModel);
+        }
+
+        private int indexNodes(
+                final Node<StringNodeData> node,
+                int postorder
+        ) {
+            int currentSize = 0;
+            int descSizes = 0;
+            int krSizesSum = 0;
+            int revkrSizesSum = 0;
+            final int preorder = preorderTmp++;
+            final List<Integer> childrenPreorders = new ArrayList<>();
+
+            final List<Node<StringNodeData>> nodeChildren = node.getChildren();
+            for (int child = 0; child < nodeChildren.size(); child++) {
+                final int currentPreorder = preorderTmp;
+                parents[currentPreorder] = preorder;
+                postorder = indexNodes(nodeChildren.get(child), postorder);
+                childrenPreorders.add(currentPreorder);
+
+                currentSize += 1 + sizeTmp;
+                descSizes += descSizesTmp;
+                if (child > 0) {
+                    krSizesSum += krSizesSumTmp + sizeTmp + 1;
+                } else {
+                    krSizesSum += krSizesSumTmp;
+                    nodeType_L[currentPreorder] = true;
+                }
+                if (child < nodeChildren.size() - 1) {
+                    revkrSizesSum += revkrSizesSumTmp + sizeTmp + 1;
+                } else {
+                    revkrSizesSum += revkrSizesSumTmp;
+                    nodeType_R[currentPreorder] = true;
+                }
+            }
+
+            postorder++;
+
+            final int currentDescSizes = descSizes + currentSize + 1;
+            preL_to_desc_sum[preorder] = ((currentSize + 1) * (currentSize + 1 + 3)) / 2 - currentDescSizes;
+            preL_to_kr_sum[preorder] = krSizesSum + currentSize + 1;
+            preL_to_rev_kr_sum[preorder] = revkrSizesSum + currentSize + 1;
+
+            preL_to_node[preorder] = node;
+            preL_to_label[preorder] = node.getNodeData().labelId();
+            sizes[preorder] = currentSize + 1;
+            final int preorderR = treeSize - 1 - postorder;
+            preL_to_preR[preorder] = preorderR;
+            preR_to_preL[preorderR] = preorder;
+            children[preorder] = childrenPreorders.stream().mapToInt(Integer::intValue).toArray();
+
+            descSizesTmp = currentDescSizes;
+            sizeTmp = currentSize;
+            krSizesSumTmp = krSizesSum;
+            revkrSizesSumTmp = revkrSizesSum;
+
+            postL_to_preL[postorder] = preorder;
+            preL_to_postL[preorder] = postorder;
+            preL_to_postR[preorder] = treeSize - 1 - preorder;
+            postR_to_preL[treeSize - 1 - preorder] = preorder;
+
+            return postorder;
+        }
+
+        private void postTraversalIndexing(final CostModel<StringNodeData> costModel) {
+            int currentLeaf = -1;
+            for (int i = 0; i < treeSize; i++) {
+                preL_to_ln[i] = currentLeaf;
+                if (sizes[i] == 1) currentLeaf = i;
+
+                int preorder = postL_to_preL[i];
+                postL_to_lld[i] = sizes[preorder] == 1
+                        ? i
+                        : postL_to_lld[preL_to_postL[children[preorder][0]]];
+                preorder = postR_to_preL[i];
+                postR_to_rld[i] = sizes[preorder] == 1
+                        ? i
+                        : postR_to_rld[preL_to_postR[children[preorder][children[preorder].length - 1]]];
+
+                if (sizes[i] == 1 && parents[i] > -1) {
+                    if (parents[i] + 1 == i) {
+                        lchl++;
+                    } else if (preL_to_preR[parents[i]] + 1 == preL_to_preR[i]) {
+                        rchl++;
+                    }
+                }
+
+                final int nodeForSum = treeSize - i - 1;
+                final int parentForSum = parents[nodeForSum];
+                preL_to_delCost[nodeForSum] = costModel.del(preL_to_node[nodeForSum]);
+                preL_to_insCost[nodeForSum] = costModel.ins(preL_to_node[nodeForSum]);
+                preL_to_sumDelCost[nodeForSum] += preL_to_delCost[nodeForSum];
+                preL_to_sumInsCost[nodeForSum] += preL_to_insCost[nodeForSum];
+                if (parentForSum > -1) {
+                    preL_to_sumDelCost[parentForSum] += preL_to_sumDelCost[nodeForSum];
+                    preL_to_sumInsCost[parentForSum] += preL_to_sumInsCost[nodeForSum];
+                }
+            }
+
+            currentLeaf = -1;
+            for (int i = 0; i < treeSize; i++) {
+                preR_to_ln[i] = currentLeaf;
+                if (sizes[preR_to_preL[i]] == 1) currentLeaf = i;
+            }
+        }
+    }
+}
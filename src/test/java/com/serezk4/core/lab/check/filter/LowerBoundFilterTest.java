@@ -0,0 +1,57 @@
+package com.serezk4.core.lab.check.filter;
+
+import com.serezk4.core.apted.RandomTrees;
+import com.serezk4.core.apted.costmodel.WeightedCostModel;
+import com.serezk4.core.apted.distance.APTED;
+import com.serezk4.core.apted.node.FlatTree;
+import com.serezk4.core.apted.node.Node;
+import com.serezk4.core.apted.node.NodeIndexer;
+import com.serezk4.core.apted.node.StringNodeData;
+import com.serezk4.core.lab.check.apted.AptedCheck;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LowerBoundFilterTest {
+    private static final double[] THRESHOLDS = {0.3, 0.5, 0.61, 0.75, 0.9};
+
+    @Test
+    void prunedPairsDoNotExceedThreshold() {
+        final WeightedCostModel costModel = new WeightedCostModel();
+        final APTED<WeightedCostModel, StringNodeData> apted = new APTED<>(costModel);
+        final LowerBoundFilter filter = new LowerBoundFilter(AptedCheck.MIN_OPERATION_COST);
+        final Random random = new Random(5);
+
+        int pruned = 0;
+        int kept = 0;
+        for (int pair = 0; pair < 400; pair++) {
+            final Node<StringNodeData> source = RandomTrees.tree(random, 5 + random.nextInt(60));
+            final Node<StringNodeData> target = random.nextBoolean()
+                    ? RandomTrees.edit(random, source, random.nextInt(20))
+                    : RandomTrees.tree(random, 5 + random.nextInt(60));
+            final FlatTree<StringNodeData> tree1 = FlatTree.of(source);
+            final FlatTree<StringNodeData> tree2 = FlatTree.of(target);
+            final TreeProfile profile1 = TreeProfile.of(tree1);
+            final TreeProfile profile2 = TreeProfile.of(tree2);
+
+            final NodeIndexer<StringNodeData, WeightedCostModel> it1 = new NodeIndexer<>(tree1, costModel);
+            final NodeIndexer<StringNodeData, WeightedCostModel> it2 = new NodeIndexer<>(tree2, costModel);
+            final double similarity =
+                    1.0 - apted.computeEditDistance(it1, it2) / Math.max(it1.getSize(), it2.getSize());
+
+            for (double threshold : THRESHOLDS) {
+                if (filter.canExceed(profile1, profile2, threshold)) {
+                    kept++;
+                } else {
+                    pruned++;
+                    assertTrue(similarity <= threshold + 1e-6, "pruned similarity " + similarity
+                            + " at threshold " + threshold);
+                }
+            }
+        }
+        assertTrue(pruned > 0, "no pair was pruned");
+        assertTrue(kept > 0, "every pair was pruned");
+    }
+}
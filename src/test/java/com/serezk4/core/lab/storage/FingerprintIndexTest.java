@@ -0,0 +1,64 @@
+package com.serezk4.core.lab.storage;
+
+import com.serezk4.core.apted.node.Node;
+import com.serezk4.core.apted.node.StringNodeData;
+import com.serezk4.core.lab.model.Clazz;
+import com.serezk4.core.lab.model.StoredClazz;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FingerprintIndexTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void invalidatedLabIsAlwaysShortlisted() throws IOException {
+        final Path file = directory.resolve("1.fingerprints");
+        final StoredClazz stored = stored("Lab.java", "ForStatementContext");
+        final Clazz target = stored("Target.java", "WhileStatementContext").toClazz();
+
+        FingerprintIndex.append(file, "100001", List.of(stored));
+        assertFalse(FingerprintIndex.read(file).shortlist(target).contains("100001", stored.toClazz()));
+
+        FingerprintIndex.invalidate(file, "100001");
+        assertTrue(FingerprintIndex.read(file).shortlist(target).contains("100001", stored.toClazz()));
+
+        FingerprintIndex.append(file, "100001", List.of(stored));
+        assertFalse(FingerprintIndex.read(file).shortlist(target).contains("100001", stored.toClazz()));
+    }
+
+    @Test
+    void appendAfterTornTailKeepsNewRecordReadable() throws IOException {
+        final Path file = directory.resolve("2.fingerprints");
+        final StoredClazz stored = stored("Lab.java", "ForStatementContext");
+        final Clazz target = stored("Target.java", "WhileStatementContext").toClazz();
+
+        FingerprintIndex.append(file, "100001", List.of(stored));
+        // simulate a crash in the middle of writing a record
+        Files.write(file, new byte[]{0x46, 0x50, 0x52}, StandardOpenOption.APPEND);
+        FingerprintIndex.append(file, "100002", List.of(stored));
+
+        final FingerprintIndex index = FingerprintIndex.read(file);
+        assertFalse(index.shortlist(target).contains("100002", stored.toClazz()));
+        assertTrue(index.shortlist(stored.toClazz()).contains("100002", stored.toClazz()));
+    }
+
+    private static StoredClazz stored(
+            final String filePath,
+            final String label
+    ) {
+        final Node<StringNodeData> root = new Node<>(new StringNodeData("CompilationUnitContext"));
+        for (int i = 0; i < 20; i++) root.addChild(new Node<>(new StringNodeData(label)));
+        return new StoredClazz(filePath, root, "class A {}", List.of());
+    }
+}
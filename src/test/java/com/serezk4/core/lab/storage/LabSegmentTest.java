@@ -0,0 +1,66 @@
+package com.serezk4.core.lab.storage;
+
+import com.serezk4.core.apted.node.Node;
+import com.serezk4.core.apted.node.StringNodeData;
+import com.serezk4.core.lab.model.StoredClazz;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class LabSegmentTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void appendAfterTornTailKeepsNewRecordReadable() throws IOException {
+        final Path segment = directory.resolve("1.segment");
+        LabSegment.append(segment, "100001", List.of(clazz("First.java", "CompilationUnitContext")));
+        final long firstEnd = Files.size(segment);
+        LabSegment.append(segment, "100002", List.of(clazz("Torn.java", "ClassBodyContext")));
+
+        // simulate a crash in the middle of writing the second record
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(firstEnd + 5);
+        }
+
+        LabSegment.append(segment, "100003", List.of(clazz("Third.java", "MethodDeclarationContext")));
+
+        final Map<String, List<StoredClazz>> labs = LabSegment.read(segment);
+        assertEquals(List.of("100001", "100003"), List.copyOf(labs.keySet()));
+        assertEquals("Third.java", labs.get("100003").getFirst().filePath());
+
+        final List<StoredClazz> third = LabSegment.read(segment, "100003");
+        assertNotNull(third);
+        assertEquals("MethodDeclarationContext", third.getFirst().node().getNodeData().getLabel());
+    }
+
+    @Test
+    void appendAfterTornHeaderRewritesHeader() throws IOException {
+        final Path segment = directory.resolve("2.segment");
+        Files.write(segment, new byte[]{0x4C, 0x47});
+
+        LabSegment.append(segment, "100001", List.of(clazz("First.java", "CompilationUnitContext")));
+
+        assertEquals(List.of("100001"), List.copyOf(LabSegment.read(segment).keySet()));
+    }
+
+    private static StoredClazz clazz(
+            final String filePath,
+            final String label
+    ) {
+        final Node<StringNodeData> root = new Node<>(new StringNodeData(label));
+        root.addChild(new Node<>(new StringNodeData("TerminalNodeImpl")));
+        return new StoredClazz(filePath, root, "class A {}", List.of());
+    }
+}
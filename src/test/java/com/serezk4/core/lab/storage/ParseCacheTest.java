@@ -0,0 +1,28 @@
+package com.serezk4.core.lab.storage;
+
+import com.serezk4.core.lab.analyze.checkstyle.CheckstyleAnalyzer;
+import com.serezk4.core.lab.model.ContentHash;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ParseCacheTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void failedCheckstyleReportIsNotCached() {
+        final ContentHash source = ContentHash.of("class A {}");
+        final List<String> failure = List.of(CheckstyleAnalyzer.FAILURE_PREFIX + "file is locked");
+        final List<String> report = List.of("Missing a Javadoc comment.");
+
+        assertEquals(failure, new ParseCache(directory).checkstyle(source, () -> failure));
+        assertEquals(report, new ParseCache(directory).checkstyle(source, () -> report));
+        assertEquals(report, new ParseCache(directory).checkstyle(source, () -> failure));
+    }
+}
@@ -0,0 +1,61 @@
+package com.serezk4.core.lab.storage;
+
+import com.serezk4.core.lab.model.ContentHash;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SimilarityStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void flushAfterTornRecordKeepsLaterRecordsReadable() throws IOException {
+        final Path path = directory.resolve("1.similarity");
+        final ContentHash a = ContentHash.of("class A {}");
+        final ContentHash b = ContentHash.of("class B {}");
+        final ContentHash c = ContentHash.of("class C {}");
+
+        try (SimilarityStore store = SimilarityStore.open(path)) {
+            store.computeIfAbsent(a, b, "1", () -> 0.25);
+        }
+
+        // simulate a crash in the middle of writing a record
+        Files.write(path, new byte[20], StandardOpenOption.APPEND);
+
+        try (SimilarityStore store = SimilarityStore.open(path)) {
+            assertEquals(1, store.size());
+            store.computeIfAbsent(a, c, "1", () -> 0.75);
+        }
+
+        try (SimilarityStore store = SimilarityStore.open(path)) {
+            assertEquals(2, store.size());
+            assertEquals(0.25, store.computeIfAbsent(a, b, "1", () -> -1), 0);
+            assertEquals(0.75, store.computeIfAbsent(a, c, "1", () -> -1), 0);
+        }
+    }
+
+    @Test
+    void reversedPairSharesItsScore() throws IOException {
+        final Path path = directory.resolve("1.similarity");
+        final ContentHash a = ContentHash.of("class A {}");
+        final ContentHash b = ContentHash.of("class B {}");
+
+        try (SimilarityStore store = SimilarityStore.open(path)) {
+            store.computeIfAbsent(a, b, "1", () -> 0.25);
+            assertEquals(0.25, store.computeIfAbsent(b, a, "1", () -> -1), 0);
+            assertEquals(1, store.size());
+        }
+
+        try (SimilarityStore store = SimilarityStore.open(path)) {
+            assertEquals(0.25, store.computeIfAbsent(b, a, "1", () -> -1), 0);
+        }
+    }
+}